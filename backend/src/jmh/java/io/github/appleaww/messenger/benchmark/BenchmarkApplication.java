@@ -0,0 +1,138 @@
+package io.github.appleaww.messenger.benchmark;
+
+import io.github.appleaww.messenger.MessengerApplication;
+import io.github.appleaww.messenger.model.dto.request.ChatCreateRequestDTO;
+import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.repository.UserRepository;
+import io.github.appleaww.messenger.security.JwtTokenProvider;
+import io.github.appleaww.messenger.service.ChatService;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.server.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.IntStream;
+
+/**
+ * The whole messenger running in the benchmark JVM: an embedded Postgres 17, a single embedded Kafka
+ * broker (the app's topics are created with one replica instead of two) and the application
+ * configured from application.properties.example, listening on a random port. Benchmarks pass the
+ * properties they compare, e.g. {@code spring.threads.virtual.enabled}; anything else can be
+ * overridden with -D.
+ */
+public final class BenchmarkApplication implements AutoCloseable {
+    public static final String PASSWORD = "benchmark-password";
+
+    private final EmbeddedPostgres postgres;
+    private final EmbeddedKafkaKraftBroker kafka;
+    private final Path dataDirectory;
+    private final ConfigurableApplicationContext context;
+
+    private BenchmarkApplication(Map<String, String> properties) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        kafka = new EmbeddedKafkaKraftBroker(1, 6);
+        kafka.afterPropertiesSet();
+        dataDirectory = Files.createTempDirectory("messenger-benchmark");
+
+        Properties defaults = new Properties();
+        try (InputStream example = MessengerApplication.class.getResourceAsStream("/application.properties.example")) {
+            defaults.load(example);
+        }
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("server.port", "0");
+        overrides.put("spring.datasource.url", postgres.getJdbcUrl("postgres", "postgres") + "&reWriteBatchedInserts=true");
+        overrides.put("spring.datasource.username", "postgres");
+        overrides.put("spring.datasource.password", "postgres");
+        overrides.put("spring.kafka.bootstrap-servers", kafka.getBrokersAsString());
+        overrides.put("app.telemetry.spill.path", dataDirectory.resolve("telemetry-spill.journal").toString());
+        overrides.put("logging.level.root", "warn");
+        overrides.put("logging.level.io.github.appleaww.messenger", "warn");
+        overrides.put("logging.level.org.apache.kafka.clients.NetworkClient", "warn");
+        overrides.putAll(properties);
+        defaults.putAll(overrides);
+
+        context = new SpringApplicationBuilder(MessengerApplication.class)
+                .properties(defaults)
+                .initializers(applicationContext -> applicationContext.getBeanFactory().addBeanPostProcessor(new BeanPostProcessor() {
+                    @Override
+                    public Object postProcessAfterInitialization(Object bean, String beanName) {
+                        return bean instanceof NewTopic topic
+                                ? new NewTopic(topic.name(), topic.numPartitions(), (short) 1).configs(topic.configs())
+                                : bean;
+                    }
+                }))
+                .run();
+    }
+
+    public static BenchmarkApplication start(Map<String, String> properties) throws IOException {
+        return new BenchmarkApplication(properties);
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public int port() {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    public JdbcTemplate jdbcTemplate() {
+        return context.getBean(JdbcTemplate.class);
+    }
+
+    /**
+     * Inserts {@code count} users named {@code prefix-0 .. prefix-(count-1)}, all with {@link #PASSWORD}.
+     */
+    public List<User> createUsers(String prefix, int count) {
+        String hash = getBean(PasswordEncoder.class).encode(PASSWORD);
+        jdbcTemplate().batchUpdate("""
+                        INSERT INTO users (name, username, email, password, role, is_online, is_premium)
+                        VALUES (?, ?, ?, ?, 'USER', false, false)
+                        """,
+                IntStream.range(0, count)
+                        .mapToObj(i -> new Object[]{prefix + "-" + i, prefix + "-" + i, prefix + "-" + i + "@benchmark.io", hash})
+                        .toList());
+
+        UserRepository userRepository = getBean(UserRepository.class);
+        return IntStream.range(0, count)
+                .mapToObj(i -> userRepository.findByUsername(prefix + "-" + i).orElseThrow())
+                .toList();
+    }
+
+    /**
+     * Creates a direct chat between each initiator and the companion at the same index.
+     */
+    public List<Long> createChats(List<User> initiators, List<User> companions) {
+        ChatService chatService = getBean(ChatService.class);
+        return IntStream.range(0, initiators.size())
+                .mapToObj(i -> chatService.createChat(new ChatCreateRequestDTO(companions.get(i).getUsername()), initiators.get(i)).id())
+                .toList();
+    }
+
+    public String token(User user) {
+        return getBean(JwtTokenProvider.class).generateToken(user);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            context.close();
+        } finally {
+            kafka.destroy();
+            postgres.close();
+        }
+    }
+}
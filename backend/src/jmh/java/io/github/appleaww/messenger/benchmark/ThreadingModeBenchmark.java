@@ -0,0 +1,221 @@
+package io.github.appleaww.messenger.benchmark;
+
+import io.github.appleaww.messenger.model.dto.request.MessageCreateRequestDTO;
+import io.github.appleaww.messenger.model.dto.response.MessageCreateResponseDTO;
+import io.github.appleaww.messenger.model.entity.User;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The app's own request paths with {@code spring.threads.virtual.enabled} off and on: Tomcat request
+ * threads, the STOMP inbound and outbound channel executors, and the @Async connect and disconnect
+ * listeners, all in front of a real Postgres. Each JMH thread is one client; the default of 400 is
+ * twice Tomcat's 200 platform request threads. Clients run in the same JVM as the server, so compare
+ * the two modes with each other rather than with production numbers.
+ * Run with {@code just benchmark ThreadingMode}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(400)
+public class ThreadingModeBenchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    private BenchmarkApplication application;
+    private HttpClient httpClient;
+    private ThreadPoolTaskScheduler heartbeatScheduler;
+    private WebSocketStompClient stompClient;
+
+    private List<String> tokens;
+    private List<Long> chatIds;
+
+    @Setup
+    public void start(BenchmarkParams params) throws Exception {
+        application = BenchmarkApplication.start(Map.of("spring.threads.virtual.enabled", String.valueOf(virtualThreads)));
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(TIMEOUT).build();
+        heartbeatScheduler = new ThreadPoolTaskScheduler();
+        heartbeatScheduler.initialize();
+        StandardWebSocketClient webSocketClient = new StandardWebSocketClient();
+        webSocketClient.setUserProperties(Map.of("org.apache.tomcat.websocket.IO_TIMEOUT_MS", String.valueOf(TIMEOUT.toMillis())));
+        stompClient = new WebSocketStompClient(webSocketClient);
+        stompClient.setMessageConverter(new JacksonJsonMessageConverter());
+        // idle clients heartbeat like the real ones, or the session reaper closes them
+        stompClient.setTaskScheduler(heartbeatScheduler);
+        stompClient.setDefaultHeartbeat(new long[]{10_000, 10_000});
+
+        // one sender with a chat to its own companion per client thread
+        int clients = params.getThreads();
+        List<User> senders = application.createUsers("sender", clients);
+        chatIds = application.createChats(senders, application.createUsers("companion", clients));
+        tokens = senders.stream().map(application::token).toList();
+    }
+
+    @TearDown
+    public void stop() throws Exception {
+        stompClient.stop();
+        heartbeatScheduler.shutdown();
+        httpClient.close();
+        application.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private String token;
+        private long chatId;
+        private StompSession session;
+        private final BlockingQueue<MessageCreateResponseDTO> received = new LinkedBlockingQueue<>();
+        private long sent;
+
+        @Setup
+        public void connect(ThreadingModeBenchmark benchmark, ThreadParams params) throws Exception {
+            token = benchmark.tokens.get(params.getThreadIndex());
+            chatId = benchmark.chatIds.get(params.getThreadIndex());
+            session = benchmark.connect(token);
+            session.subscribe("/user/queue/chat-messages", new StompFrameHandler() {
+                @Override
+                public Type getPayloadType(StompHeaders headers) {
+                    return MessageCreateResponseDTO.class;
+                }
+
+                @Override
+                public void handleFrame(StompHeaders headers, Object payload) {
+                    received.add((MessageCreateResponseDTO) payload);
+                }
+            });
+            // the subscription is live once a message makes the round trip
+            do {
+                session.send("/app/chat.sendMessage", new MessageCreateRequestDTO("subscribed?", chatId));
+            } while (received.poll(1, TimeUnit.SECONDS) == null);
+        }
+
+        @TearDown
+        public void disconnect() {
+            if (session.isConnected()) {
+                session.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Outcomes reported next to the score: a request refused for want of a database permit, or a
+     * handshake that timed out, still completes an operation but is not served.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Responses {
+        public long ok;
+        public long failed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            ok = 0;
+            failed = 0;
+        }
+    }
+
+    /**
+     * GET /api/chats: JWT filter, Tomcat request thread, chat list query.
+     */
+    @Benchmark
+    public int listChats(Client client, Responses responses) throws Exception {
+        int status = httpClient.send(HttpRequest.newBuilder(uri("/api/chats")).timeout(TIMEOUT)
+                .header("Authorization", "Bearer " + client.token).GET().build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status == 200) {
+            responses.ok++;
+        } else {
+            responses.failed++;
+        }
+        return status;
+    }
+
+    /**
+     * A chat message over STOMP: inbound channel, insert, fan-out and the echo back on the outbound channel.
+     */
+    @Benchmark
+    public MessageCreateResponseDTO sendMessage(Client client) throws Exception {
+        String content = "message " + client.sent++;
+        client.session.send("/app/chat.sendMessage", new MessageCreateRequestDTO(content, client.chatId));
+        while (true) {
+            MessageCreateResponseDTO echo = client.received.poll(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            if (echo == null) {
+                throw new IllegalStateException("No echo for '" + content + "' within " + TIMEOUT);
+            }
+            if (echo.content().equals(content)) {
+                return echo;
+            }
+        }
+    }
+
+    /**
+     * WebSocket handshake and STOMP CONNECT, then DISCONNECT; each fires the @Async presence listeners.
+     */
+    @Benchmark
+    public boolean connectAndDisconnect(Client client, Responses responses) throws Exception {
+        StompSession session;
+        try {
+            session = connect(client.token);
+        } catch (ExecutionException | TimeoutException e) {
+            responses.failed++;
+            return false;
+        }
+        responses.ok++;
+        session.disconnect();
+        return true;
+    }
+
+    private StompSession connect(String token) throws Exception {
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add("Authorization", "Bearer " + token);
+        return stompClient.connectAsync("ws://localhost:" + application.port() + "/ws", new WebSocketHttpHeaders(),
+                connectHeaders, new StompSessionHandlerAdapter() {
+                }).get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + application.port() + path);
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.model.entity.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authenticating a request from its JWT: a full signature check and claims parse when the
+ * token is not cached, and the SHA-256 lookup that serves every repeat of the same token.
+ * Run with {@code just benchmark JwtTokenProvider}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class JwtTokenProviderBenchmark {
+    private static final String SECRET = "test-secret-test-secret-test-secret-test-secret-test-secret-test-secret";
+    private static final int TOKENS = 1024;
+
+    private JwtTokenProvider uncached;
+    private JwtTokenProvider cached;
+    private String[] tokens;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        uncached = provider(1L);
+        cached = provider(1_000L);
+        // distinct tokens cycled through a one-entry cache, so every uncached verify does the full check
+        tokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            tokens[i] = cached.generateToken(user(i + 1L));
+        }
+    }
+
+    @Benchmark
+    public VerifiedToken verifyNotCached() {
+        next = (next + 1) & (TOKENS - 1);
+        return uncached.verify(tokens[next]);
+    }
+
+    @Benchmark
+    public VerifiedToken verifyCached() {
+        return cached.verify(tokens[0]);
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail("user" + id + "@example.com");
+        user.setRole(User.Role.USER);
+        return user;
+    }
+
+    private static JwtTokenProvider provider(long verifiedCacheMaxSize) {
+        JwtTokenProvider provider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(provider, "jwtAccessSignature", SECRET);
+        ReflectionTestUtils.setField(provider, "jwtExpiration", 86_400_000L);
+        ReflectionTestUtils.setField(provider, "verifiedCacheMaxSize", verifiedCacheMaxSize);
+        provider.init();
+        return provider;
+    }
+}
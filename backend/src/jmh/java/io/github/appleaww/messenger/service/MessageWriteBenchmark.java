@@ -0,0 +1,84 @@
+package io.github.appleaww.messenger.service;
+
+import io.github.appleaww.messenger.benchmark.BenchmarkApplication;
+import io.github.appleaww.messenger.model.dto.request.MessageCreateRequestDTO;
+import io.github.appleaww.messenger.model.dto.response.MessageCreateResponseDTO;
+import io.github.appleaww.messenger.model.entity.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storing chat messages with one transaction per message versus through the write-behind
+ * {@link MessageBatchWriter}, against a real Postgres. Each JMH thread is a sender with its own chat,
+ * and an operation ends once its message is committed, so both paths are measured to the same
+ * durability. Compare throughput and the SampleTime percentiles.
+ * Run with {@code just benchmark MessageWrite}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(32)
+public class MessageWriteBenchmark {
+    @Param({"false", "true"})
+    public boolean writeBehind;
+
+    private BenchmarkApplication application;
+    private MessageService messageService;
+    private List<User> senders;
+    private List<Long> chatIds;
+
+    @Setup
+    public void start(BenchmarkParams params) throws Exception {
+        application = BenchmarkApplication.start(Map.of("app.messages.write-behind.enabled", String.valueOf(writeBehind)));
+        messageService = application.getBean(MessageService.class);
+
+        senders = application.createUsers("sender", params.getThreads());
+        chatIds = application.createChats(senders, application.createUsers("companion", params.getThreads()));
+    }
+
+    @TearDown
+    public void stop() throws Exception {
+        application.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Sender {
+        private User user;
+        private MessageCreateRequestDTO request;
+
+        @Setup
+        public void assign(MessageWriteBenchmark benchmark, ThreadParams params) {
+            user = benchmark.senders.get(params.getThreadIndex());
+            request = new MessageCreateRequestDTO("See you at the station at five, the usual platform",
+                    benchmark.chatIds.get(params.getThreadIndex()));
+        }
+    }
+
+    @Benchmark
+    public MessageCreateResponseDTO createMessage(Sender sender) throws Exception {
+        if (writeBehind) {
+            return messageService.createMessageWriteBehind(sender.request, sender.user).committed().get();
+        }
+        return messageService.createMessage(sender.request, sender.user);
+    }
+}
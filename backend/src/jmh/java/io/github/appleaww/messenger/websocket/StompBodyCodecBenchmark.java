@@ -0,0 +1,112 @@
+package io.github.appleaww.messenger.websocket;
+
+import io.github.appleaww.messenger.model.dto.TypingDTO;
+import io.github.appleaww.messenger.model.dto.response.MessageCreateResponseDTO;
+import io.github.appleaww.messenger.model.dto.response.ReadReceiptResponseDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * CPU cost of CBOR bodies for each frame type the server pushes: the JSON serialization the broker
+ * always does, the one-off JSON to CBOR transcode, and the per-session cost once the transcoded copy
+ * is shared. Body sizes in both encodings are logged once per fork.
+ * Run with {@code just benchmark StompBodyCodec}.
+ */
+@Slf4j
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class StompBodyCodecBenchmark {
+    @Param({"message", "typing", "readReceipt"})
+    public String frame;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final CBORMapper cborMapper = CBORMapper.builder().build();
+    private final StompBodyCodec stompBodyCodec = new StompBodyCodec(jsonMapper);
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    private Object payload;
+    private byte[] json;
+    private Message<byte[]> cborSessionFrame;
+
+    @Setup
+    public void setUp() throws Exception {
+        payload = switch (frame) {
+            case "message" -> new MessageCreateResponseDTO(7_300_000_000_001L, Instant.parse("2026-01-01T10:00:00Z"),
+                    "See you at the station at five, the usual platform", false, 1L, 2L, 7_300_000_000_000L, false);
+            case "typing" -> new TypingDTO(7_300_000_000_000L, 1L, "alice", 2L, true);
+            case "readReceipt" -> new ReadReceiptResponseDTO(7_300_000_000_000L,
+                    LongStream.range(0, 20).map(i -> 7_300_000_000_001L + i).boxed().toList(), 2L, 1L);
+            default -> throw new IllegalArgumentException("Unknown frame " + frame);
+        };
+        json = jsonMapper.writeValueAsBytes(payload);
+        log.info("{} frame body: {} bytes JSON, {} bytes CBOR", frame, json.length, stompBodyCodec.toCbor(json).length);
+        cborSessionFrame = cborSessionFrame(json);
+    }
+
+    @Benchmark
+    public byte[] serializeJson() {
+        return jsonMapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public byte[] serializeCborDirectly() {
+        return cborMapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public byte[] transcodeJsonToCbor() {
+        return stompBodyCodec.toCbor(json);
+    }
+
+    @Benchmark
+    public Message<?> preSendSharedPayload() {
+        return stompBodyCodec.preSend(cborSessionFrame, channel);
+    }
+
+    private Message<byte[]> cborSessionFrame(byte[] body) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        stompBodyCodec.decorate(mock(WebSocketHandler.class)).afterConnectionEstablished(session);
+
+        SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId("s1");
+        connect.setContentType(StompBodyCodec.APPLICATION_CBOR);
+        stompBodyCodec.preSend(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()), channel);
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("s1");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+    }
+}
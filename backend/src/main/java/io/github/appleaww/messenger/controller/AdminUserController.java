@@ -0,0 +1,25 @@
+package io.github.appleaww.messenger.controller;
+
+import io.github.appleaww.messenger.model.dto.request.RegisterRequestDTO;
+import io.github.appleaww.messenger.model.dto.response.BulkRegistrationResponseDTO;
+import io.github.appleaww.messenger.security.BulkRegistrationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/users")
+@RequiredArgsConstructor
+public class AdminUserController {
+    private final BulkRegistrationService bulkRegistrationService;
+
+    @PostMapping("/bulk")
+    public ResponseEntity<BulkRegistrationResponseDTO> registerAll(@RequestBody List<RegisterRequestDTO> registerRequestDTOs){
+        return ResponseEntity.ok(bulkRegistrationService.register(registerRequestDTOs));
+    }
+}
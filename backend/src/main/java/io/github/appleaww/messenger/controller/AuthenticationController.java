@@ -1,15 +1,22 @@
 package io.github.appleaww.messenger.controller;
 
+import io.github.appleaww.messenger.model.dto.AvailabilityDTO;
 import io.github.appleaww.messenger.model.dto.response.AuthenticationResponse;
 import io.github.appleaww.messenger.model.dto.request.LoginRequestDTO;
+import io.github.appleaww.messenger.model.dto.request.RefreshRequestDTO;
 import io.github.appleaww.messenger.model.dto.request.RegisterRequestDTO;
 import io.github.appleaww.messenger.security.AuthenticationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -24,19 +31,45 @@ public class AuthenticationController {
         try{
             authenticationService.register(registerRequestDTO);
             return ResponseEntity.ok("User has registered with the email " + registerRequestDTO.email());
+        }catch (TaskRejectedException e){
+            return busy();
         }catch (RuntimeException e){
             return ResponseEntity.badRequest().body("Error in the registration process: " + e.getMessage());
         }
     }
 
+    @GetMapping("/availability")
+    public ResponseEntity<AvailabilityDTO> availability(@RequestParam(required = false) String username,
+                                                        @RequestParam(required = false) String email){
+        return ResponseEntity.ok(authenticationService.checkAvailability(username, email));
+    }
+
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestBody LoginRequestDTO loginRequestDTO){
         try {
             AuthenticationResponse authenticationResponse = authenticationService.login(loginRequestDTO);
             return ResponseEntity.ok(authenticationResponse);
+        }catch (TaskRejectedException e){
+            return busy();
         }catch (RuntimeException e){
             return ResponseEntity.status(401).body("Error in the logging process: " + e.getMessage());
         }
     }
 
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody RefreshRequestDTO refreshRequestDTO){
+        try {
+            return ResponseEntity.ok(authenticationService.refresh(refreshRequestDTO));
+        }catch (RuntimeException e){
+            return ResponseEntity.status(401).body("Error in the refresh process: " + e.getMessage());
+        }
+    }
+
+    // password hashing is saturated, the client should retry shortly
+    private ResponseEntity<String> busy(){
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Too many logins at the moment, try again");
+    }
+
 }
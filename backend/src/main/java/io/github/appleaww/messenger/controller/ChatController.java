@@ -4,14 +4,19 @@ import io.github.appleaww.messenger.model.dto.request.ChatCreateRequestDTO;
 import io.github.appleaww.messenger.model.dto.response.ChatCreateResponseDTO;
 import io.github.appleaww.messenger.model.dto.ChatDetailDTO;
 import io.github.appleaww.messenger.model.dto.ChatListItemDTO;
+import io.github.appleaww.messenger.model.dto.MessagePageDTO;
+import io.github.appleaww.messenger.model.dto.MessageSearchPageDTO;
 import io.github.appleaww.messenger.model.entity.User;
 import io.github.appleaww.messenger.service.ChatService;
+import io.github.appleaww.messenger.service.MessageSearchService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Instant;
 import java.util.List;
 
 @RestController
@@ -20,10 +25,15 @@ import java.util.List;
 @RequestMapping("/api")
 public class ChatController {
     private final ChatService chatService;
+    private final MessageSearchService messageSearchService;
 
     @GetMapping("/chats")
-    public ResponseEntity<List<ChatListItemDTO>> showAllUserChats(@AuthenticationPrincipal User currentUser) {
-        List<ChatListItemDTO> chats = chatService.getAllUserChatsWithDetails(currentUser);
+    public ResponseEntity<List<ChatListItemDTO>> showAllUserChats(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant beforeTime,
+            @RequestParam(required = false) Long beforeChatId,
+            @RequestParam(required = false) Integer limit,
+            @AuthenticationPrincipal User currentUser) {
+        List<ChatListItemDTO> chats = chatService.getAllUserChatsWithDetails(currentUser, beforeTime, beforeChatId, limit);
         return ResponseEntity.ok(chats);
     }
 
@@ -50,12 +60,33 @@ public class ChatController {
         return ResponseEntity.ok(chats);
     }
 
+    @GetMapping("/chats/search")
+    public ResponseEntity<MessageSearchPageDTO> searchMessages(
+            @RequestParam String q,
+            @RequestParam(required = false) Long chatId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @AuthenticationPrincipal User currentUser){
+        return ResponseEntity.ok(messageSearchService.search(q, chatId, cursor, limit, currentUser));
+    }
+
     @GetMapping("/chats/{chatId}")
     public ResponseEntity<ChatDetailDTO> openChat(
             @PathVariable Long chatId,
             @AuthenticationPrincipal User user){
         return ResponseEntity.ok(chatService.openChat(chatId,user));
     }
+
+    @GetMapping("/chats/{chatId}/messages")
+    public ResponseEntity<MessagePageDTO> getMessages(
+            @PathVariable Long chatId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant at,
+            @RequestParam(required = false) Integer limit,
+            @AuthenticationPrincipal User user){
+        return ResponseEntity.ok(chatService.getMessages(chatId, user, before, after, at, limit));
+    }
 }
 
 
@@ -1,13 +1,18 @@
 package io.github.appleaww.messenger.controller;
 
+import io.github.appleaww.messenger.model.dto.OnlineStatusDTO;
+import io.github.appleaww.messenger.model.dto.request.StatusQueryRequestDTO;
 import io.github.appleaww.messenger.service.OnlineStatusService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -26,4 +31,9 @@ public class OnlineStatusController {
     public ResponseEntity<Set<Long>> getOnlineUsers() {
         return ResponseEntity.ok(onlineStatusService.getOnlineUsers());
     }
-}
\ No newline at end of file
+
+    @PostMapping("/query")
+    public ResponseEntity<List<OnlineStatusDTO>> queryStatuses(@RequestBody StatusQueryRequestDTO statusQueryRequestDTO) {
+        return ResponseEntity.ok(onlineStatusService.queryStatuses(statusQueryRequestDTO.userIds()));
+    }
+}
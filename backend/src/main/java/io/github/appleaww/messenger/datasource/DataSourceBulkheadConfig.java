@@ -0,0 +1,49 @@
+package io.github.appleaww.messenger.datasource;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * Puts a {@link BulkheadDataSource} in front of the connection pool when the app runs on virtual threads.
+ */
+@Configuration
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class DataSourceBulkheadConfig {
+    private final DataSource dataSource;
+    private final MetricsService metricsService;
+
+    @Bean
+    public static BeanPostProcessor dataSourceBulkheadPostProcessor(
+            @Value("${app.datasource.bulkhead.permits:${spring.datasource.hikari.maximum-pool-size:10}}") int permits,
+            @Value("${app.datasource.bulkhead.acquire-timeout-ms:5000}") long acquireTimeoutMs) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource target && !(bean instanceof BulkheadDataSource)) {
+                    log.info("Database access of {} limited to {} concurrent connections", beanName, permits);
+                    return new BulkheadDataSource(target, permits, acquireTimeoutMs);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void registerMetrics() throws SQLException {
+        BulkheadDataSource bulkhead = dataSource.unwrap(BulkheadDataSource.class);
+        metricsService.dataSourceBulkheadConfigured(bulkhead::getAvailablePermits, bulkhead::getWaitingThreads);
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.appleaww.messenger.id;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Slf4j
+public class IdGeneratorConfig {
+
+    @Value("${app.node-id:0}")
+    private int nodeId;
+
+    @Bean
+    public SnowflakeIdGenerator snowflakeIdGenerator() {
+        log.info("Snowflake ids generated for node {}", nodeId);
+        return SnowflakeIdGenerator.forNode(nodeId);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer snowflakeNodeIdCustomizer() {
+        return properties -> properties.put(SnowflakeIdentifierGenerator.NODE_ID_SETTING, nodeId);
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.appleaww.messenger.id;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Time-ordered ids of milliseconds since {@link #EPOCH}, node id and sequence, kept within 53 bits for JavaScript.
+ * One instance per node id is shared by Hibernate and the JDBC write paths.
+ */
+public final class SnowflakeIdGenerator {
+    public static final Instant EPOCH = Instant.parse("2026-01-01T00:00:00Z");
+
+    static final int NODE_BITS = 5;
+    static final int SEQUENCE_BITS = 7;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    private static final int MAX_SEQUENCE = (1 << SEQUENCE_BITS) - 1;
+
+    private static final Map<Integer, SnowflakeIdGenerator> GENERATORS = new ConcurrentHashMap<>();
+
+    private final int nodeId;
+    private long lastTimestamp = -1;
+    private int sequence;
+
+    private SnowflakeIdGenerator(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public static SnowflakeIdGenerator forNode(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ", got " + nodeId);
+        }
+        return GENERATORS.computeIfAbsent(nodeId, SnowflakeIdGenerator::new);
+    }
+
+    public synchronized long nextId() {
+        long timestamp = currentTimestamp();
+
+        // a clock step back keeps counting on the last timestamp; an exhausted sequence waits for the
+        // clock to pass it, so an id never carries a time ahead of the wall clock
+        if (timestamp <= lastTimestamp) {
+            if (sequence == MAX_SEQUENCE) {
+                timestamp = awaitAfter(lastTimestamp);
+                lastTimestamp = timestamp;
+                sequence = 0;
+            } else {
+                sequence++;
+            }
+        } else {
+            lastTimestamp = timestamp;
+            sequence = 0;
+        }
+
+        return (lastTimestamp << (NODE_BITS + SEQUENCE_BITS)) | ((long) nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    private static long awaitAfter(long lastTimestamp) {
+        long timestamp = currentTimestamp();
+        while (timestamp <= lastTimestamp) {
+            Thread.onSpinWait();
+            timestamp = currentTimestamp();
+        }
+        return timestamp;
+    }
+
+    private static long currentTimestamp() {
+        return System.currentTimeMillis() - EPOCH.toEpochMilli();
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+}
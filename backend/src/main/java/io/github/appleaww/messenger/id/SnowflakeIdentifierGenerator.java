@@ -0,0 +1,35 @@
+package io.github.appleaww.messenger.id;
+
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+import org.hibernate.generator.GeneratorCreationContext;
+
+import java.lang.reflect.Member;
+import java.util.EnumSet;
+
+public class SnowflakeIdentifierGenerator implements BeforeExecutionGenerator {
+    public static final String NODE_ID_SETTING = "messenger.snowflake.node-id";
+
+    private final transient SnowflakeIdGenerator generator;
+
+    public SnowflakeIdentifierGenerator(SnowflakeId annotation, Member member, GeneratorCreationContext context) {
+        Object nodeId = context.getServiceRegistry()
+                .requireService(ConfigurationService.class)
+                .getSettings()
+                .getOrDefault(NODE_ID_SETTING, 0);
+        this.generator = SnowflakeIdGenerator.forNode(Integer.parseInt(nodeId.toString()));
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue, EventType eventType) {
+        return generator.nextId();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+}
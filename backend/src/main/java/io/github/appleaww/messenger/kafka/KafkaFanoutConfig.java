@@ -0,0 +1,55 @@
+package io.github.appleaww.messenger.kafka;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.kafka.autoconfigure.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+
+import java.util.Map;
+
+/**
+ * Every node reads the whole delivery topic in its own group from the latest offset;
+ * frames missed while a node was down are recovered by clients over REST.
+ */
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.fanout.kafka.enabled", havingValue = "true")
+public class KafkaFanoutConfig {
+
+    private final KafkaProperties kafkaProperties;
+
+    @Value("${app.fanout.kafka.topic:user-deliveries}")
+    private String topic;
+
+    @Value("${app.fanout.kafka.partitions:12}")
+    private int partitions;
+
+    @Bean
+    public NewTopic userDeliveriesTopic() {
+        return new NewTopic(topic, partitions, (short) 2)
+                .configs(Map.of(TopicConfig.RETENTION_MS_CONFIG, "3600000"));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, UserDelivery> userDeliveryListenerContainerFactory() {
+        Map<String, Object> props = kafkaProperties.buildConsumerProperties();
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, true);
+
+        DefaultKafkaConsumerFactory<String, UserDelivery> consumerFactory = new DefaultKafkaConsumerFactory<>(
+                props, new StringDeserializer(), new JacksonJsonDeserializer<>(UserDelivery.class, false));
+
+        ConcurrentKafkaListenerContainerFactory<String, UserDelivery> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        return factory;
+    }
+}
@@ -1,43 +1,255 @@
 package io.github.appleaww.messenger.kafka;
 
 import io.github.appleaww.messenger.metrics.event.UserActivityEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Ships activity events to Kafka without blocking the caller: through a bounded ring, spilling to a
+ * {@link SpillJournal} replayed oldest first when the ring is full or Kafka fails.
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class KafkaProducerService {
+    static final String USER_ACTIVITY_TOPIC = "user-activity-events";
+
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    // MetricsService depends on this service, so meters are registered here directly
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.telemetry.buffer-capacity:8192}")
+    private int bufferCapacity;
+
+    @Value("${app.telemetry.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.telemetry.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    @Value("${app.telemetry.retry.initial-backoff-ms:500}")
+    private long initialBackoffMs;
+
+    @Value("${app.telemetry.retry.max-backoff-ms:30000}")
+    private long maxBackoffMs;
+
+    // one file per node: the journal is locked while open, so nodes sharing a volume need their own
+    @Value("${app.telemetry.spill.path:data/telemetry-spill-${app.node-id:0}.journal}")
+    private String spillPath;
+
+    @Value("${app.telemetry.spill.max-bytes:67108864}")
+    private int spillMaxBytes;
+
+    private BlockingQueue<UserActivityEvent> buffer;
+    // null when the journal could not be opened: events that don't fit the ring are then dropped
+    private SpillJournal journal;
+    private Counter droppedEvents;
+    private Thread sender;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        open();
+        running = true;
+        sender = Thread.ofPlatform().name("telemetry-sender").daemon().start(this::runSendLoop);
+    }
+
+    void open() {
+        buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        Gauge.builder("messenger.telemetry.buffer.depth", buffer, BlockingQueue::size)
+                .register(meterRegistry);
+        droppedEvents = meterRegistry.counter("messenger.telemetry.dropped");
+
+        try {
+            journal = SpillJournal.open(Path.of(spillPath), spillMaxBytes);
+        } catch (IOException | RuntimeException e) {
+            // telemetry is not worth failing startup for
+            log.error("Error: telemetry spill journal {} could not be opened, running without spilling", spillPath, e);
+            return;
+        }
+        Gauge.builder("messenger.telemetry.spill.bytes", journal, SpillJournal::getUsedBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        if (!journal.isEmpty()) {
+            log.info("Telemetry spill journal holds {} bytes from a previous run, replaying", journal.getUsedBytes());
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (sender != null) {
+            running = false;
+            sender.interrupt();
+            sender.join(sendTimeoutMs);
+        }
+        // whatever is still buffered is replayed on the next start
+        spillBuffered();
+        if (journal != null) {
+            journal.close();
+        }
+    }
 
     public void sendUserActivity(String userId, String actionType){
-        try{
         UserActivityEvent userActivityEvent = new UserActivityEvent(
                 userId,
                 actionType,
                 Instant.now()
         );
-        String key = userId;
-
-        kafkaTemplate.send("user-activity-events", key, userActivityEvent)
-                .whenComplete((result, exception) -> {
-                    if (exception == null) {
-                        log.info("user.activity event(action: {}) sent successfully for user {} to topic {} ",
-                                actionType,
-                                userId,
-                                result.getRecordMetadata().topic());
-
-                    } else {
-                        log.error("Error: send user.activity event(action: {}) for user {}",
-                                actionType, userId, exception);
-                    }
-                });
-        }catch(Exception e){
-            log.error("Error: send user.activity event(action: {}) for user {}", actionType, userId, e);
-    }
-  }
+        if (!buffer.offer(userActivityEvent)) {
+            spill(userActivityEvent);
+        }
+    }
+
+    private void runSendLoop() {
+        long backoffMs = 0;
+        while (running) {
+            try {
+                if (backoffMs > 0) {
+                    spillBuffered();
+                    Thread.sleep(backoffMs);
+                }
+                backoffMs = transfer() ? 0 : Math.min(Math.max(backoffMs * 2, initialBackoffMs), maxBackoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Error: telemetry sender iteration", e);
+            }
+        }
+    }
+
+    /**
+     * One round of the sender: a journal batch if there is one, otherwise a ring batch.
+     *
+     * @return false if Kafka failed and the sender should back off
+     */
+    boolean transfer() throws InterruptedException {
+        if (journal != null && !journal.isEmpty()) {
+            List<byte[]> records = journal.peek(batchSize);
+            List<UserActivityEvent> events = new ArrayList<>(records.size());
+            for (byte[] record : records) {
+                try {
+                    events.add(decode(record));
+                } catch (UncheckedIOException e) {
+                    log.error("Error: unreadable record in the telemetry spill journal, skipped", e);
+                }
+            }
+            if (!sendAll(events).isEmpty()) {
+                return false;
+            }
+            journal.commit(records.size());
+            journal.compact();
+            log.debug("Replayed {} user.activity events from the spill journal", records.size());
+            return true;
+        }
+
+        UserActivityEvent first = buffer.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return true;
+        }
+        List<UserActivityEvent> batch = new ArrayList<>(batchSize);
+        batch.add(first);
+        buffer.drainTo(batch, batchSize - 1);
+
+        List<UserActivityEvent> failed = sendAll(batch);
+        failed.forEach(this::spill);
+        return failed.isEmpty();
+    }
+
+    /**
+     * @return the events Kafka did not acknowledge
+     */
+    private List<UserActivityEvent> sendAll(List<UserActivityEvent> events) {
+        List<CompletableFuture<?>> results = new ArrayList<>(events.size());
+        for (UserActivityEvent event : events) {
+            try {
+                results.add(kafkaTemplate.send(USER_ACTIVITY_TOPIC, event.userId(), event));
+            } catch (RuntimeException e) {
+                // metadata unavailable for max.block.ms, the broker is most likely down; each further
+                // send would block as long again, so the rest of the batch is not even tried
+                break;
+            }
+        }
+
+        // everything past the sends that were handed to Kafka has failed
+        List<UserActivityEvent> failed = new ArrayList<>(events.subList(results.size(), events.size()));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                failed.add(events.get(i));
+            } catch (InterruptedException e) {
+                // shutting down, the unconfirmed rest goes to the journal
+                Thread.currentThread().interrupt();
+                failed.addAll(events.subList(i, results.size()));
+                break;
+            }
+        }
+        if (!failed.isEmpty()) {
+            log.warn("Kafka did not accept {} of {} user.activity events", failed.size(), events.size());
+        }
+        return failed;
+    }
+
+    private void spillBuffered() {
+        List<UserActivityEvent> buffered = new ArrayList<>(buffer.size());
+        buffer.drainTo(buffered);
+        buffered.forEach(this::spill);
+    }
+
+    private void spill(UserActivityEvent event) {
+        if (journal == null || !journal.append(encode(event))) {
+            droppedEvents.increment();
+            log.debug("Telemetry spill journal is full or unavailable, user.activity event(action: {}) for user {} dropped",
+                    event.actionType(), event.userId());
+        }
+    }
+
+    static byte[] encode(UserActivityEvent event) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(event.userId());
+            out.writeUTF(event.actionType());
+            out.writeLong(event.timestamp().getEpochSecond());
+            out.writeInt(event.timestamp().getNano());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static UserActivityEvent decode(byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            return new UserActivityEvent(in.readUTF(), in.readUTF(), Instant.ofEpochSecond(in.readLong(), in.readInt()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
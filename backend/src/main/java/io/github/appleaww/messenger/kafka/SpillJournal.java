@@ -0,0 +1,183 @@
+package io.github.appleaww.messenger.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FIFO of byte records in a fixed-size, locked memory-mapped file, holding events Kafka could not take.
+ */
+@Slf4j
+public class SpillJournal implements Closeable {
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int readPosition;
+    private int writePosition;
+
+    private SpillJournal(FileChannel channel, int capacity) throws IOException {
+        this.channel = channel;
+        this.capacity = capacity;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        readPosition = buffer.getInt(0);
+        writePosition = buffer.getInt(Integer.BYTES);
+        if (readPosition < HEADER_BYTES || writePosition < readPosition || writePosition > capacity) {
+            if (readPosition != 0 || writePosition != 0) {
+                log.warn("Spill journal header is inconsistent (read {}, write {}), starting empty", readPosition, writePosition);
+            }
+            readPosition = HEADER_BYTES;
+            writePosition = HEADER_BYTES;
+            writeHeader();
+        }
+    }
+
+    public static SpillJournal open(Path path, int capacity) throws IOException {
+        if (capacity <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Spill journal capacity must exceed " + HEADER_BYTES + " bytes");
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (!tryLock(channel)) {
+                throw new IOException("Spill journal " + path + " is already open in another process");
+            }
+            return new SpillJournal(channel, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return false if the record doesn't fit after the last record
+     */
+    public synchronized boolean append(byte[] record) {
+        int required = Integer.BYTES + record.length;
+        if (writePosition + required > capacity) {
+            return false;
+        }
+        // length last, so a torn append is never mistaken for a record
+        buffer.put(writePosition + Integer.BYTES, record);
+        buffer.putInt(writePosition, record.length);
+        writePosition += required;
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Returns up to {@code maxRecords} of the oldest records without consuming them, discarding a corrupt tail.
+     */
+    public synchronized List<byte[]> peek(int maxRecords) {
+        List<byte[]> records = new ArrayList<>(Math.min(maxRecords, 64));
+        int position = readPosition;
+        while (records.size() < maxRecords && position < writePosition) {
+            int length = buffer.getInt(position);
+            if (length < 0 || length > writePosition - position - Integer.BYTES) {
+                truncate(position, length);
+                break;
+            }
+            byte[] record = new byte[length];
+            buffer.get(position + Integer.BYTES, record);
+            records.add(record);
+            position += Integer.BYTES + length;
+        }
+        return records;
+    }
+
+    /**
+     * Consumes the {@code count} oldest records.
+     */
+    public synchronized void commit(int count) {
+        for (int i = 0; i < count && readPosition < writePosition; i++) {
+            int length = buffer.getInt(readPosition);
+            if (length < 0 || length > writePosition - readPosition - Integer.BYTES) {
+                truncate(readPosition, length);
+                break;
+            }
+            readPosition += Integer.BYTES + length;
+        }
+        if (readPosition == writePosition) {
+            readPosition = HEADER_BYTES;
+            writePosition = HEADER_BYTES;
+        }
+        writeHeader();
+    }
+
+    public synchronized boolean isEmpty() {
+        return readPosition == writePosition;
+    }
+
+    public synchronized long getUsedBytes() {
+        return writePosition - readPosition;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void truncate(int position, int length) {
+        log.error("Spill journal record at {} has an invalid length {}, discarding {} bytes from there",
+                position, length, writePosition - position);
+        writePosition = position;
+        if (readPosition == writePosition) {
+            readPosition = HEADER_BYTES;
+            writePosition = HEADER_BYTES;
+        }
+        writeHeader();
+    }
+
+    /**
+     * Moves the unread records to the start of the file once the consumed space before them
+     * exceeds the free space after them. Called by the reader after a commit.
+     */
+    public synchronized void compact() {
+        int consumed = readPosition - HEADER_BYTES;
+        if (consumed == 0 || consumed <= capacity - writePosition) {
+            return;
+        }
+        int used = writePosition - readPosition;
+        // moving towards the start, so a forward copy never overwrites bytes not yet copied
+        byte[] chunk = new byte[Math.min(used, 64 * 1024)];
+        for (int offset = 0; offset < used; offset += chunk.length) {
+            int length = Math.min(chunk.length, used - offset);
+            buffer.get(readPosition + offset, chunk, 0, length);
+            buffer.put(HEADER_BYTES + offset, chunk, 0, length);
+        }
+        readPosition = HEADER_BYTES;
+        writePosition = HEADER_BYTES + used;
+        writeHeader();
+    }
+
+    // the lock lives as long as the channel; within this JVM a second open overlaps it
+    private static boolean tryLock(FileChannel channel) throws IOException {
+        try {
+            FileLock lock = channel.tryLock();
+            return lock != null;
+        } catch (OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    private void writeHeader() {
+        buffer.putInt(Integer.BYTES, writePosition);
+        buffer.putInt(0, readPosition);
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.appleaww.messenger.kafka;
+
+/**
+ * A record of the fan-out topic: a user-destination frame for another node, keyed by recipient,
+ * or a deleted chat every node drops from its membership index.
+ */
+public record UserDelivery(Type type,
+                           Long userId,
+                           Long chatId,
+                           String destination,
+                           Object payload,
+                           byte[] frame,
+                           int originNodeId
+) {
+    public enum Type { FRAME, MEMBERSHIP_INVALIDATED }
+
+    public UserDelivery(Long userId, String destination, Object payload, byte[] frame, int originNodeId) {
+        this(Type.FRAME, userId, null, destination, payload, frame, originNodeId);
+    }
+
+    public static UserDelivery membershipInvalidated(Long chatId, int originNodeId) {
+        return new UserDelivery(Type.MEMBERSHIP_INVALIDATED, null, chatId, null, null, null, originNodeId);
+    }
+
+    /**
+     * Record key: one recipient's frames, or one chat's invalidations, stay in order.
+     */
+    public String key() {
+        return (type == Type.MEMBERSHIP_INVALIDATED ? chatId : userId).toString();
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.appleaww.messenger.kafka;
+
+import io.github.appleaww.messenger.service.ChatMembershipIndex;
+import io.github.appleaww.messenger.websocket.MessageFanoutService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.fanout.kafka.enabled", havingValue = "true")
+public class UserDeliveryListener {
+    private final MessageFanoutService messageFanoutService;
+    private final ChatMembershipIndex chatMembershipIndex;
+
+    @Value("${app.node-id:0}")
+    private int nodeId;
+
+    @KafkaListener(
+            topics = "${app.fanout.kafka.topic:user-deliveries}",
+            groupId = "messenger-fanout-${app.node-id:0}",
+            containerFactory = "userDeliveryListenerContainerFactory"
+    )
+    public void onDelivery(UserDelivery delivery) {
+        if (delivery.type() == UserDelivery.Type.MEMBERSHIP_INVALIDATED) {
+            if (delivery.originNodeId() != nodeId) {
+                chatMembershipIndex.evict(delivery.chatId());
+            }
+            return;
+        }
+        messageFanoutService.deliverIfConnected(delivery);
+    }
+}
@@ -1,13 +1,17 @@
 package io.github.appleaww.messenger.metrics;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import io.github.appleaww.messenger.kafka.KafkaProducerService;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
@@ -40,8 +44,79 @@ public class MetricsService {
             meterRegistry.summary("messenger.sessions.duration").record(durationMs);
         }
     }
-    public MessageSendTimerContext startMessageSendLatency() {
-        Timer timer = meterRegistry.timer("messenger.messages.send.latency");
+    public void messageBatchFlushed(int batchSize){
+        meterRegistry.summary("messenger.messages.write-behind.batch.size").record(batchSize);
+    }
+    public void presenceFlushConfigured(long flushIntervalMs, Supplier<Number> pendingUsers){
+        Gauge.builder("messenger.presence.flush.interval", () -> flushIntervalMs)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("messenger.presence.flush.pending", pendingUsers)
+                .register(meterRegistry);
+    }
+    public void presenceFlushed(int batchSize, Duration lag){
+        meterRegistry.summary("messenger.presence.flush.batch.size").record(batchSize);
+        meterRegistry.timer("messenger.presence.flush.lag").record(lag);
+    }
+    public void websocketConnectionsTracked(Supplier<Number> connections){
+        Gauge.builder("messenger.websocket.connections", connections)
+                .register(meterRegistry);
+    }
+    public void websocketConnectionReaped(){
+        meterRegistry.counter("messenger.websocket.connections.reaped").increment();
+    }
+    public void websocketOutboundConfigured(Supplier<Number> bufferedBytes){
+        Gauge.builder("messenger.websocket.outbound.buffered", bufferedBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+    public void websocketFrameDropped(String policy){
+        meterRegistry.counter("messenger.websocket.outbound.dropped", "policy", policy).increment();
+    }
+    public void websocketSlowConsumerDisconnected(){
+        meterRegistry.counter("messenger.websocket.outbound.slow-consumer.disconnects").increment();
+    }
+    public void fanoutPublishConfigured(Supplier<Number> queuedDeliveries){
+        Gauge.builder("messenger.fanout.publish.queued", queuedDeliveries)
+                .register(meterRegistry);
+    }
+    public void fanoutPublishDropped(){
+        meterRegistry.counter("messenger.fanout.publish.dropped").increment();
+    }
+    public void dataSourceBulkheadConfigured(Supplier<Number> availablePermits, Supplier<Number> waitingThreads){
+        Gauge.builder("messenger.datasource.bulkhead.available", availablePermits)
+                .register(meterRegistry);
+        Gauge.builder("messenger.datasource.bulkhead.waiting", waitingThreads)
+                .register(meterRegistry);
+    }
+    public void availabilityChecked(String answeredBy){
+        meterRegistry.counter("messenger.auth.availability.checks", "answered-by", answeredBy).increment();
+    }
+    public void usersBulkRegistered(int count){
+        meterRegistry.counter("messenger.users.bulk-registered").increment(count);
+    }
+    public void tokenRefreshed(){
+        meterRegistry.counter("messenger.auth.refresh").increment();
+    }
+    public void refreshTokenReused(){
+        meterRegistry.counter("messenger.auth.refresh.reuse").increment();
+    }
+    public void passwordHashingConfigured(Supplier<Number> queuedTasks){
+        Gauge.builder("messenger.auth.password-hash.queued", queuedTasks)
+                .register(meterRegistry);
+    }
+    public void passwordHashRejected(){
+        meterRegistry.counter("messenger.auth.password-hash.rejected").increment();
+    }
+    public void identityCacheConfigured(Cache<?, ?> cache){
+        // cache.gets{result=hit|miss}, cache.evictions, cache.size tagged cache=identity
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "identity");
+    }
+    public MessageSendTimerContext startMessageSendLatency(String mode) {
+        Timer timer = Timer.builder("messenger.messages.send.latency")
+                .tag("mode", mode)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
 
         Timer.Sample sample = Timer.start(meterRegistry);
         return new MessageSendTimerContext(sample, timer);
@@ -0,0 +1,4 @@
+package io.github.appleaww.messenger.model.dto;
+
+// null for a field that wasn't asked about
+public record AvailabilityDTO(Boolean usernameAvailable, Boolean emailAvailable) {}
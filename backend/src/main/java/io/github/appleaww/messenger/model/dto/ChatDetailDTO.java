@@ -3,7 +3,9 @@ package io.github.appleaww.messenger.model.dto;
 import java.util.List;
 
 public record ChatDetailDTO(Long chatId,
+                            Long companionId,
                             String companionName,
                             String companionUsername,
-                            List<MessageDTO> messages) {
+                            List<MessageDTO> messages,
+                            String olderCursor) {
 }
@@ -0,0 +1,35 @@
+package io.github.appleaww.messenger.model.dto;
+
+import io.github.appleaww.messenger.model.entity.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position in a chat history: (sending_time, id) of a boundary message.
+ */
+public record MessageCursor(Instant sendingTime, Long id) {
+
+    public static MessageCursor of(Message message) {
+        return new MessageCursor(message.getSendingTime(), message.getId());
+    }
+
+    public static MessageCursor decode(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf('_');
+            return new MessageCursor(
+                    Instant.parse(decoded.substring(0, separator)),
+                    Long.parseLong(decoded.substring(separator + 1))
+            );
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid message cursor " + cursor);
+        }
+    }
+
+    public String encode() {
+        String raw = sendingTime + "_" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
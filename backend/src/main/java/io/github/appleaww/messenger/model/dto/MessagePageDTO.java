@@ -0,0 +1,8 @@
+package io.github.appleaww.messenger.model.dto;
+
+import java.util.List;
+
+public record MessagePageDTO(List<MessageDTO> messages,
+                             String olderCursor,
+                             String newerCursor) {
+}
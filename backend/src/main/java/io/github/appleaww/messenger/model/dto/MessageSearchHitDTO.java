@@ -0,0 +1,12 @@
+package io.github.appleaww.messenger.model.dto;
+
+import java.time.Instant;
+
+public record MessageSearchHitDTO(Long messageId,
+                                  Long chatId,
+                                  String headline,
+                                  Instant sendingTime,
+                                  Long senderId,
+                                  String senderName,
+                                  float rank) {
+}
@@ -0,0 +1,6 @@
+package io.github.appleaww.messenger.model.dto;
+
+import java.util.List;
+
+public record MessageSearchPageDTO(List<MessageSearchHitDTO> hits, String nextCursor) {
+}
@@ -0,0 +1,5 @@
+package io.github.appleaww.messenger.model.dto;
+
+public record ResyncHintDTO(
+        String reason
+) {}
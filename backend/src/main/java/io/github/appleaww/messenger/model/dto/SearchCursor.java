@@ -0,0 +1,32 @@
+package io.github.appleaww.messenger.model.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position in search results: (rank, id) of the last hit of a page.
+ */
+public record SearchCursor(float rank, Long id) {
+
+    public static SearchCursor of(MessageSearchHitDTO hit) {
+        return new SearchCursor(hit.rank(), hit.messageId());
+    }
+
+    public static SearchCursor decode(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf('_');
+            return new SearchCursor(
+                    Float.parseFloat(decoded.substring(0, separator)),
+                    Long.parseLong(decoded.substring(separator + 1))
+            );
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid search cursor " + cursor);
+        }
+    }
+
+    public String encode() {
+        String raw = rank + "_" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,3 @@
+package io.github.appleaww.messenger.model.dto.request;
+
+public record RefreshRequestDTO(String refreshToken) {}
@@ -0,0 +1,10 @@
+package io.github.appleaww.messenger.model.dto.request;
+
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+public record StatusQueryRequestDTO(
+        @NotNull(message = "User IDs list is required")
+        List<Long> userIds)
+{}
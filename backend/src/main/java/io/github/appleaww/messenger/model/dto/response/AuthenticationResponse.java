@@ -1,6 +1,8 @@
 package io.github.appleaww.messenger.model.dto.response;
 
 public record AuthenticationResponse(String token,
+                                     String refreshToken,
+                                     long expiresIn,
                                      Long userId,
                                      String role,
                                      String name,
@@ -0,0 +1,7 @@
+package io.github.appleaww.messenger.model.dto.response;
+
+import java.util.List;
+
+public record BulkRegistrationResponseDTO(int registered,
+                                          List<String> rejected
+) {}
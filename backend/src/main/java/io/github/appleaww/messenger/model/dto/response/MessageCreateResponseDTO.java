@@ -9,6 +9,7 @@ public record MessageCreateResponseDTO(
         boolean isRead,
         Long senderId,
         Long recipientId,
-        Long chatId
+        Long chatId,
+        boolean pending
 ) {}
 
@@ -1,5 +1,6 @@
 package io.github.appleaww.messenger.model.entity;
 
+import io.github.appleaww.messenger.id.SnowflakeId;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -14,7 +15,7 @@ import java.util.*;
 @ToString(exclude = {"participants", "messages"})
 public class Chat {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     @Column(name = "last_message", columnDefinition = "TEXT DEFAULT 'Send the first message!'", nullable = false)
@@ -37,7 +38,8 @@ public class Chat {
     )
     private Set<User> participants = new HashSet<>();
 
-    @OneToMany(mappedBy = "chat", cascade = CascadeType.ALL, orphanRemoval = true)
+    // no JPA cascade: deleting a chat would remove its messages one by one, the chat FK cascades instead
+    @OneToMany(mappedBy = "chat")
     @OrderBy("sendingTime ASC") //сортировка по времени отправки по ascending (возрастанию)
     private List<Message> messages = new ArrayList<>();
 
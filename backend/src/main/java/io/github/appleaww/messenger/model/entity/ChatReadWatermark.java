@@ -0,0 +1,39 @@
+package io.github.appleaww.messenger.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+@Entity
+@Table(name = "chat_read_watermarks", schema = "public")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatReadWatermark {
+    @EmbeddedId
+    private Key id;
+
+    // every message in the chat with id <= lastReadMessageId counts as read by the user
+    @Column(name = "last_read_message_id", nullable = false)
+    private Long lastReadMessageId;
+
+    @Column(name = "last_read_at", columnDefinition = "TIMESTAMP WITH TIME ZONE", nullable = false)
+    private Instant lastReadAt;
+
+    @Embeddable
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        @Column(name = "user_id", nullable = false)
+        private Long userId;
+
+        @Column(name = "chat_id", nullable = false)
+        private Long chatId;
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.appleaww.messenger.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * Canonical user pair of a direct chat; the primary key makes a second chat between the same users impossible.
+ */
+@Entity
+@Table(name = "direct_chats", schema = "public")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class DirectChat {
+    @EmbeddedId
+    private Key id;
+
+    @Column(name = "chat_id", nullable = false, unique = true)
+    private Long chatId;
+
+    @Embeddable
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        @Column(name = "low_user_id", nullable = false)
+        private Long lowUserId;
+
+        @Column(name = "high_user_id", nullable = false)
+        private Long highUserId;
+
+        public static Key of(Long userId, Long otherUserId) {
+            return userId < otherUserId ? new Key(userId, otherUserId) : new Key(otherUserId, userId);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.appleaww.messenger.model.entity;
 
+import io.github.appleaww.messenger.id.SnowflakeId;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -14,7 +15,7 @@ import java.util.Objects;
 @NoArgsConstructor
 public class Message {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     @Column(name = "sending_time", columnDefinition = "TIMESTAMP WITH TIME ZONE", nullable = false)
@@ -23,9 +24,6 @@ public class Message {
     @Column(name = "message_content")
     private String content;
 
-    @Column(name = "is_read", nullable = false)
-    private boolean isRead = false;
-
     @ManyToOne
     @JoinColumn(name = "chat_id", nullable = false)
     private Chat chat;
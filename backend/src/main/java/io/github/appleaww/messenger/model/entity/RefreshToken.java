@@ -0,0 +1,33 @@
+package io.github.appleaww.messenger.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Entity
+@Table(name = "refresh_tokens", schema = "public")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshToken {
+    // hex SHA-256 of the token handed to the client
+    @Id
+    @Column(name = "token_hash", length = 64, nullable = false)
+    private String tokenHash;
+
+    // every token rotated out of the same login shares the family
+    @Column(name = "family_id", nullable = false)
+    private UUID familyId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "expires_at", columnDefinition = "TIMESTAMP WITH TIME ZONE", nullable = false)
+    private Instant expiresAt;
+
+    @Column(name = "used_at", columnDefinition = "TIMESTAMP WITH TIME ZONE")
+    private Instant usedAt;
+}
@@ -0,0 +1,52 @@
+package io.github.appleaww.messenger.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Chat list read model: one row per (user, chat), updated on every send, read and chat
+ * creation so the chat list never has to touch the messages table.
+ */
+@Entity
+@Table(name = "user_chat_state", schema = "public")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserChatState {
+    @EmbeddedId
+    private Key id;
+
+    @Column(name = "companion_id")
+    private Long companionId;
+
+    @Column(name = "companion_name")
+    private String companionName;
+
+    @Column(name = "last_message_preview", columnDefinition = "TEXT", nullable = false)
+    private String lastMessagePreview;
+
+    // time of the newest message, or of chat creation while the chat is empty
+    @Column(name = "last_message_at", columnDefinition = "TIMESTAMP WITH TIME ZONE", nullable = false)
+    private Instant lastMessageAt;
+
+    @Column(name = "unread_count", nullable = false)
+    private Long unreadCount;
+
+    @Embeddable
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        @Column(name = "user_id", nullable = false)
+        private Long userId;
+
+        @Column(name = "chat_id", nullable = false)
+        private Long chatId;
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.appleaww.messenger.presence;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Single node stand-in for {@link JdbcPresenceRegistry}: the local session counters are the whole cluster.
+ */
+@Component
+@ConditionalOnProperty(name = "app.presence.store", havingValue = "local")
+public class InMemoryPresenceRegistry implements PresenceRegistry {
+    private final Map<Long, Integer> sessionCounts = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean sessionOpened(Long userId) {
+        return sessionCounts.merge(userId, 1, Integer::sum) == 1;
+    }
+
+    @Override
+    public boolean sessionClosed(Long userId) {
+        return SessionCounters.decrement(sessionCounts, userId) == 0;
+    }
+
+    @Override
+    public boolean isOnline(Long userId) {
+        return sessionCounts.containsKey(userId);
+    }
+
+    @Override
+    public boolean isOnlineOnOtherNode(Long userId) {
+        return false;
+    }
+
+    @Override
+    public Set<Long> filterOnline(Collection<Long> userIds) {
+        return userIds.stream().filter(sessionCounts::containsKey).collect(Collectors.toSet());
+    }
+
+    @Override
+    public Set<Long> getOnlineUsers() {
+        return Set.copyOf(sessionCounts.keySet());
+    }
+
+    @Override
+    public Set<Long> expireDeadNodes() {
+        return Set.of();
+    }
+
+    @Override
+    public Map<Long, Boolean> drainCorrections() {
+        return Map.of();
+    }
+}
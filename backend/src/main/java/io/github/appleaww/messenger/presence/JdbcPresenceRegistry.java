@@ -0,0 +1,303 @@
+package io.github.appleaww.messenger.presence;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Presence shared through Postgres: sessions are counted in memory, published by the heartbeat
+ * in batches and read back by every node into a bitmap of the users online elsewhere.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.presence.store", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcPresenceRegistry implements PresenceRegistry {
+    private static final String LIVE_NODE = "n.heartbeat_at > now() - ? * INTERVAL '1 millisecond'";
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO presence_sessions (node_id, user_id, session_count) VALUES (?, ?, ?)
+            ON CONFLICT (node_id, user_id) DO UPDATE SET session_count = EXCLUDED.session_count
+            """;
+
+    private static final String DELETE_SQL = "DELETE FROM presence_sessions WHERE node_id = ? AND user_id = ?";
+
+    // this node's own rows lag behind its counters, so they are left out and the counters used instead
+    private static final String OTHER_NODES_USERS_SQL = """
+            SELECT DISTINCT s.user_id
+            FROM presence_sessions s JOIN presence_nodes n ON n.node_id = s.node_id
+            WHERE s.node_id <> ? AND %s
+            """.formatted(LIVE_NODE);
+
+    // the outer query still sees the deleted rows, the dead nodes fail the heartbeat check
+    private static final String EXPIRE_SQL = """
+            WITH dead AS (
+            DELETE FROM presence_nodes WHERE node_id <> ? AND heartbeat_at <= now() - ? * INTERVAL '1 millisecond'
+            RETURNING node_id
+            ), gone AS (
+            DELETE FROM presence_sessions s USING dead WHERE s.node_id = dead.node_id
+            RETURNING s.user_id
+            )
+            SELECT DISTINCT g.user_id FROM gone g
+            WHERE NOT EXISTS (
+            SELECT 1 FROM presence_sessions s JOIN presence_nodes n ON n.node_id = s.node_id
+            WHERE s.user_id = g.user_id AND %s)
+            """.formatted(LIVE_NODE);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<Long, Integer> localSessionCounts = new ConcurrentHashMap<>();
+    // users whose local count changed since the last publish
+    private final Set<Long> unpublished = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Claim> claims = new ConcurrentHashMap<>();
+    private final Map<Long, Boolean> corrections = new ConcurrentHashMap<>();
+    // only the other nodes: a refresh swapping it in can never undo a local open or close
+    private final PresenceBitmap otherNodesNearCache = new PresenceBitmap();
+
+    @Value("${app.node-id:0}")
+    private int nodeId;
+
+    @Value("${app.presence.node-ttl-ms:15000}")
+    private long nodeTtlMs;
+
+    @Value("${app.presence.heartbeat-interval-ms:5000}")
+    private long heartbeatIntervalMs;
+
+    @Value("${app.presence.near-cache-refresh-ms:1000}")
+    private long nearCacheRefreshMs;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        registerNode();
+        // one thread each, so a slow near-cache rebuild never delays the heartbeat
+        scheduler = Executors.newScheduledThreadPool(2, Thread.ofPlatform().name("presence-", 0).daemon().factory());
+        scheduler.scheduleWithFixedDelay(() -> runSafely("heartbeat", this::heartbeat),
+                heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(() -> runSafely("near-cache refresh", this::refreshNearCache),
+                nearCacheRefreshMs, nearCacheRefreshMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public void registerNode() {
+        // rows left by a previous run of this node are stale
+        jdbcTemplate.update("DELETE FROM presence_sessions WHERE node_id = ?", nodeId);
+        registerNodeRow();
+        log.info("Presence registered for node {}", nodeId);
+    }
+
+    @Override
+    public boolean sessionOpened(Long userId) {
+        int localCount = localSessionCounts.merge(userId, 1, Integer::sum);
+        unpublished.add(userId);
+        if (localCount > 1) {
+            return false;
+        }
+
+        if (otherNodesNearCache.contains(userId)) {
+            claims.put(userId, new Claim(Claim.Kind.SUPPRESSED_ONLINE, System.nanoTime()));
+            return false;
+        }
+        claims.remove(userId);
+        return true;
+    }
+
+    @Override
+    public boolean sessionClosed(Long userId) {
+        int remaining = SessionCounters.decrement(localSessionCounts, userId);
+        if (remaining < 0) {
+            return false;
+        }
+        unpublished.add(userId);
+        if (remaining > 0) {
+            return false;
+        }
+
+        if (otherNodesNearCache.contains(userId)) {
+            claims.put(userId, new Claim(Claim.Kind.SUPPRESSED_OFFLINE, System.nanoTime()));
+            return false;
+        }
+        claims.put(userId, new Claim(Claim.Kind.REPORTED_OFFLINE, System.nanoTime()));
+        return true;
+    }
+
+    @Override
+    public boolean isOnline(Long userId) {
+        return localSessionCounts.containsKey(userId) || otherNodesNearCache.contains(userId);
+    }
+
+    @Override
+    public boolean isOnlineOnOtherNode(Long userId) {
+        return otherNodesNearCache.contains(userId);
+    }
+
+    @Override
+    public Set<Long> filterOnline(Collection<Long> userIds) {
+        Set<Long> online = otherNodesNearCache.filter(userIds);
+        userIds.stream().filter(localSessionCounts::containsKey).forEach(online::add);
+        return online;
+    }
+
+    @Override
+    public Set<Long> getOnlineUsers() {
+        Set<Long> online = Arrays.stream(otherNodesNearCache.toArray()).boxed().collect(Collectors.toSet());
+        online.addAll(localSessionCounts.keySet());
+        return online;
+    }
+
+    @Override
+    public Set<Long> expireDeadNodes() {
+        List<Long> userIds = jdbcTemplate.queryForList(EXPIRE_SQL, Long.class, nodeId, nodeTtlMs, nodeTtlMs);
+        if (userIds.isEmpty()) {
+            return Set.of();
+        }
+        userIds.forEach(otherNodesNearCache::remove);
+        // sessions opened here since the last publish are not in the table yet
+        Set<Long> offline = userIds.stream()
+                .filter(userId -> !localSessionCounts.containsKey(userId))
+                .collect(Collectors.toSet());
+        log.info("Expired presence of {} users on dead nodes", offline.size());
+        return offline;
+    }
+
+    @Override
+    public Map<Long, Boolean> drainCorrections() {
+        Map<Long, Boolean> drained = new HashMap<>();
+        for (Long userId : corrections.keySet()) {
+            Boolean online = corrections.remove(userId);
+            if (online != null) {
+                drained.put(userId, online);
+            }
+        }
+        return drained;
+    }
+
+    public void heartbeat() {
+        int updated = jdbcTemplate.update("UPDATE presence_nodes SET heartbeat_at = now() WHERE node_id = ?", nodeId);
+        if (updated == 0) {
+            republish();
+            return;
+        }
+        publish();
+    }
+
+    public void refreshNearCache() {
+        Roaring64Bitmap otherNodesSnapshot = new Roaring64Bitmap();
+        jdbcTemplate.query(OTHER_NODES_USERS_SQL, resultSet -> {
+            otherNodesSnapshot.addLong(resultSet.getLong(1));
+        }, nodeId, nodeTtlMs);
+        otherNodesNearCache.replace(otherNodesSnapshot);
+        reconcileClaims();
+    }
+
+    // a transition reported from a stale view of the other nodes is corrected once their rows are read
+    private void reconcileClaims() {
+        long now = System.nanoTime();
+        long settleNanos = TimeUnit.MILLISECONDS.toNanos(2 * heartbeatIntervalMs + nearCacheRefreshMs);
+        long deadNodeNanos = TimeUnit.MILLISECONDS.toNanos(nodeTtlMs) + settleNanos;
+
+        claims.forEach((userId, claim) -> {
+            boolean online = isOnline(userId);
+            Boolean correction = switch (claim.kind()) {
+                case REPORTED_OFFLINE -> online ? Boolean.TRUE : null;
+                case SUPPRESSED_OFFLINE -> online ? null : Boolean.FALSE;
+                // whoever held the other session may have reported the user offline when it went away
+                case SUPPRESSED_ONLINE -> online && !otherNodesNearCache.contains(userId) ? Boolean.TRUE : null;
+            };
+            long age = now - claim.at();
+            boolean expired = age > (claim.kind() == Claim.Kind.SUPPRESSED_ONLINE ? deadNodeNanos : settleNanos);
+            if ((correction != null || expired) && claims.remove(userId, claim) && correction != null) {
+                corrections.put(userId, correction);
+            }
+        });
+    }
+
+    private void publish() {
+        List<Long> userIds = new ArrayList<>(unpublished);
+        if (userIds.isEmpty()) {
+            return;
+        }
+        userIds.forEach(unpublished::remove);
+
+        List<Object[]> upserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (Long userId : userIds) {
+            Integer count = localSessionCounts.get(userId);
+            if (count != null) {
+                upserts.add(new Object[]{nodeId, userId, count});
+            } else {
+                deletes.add(new Object[]{nodeId, userId});
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(UPSERT_SQL, upserts);
+                jdbcTemplate.batchUpdate(DELETE_SQL, deletes);
+            });
+        } catch (RuntimeException e) {
+            // the counters stay authoritative, the next heartbeat publishes them again
+            unpublished.addAll(userIds);
+            throw e;
+        }
+    }
+
+    // another node took us for dead and swept our rows: publish every local session again
+    private void republish() {
+        unpublished.clear();
+        List<Object[]> rows = localSessionCounts.entrySet().stream()
+                .map(entry -> new Object[]{nodeId, entry.getKey(), entry.getValue()})
+                .toList();
+        // the node row goes last: if the rows fail, the next heartbeat still finds it missing and retries
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+        registerNodeRow();
+        log.warn("Presence of node {} was expired, republished {} users", nodeId, rows.size());
+    }
+
+    // an exception would cancel the periodic task for good
+    private void runSafely(String task, Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (Exception e) {
+            log.error("Error: presence {}", task, e);
+        }
+    }
+
+    private void registerNodeRow() {
+        jdbcTemplate.update("""
+                INSERT INTO presence_nodes (node_id, heartbeat_at) VALUES (?, now())
+                ON CONFLICT (node_id) DO UPDATE SET heartbeat_at = now()
+                """, nodeId);
+    }
+
+    private record Claim(Kind kind, long at) {
+        enum Kind { REPORTED_OFFLINE, SUPPRESSED_OFFLINE, SUPPRESSED_ONLINE }
+    }
+}
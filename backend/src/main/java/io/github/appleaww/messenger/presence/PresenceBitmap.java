@@ -0,0 +1,93 @@
+package io.github.appleaww.messenger.presence;
+
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Online user ids as a compressed bitmap, guarded by a read-write lock.
+ */
+public class PresenceBitmap {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Roaring64Bitmap bitmap = new Roaring64Bitmap();
+
+    public void add(long userId) {
+        lock.writeLock().lock();
+        try {
+            bitmap.addLong(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long userId) {
+        lock.writeLock().lock();
+        try {
+            bitmap.removeLong(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(long userId) {
+        lock.readLock().lock();
+        try {
+            return bitmap.contains(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the given users that are online, checked under one lock acquisition
+     */
+    public Set<Long> filter(Collection<Long> userIds) {
+        Set<Long> online = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            for (Long userId : userIds) {
+                if (bitmap.contains(userId)) {
+                    online.add(userId);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return online;
+    }
+
+    public long[] toArray() {
+        lock.readLock().lock();
+        try {
+            return bitmap.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long cardinality() {
+        lock.readLock().lock();
+        try {
+            return bitmap.getLongCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Swaps in a bitmap built elsewhere; the caller must not modify it afterwards.
+     */
+    public void replace(Roaring64Bitmap snapshot) {
+        snapshot.runOptimize();
+        lock.writeLock().lock();
+        try {
+            bitmap = snapshot;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
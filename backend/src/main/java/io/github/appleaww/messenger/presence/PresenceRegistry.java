@@ -0,0 +1,48 @@
+package io.github.appleaww.messenger.presence;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cluster-wide view of who has at least one open WebSocket session. Every node counts
+ * its own sessions per user; a user is online while any live node reports one.
+ */
+public interface PresenceRegistry {
+
+    /**
+     * @return true if this is the user's first session in the cluster
+     */
+    boolean sessionOpened(Long userId);
+
+    /**
+     * @return true if this was the user's last session in the cluster
+     */
+    boolean sessionClosed(Long userId);
+
+    boolean isOnline(Long userId);
+
+    /**
+     * @return true if the user has a session on a node other than this one, as of the last near-cache refresh
+     */
+    boolean isOnlineOnOtherNode(Long userId);
+
+    /**
+     * @return the given users that are online
+     */
+    Set<Long> filterOnline(Collection<Long> userIds);
+
+    Set<Long> getOnlineUsers();
+
+    /**
+     * Drops the sessions of nodes that stopped sending heartbeats.
+     *
+     * @return users that had sessions only on those nodes
+     */
+    Set<Long> expireDeadNodes();
+
+    /**
+     * @return users whose reported status the latest view of the other nodes contradicts, with their actual status
+     */
+    Map<Long, Boolean> drainCorrections();
+}
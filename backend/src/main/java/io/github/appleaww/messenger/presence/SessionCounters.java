@@ -0,0 +1,23 @@
+package io.github.appleaww.messenger.presence;
+
+import java.util.Map;
+
+final class SessionCounters {
+
+    private SessionCounters() {
+    }
+
+    /**
+     * Decrements the user's session count and removes the entry when it reaches zero.
+     *
+     * @return the remaining count, or -1 if the user had no sessions counted
+     */
+    static int decrement(Map<Long, Integer> sessionCounts, Long userId) {
+        int[] remaining = {-1};
+        sessionCounts.computeIfPresent(userId, (id, count) -> {
+            remaining[0] = count - 1;
+            return count > 1 ? count - 1 : null;
+        });
+        return remaining[0];
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.appleaww.messenger.repository;
+
+import io.github.appleaww.messenger.model.entity.ChatReadWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface ChatReadWatermarkRepository extends JpaRepository<ChatReadWatermark, ChatReadWatermark.Key> {
+
+    // moves the watermark forward only and takes the messages it passes off the unread count in the same
+    // statement; both CTEs read the previous watermark from one snapshot, callers lock the chat first
+    @Modifying
+    @Query(value = """
+            WITH previous AS (
+            SELECT COALESCE(MAX(w.last_read_message_id), 0) AS id FROM chat_read_watermarks w
+            WHERE w.user_id = :userId AND w.chat_id = :chatId),
+            advanced AS (
+            INSERT INTO chat_read_watermarks (user_id, chat_id, last_read_message_id, last_read_at)
+            SELECT :userId, m.chat_id, m.id, now() FROM messages m WHERE m.id = :messageId AND m.chat_id = :chatId
+            ON CONFLICT (user_id, chat_id) DO UPDATE
+            SET last_read_message_id = EXCLUDED.last_read_message_id, last_read_at = EXCLUDED.last_read_at
+            WHERE chat_read_watermarks.last_read_message_id < EXCLUDED.last_read_message_id
+            RETURNING last_read_message_id AS id)
+            UPDATE user_chat_state s SET unread_count = GREATEST(s.unread_count - (
+            SELECT count(*) FROM messages m WHERE m.chat_id = :chatId AND m.user_id <> :userId
+            AND m.id > p.id AND m.id <= a.id), 0)
+            FROM previous p, advanced a
+            WHERE s.user_id = :userId AND s.chat_id = :chatId
+            """, nativeQuery = true)
+    int advance(@Param("userId") Long userId, @Param("chatId") Long chatId, @Param("messageId") Long messageId);
+
+    // the chat is read up to its newest message, so nothing in it is unread any more
+    @Modifying
+    @Query(value = """
+            WITH advanced AS (
+            INSERT INTO chat_read_watermarks (user_id, chat_id, last_read_message_id, last_read_at)
+            SELECT :userId, :chatId, MAX(m.id), now() FROM messages m WHERE m.chat_id = :chatId
+            HAVING MAX(m.id) IS NOT NULL
+            ON CONFLICT (user_id, chat_id) DO UPDATE
+            SET last_read_message_id = EXCLUDED.last_read_message_id, last_read_at = EXCLUDED.last_read_at
+            WHERE chat_read_watermarks.last_read_message_id < EXCLUDED.last_read_message_id)
+            UPDATE user_chat_state s SET unread_count = 0
+            WHERE s.user_id = :userId AND s.chat_id = :chatId AND s.unread_count <> 0
+            """, nativeQuery = true)
+    int advanceToLatest(@Param("userId") Long userId, @Param("chatId") Long chatId);
+
+    // a message whose id is below a watermark that already passed it committed late; the watermark moves back
+    // below it and everything it un-reads is added to the unread count, so the message is not silently skipped
+    @Modifying
+    @Query(value = """
+            WITH rewound AS (
+            UPDATE chat_read_watermarks w SET last_read_message_id = :firstMessageId - 1
+            FROM chat_read_watermarks p
+            WHERE w.chat_id = :chatId AND w.user_id <> :senderId AND w.last_read_message_id >= :firstMessageId
+            AND p.user_id = w.user_id AND p.chat_id = w.chat_id
+            RETURNING w.user_id, p.last_read_message_id AS previous)
+            UPDATE user_chat_state s SET unread_count = s.unread_count + (
+            SELECT count(*) FROM messages m WHERE m.chat_id = :chatId AND m.user_id = :senderId
+            AND m.id > :firstMessageId AND m.id <= r.previous)
+            FROM rewound r
+            WHERE s.user_id = r.user_id AND s.chat_id = :chatId
+            """, nativeQuery = true)
+    int rewindForLateMessages(@Param("chatId") Long chatId,
+                              @Param("senderId") Long senderId,
+                              @Param("firstMessageId") Long firstMessageId);
+
+    @Query("SELECT w.lastReadMessageId FROM ChatReadWatermark w WHERE w.id.userId = :userId AND w.id.chatId = :chatId")
+    Optional<Long> findLastReadMessageId(@Param("userId") Long userId, @Param("chatId") Long chatId);
+
+    @Query("SELECT w FROM ChatReadWatermark w WHERE w.id.userId = :userId")
+    List<ChatReadWatermark> findAllByUserId(@Param("userId") Long userId);
+}
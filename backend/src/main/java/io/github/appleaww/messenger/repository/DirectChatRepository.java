@@ -0,0 +1,18 @@
+package io.github.appleaww.messenger.repository;
+
+import io.github.appleaww.messenger.model.entity.DirectChat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface DirectChatRepository extends JpaRepository<DirectChat, DirectChat.Key> {
+
+    // returns 0 when the pair already has a chat, including one created by a concurrent request
+    @Modifying
+    @Query(value = """
+            INSERT INTO direct_chats (low_user_id, high_user_id, chat_id) VALUES (:lowUserId, :highUserId, :chatId)
+            ON CONFLICT (low_user_id, high_user_id) DO NOTHING
+            """, nativeQuery = true)
+    int claim(@Param("lowUserId") Long lowUserId, @Param("highUserId") Long highUserId, @Param("chatId") Long chatId);
+}
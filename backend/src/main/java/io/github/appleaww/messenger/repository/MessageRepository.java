@@ -2,7 +2,48 @@ package io.github.appleaww.messenger.repository;
 
 import io.github.appleaww.messenger.model.entity.Message;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.List;
+
+// keyset queries over the (chat_id, sending_time, id) index; "newest"/"before" return newest first.
+// The plain sending_time bound repeats the row comparison so the planner can prune partitions.
 public interface MessageRepository extends JpaRepository<Message, Long> {
-}
 
+    @Query(value = """
+            SELECT * FROM messages m WHERE m.chat_id = :chatId
+            ORDER BY m.sending_time DESC, m.id DESC LIMIT :limit
+            """, nativeQuery = true)
+    List<Message> findNewest(@Param("chatId") Long chatId, @Param("limit") int limit);
+
+    @Query(value = """
+            SELECT * FROM messages m WHERE m.chat_id = :chatId
+            AND m.sending_time <= :sendingTime AND (m.sending_time, m.id) < (:sendingTime, :id)
+            ORDER BY m.sending_time DESC, m.id DESC LIMIT :limit
+            """, nativeQuery = true)
+    List<Message> findBefore(@Param("chatId") Long chatId,
+                             @Param("sendingTime") Instant sendingTime,
+                             @Param("id") Long id,
+                             @Param("limit") int limit);
+
+    @Query(value = """
+            SELECT * FROM messages m WHERE m.chat_id = :chatId
+            AND m.sending_time >= :sendingTime AND (m.sending_time, m.id) > (:sendingTime, :id)
+            ORDER BY m.sending_time ASC, m.id ASC LIMIT :limit
+            """, nativeQuery = true)
+    List<Message> findAfter(@Param("chatId") Long chatId,
+                            @Param("sendingTime") Instant sendingTime,
+                            @Param("id") Long id,
+                            @Param("limit") int limit);
+
+    @Query(value = """
+            SELECT * FROM messages m WHERE m.chat_id = :chatId
+            AND m.sending_time >= :sendingTime
+            ORDER BY m.sending_time ASC, m.id ASC LIMIT :limit
+            """, nativeQuery = true)
+    List<Message> findFrom(@Param("chatId") Long chatId,
+                           @Param("sendingTime") Instant sendingTime,
+                           @Param("limit") int limit);
+}
@@ -0,0 +1,96 @@
+package io.github.appleaww.messenger.repository;
+
+import io.github.appleaww.messenger.model.dto.MessageSearchHitDTO;
+import io.github.appleaww.messenger.model.dto.SearchCursor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.web.util.HtmlUtils;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Full-text search over the newest matching messages of the user's chats, ranked and paged by (rank, id).
+ * Headlines are HTML-escaped with the matches wrapped in {@code <b>}.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MessageSearchRepository {
+    // only the newest :candidates matches are ranked: a common term is read backwards from the
+    // primary key until enough rows match, instead of fetching and ranking every hit on every page
+    static final String SEARCH_SQL = """
+            SELECT hit.id, hit.chat_id, hit.sending_time, hit.user_id, hit.rank, u.name AS sender_name,
+            ts_headline('simple', translate(hit.message_content, chr(2) || chr(3), ''),
+            websearch_to_tsquery('simple', :query),
+            'MaxFragments=1, MaxWords=20, MinWords=5, StartSel=' || chr(2) || ', StopSel=' || chr(3)) AS headline
+            FROM (
+            SELECT c.id, c.chat_id, c.sending_time, c.user_id, c.message_content,
+            ts_rank(c.content_tsv, websearch_to_tsquery('simple', :query)) AS rank
+            FROM (
+            SELECT m.id, m.chat_id, m.sending_time, m.user_id, m.message_content, m.content_tsv
+            FROM messages m
+            WHERE m.chat_id IN (SELECT uc.chat_id FROM user_chats uc WHERE uc.user_id = :userId)
+            AND m.content_tsv @@ websearch_to_tsquery('simple', :query)
+            %s
+            ORDER BY m.id DESC
+            LIMIT :candidates
+            ) c
+            ) hit
+            JOIN users u ON u.id = hit.user_id
+            %s
+            ORDER BY hit.rank DESC, hit.id DESC
+            LIMIT :limit
+            """;
+
+    // ts_headline copies message text verbatim, so matches are marked with control characters stripped
+    // from the content and only turned into tags after the text is escaped
+    private static final char START_SEL = '\u0002';
+    private static final char STOP_SEL = '\u0003';
+
+    private static final RowMapper<MessageSearchHitDTO> HIT_MAPPER = (rs, rowNum) -> new MessageSearchHitDTO(
+            rs.getLong("id"),
+            rs.getLong("chat_id"),
+            escapeHeadline(rs.getString("headline")),
+            rs.getObject("sending_time", OffsetDateTime.class).toInstant(),
+            rs.getLong("user_id"),
+            rs.getString("sender_name"),
+            rs.getFloat("rank")
+    );
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Value("${app.search.candidate-limit:1000}")
+    private int candidateLimit;
+
+    public List<MessageSearchHitDTO> search(Long userId, String query, Long chatId, SearchCursor after, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("query", query)
+                .addValue("limit", limit)
+                .addValue("candidates", candidateLimit);
+
+        String chatFilter = "";
+        if (chatId != null) {
+            chatFilter = "AND m.chat_id = :chatId";
+            params.addValue("chatId", chatId);
+        }
+
+        String cursorFilter = "";
+        if (after != null) {
+            cursorFilter = "WHERE (hit.rank, hit.id) < (CAST(:afterRank AS REAL), :afterId)";
+            params.addValue("afterRank", after.rank()).addValue("afterId", after.id());
+        }
+
+        return namedParameterJdbcTemplate.query(SEARCH_SQL.formatted(chatFilter, cursorFilter), params, HIT_MAPPER);
+    }
+
+    static String escapeHeadline(String headline) {
+        return HtmlUtils.htmlEscape(headline)
+                .replace(String.valueOf(START_SEL), "<b>")
+                .replace(String.valueOf(STOP_SEL), "</b>");
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.appleaww.messenger.repository;
+
+import io.github.appleaww.messenger.model.entity.UserChatState;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface UserChatStateRepository extends JpaRepository<UserChatState, UserChatState.Key> {
+
+    // one statement updates both participants; messages that arrive out of order don't overwrite a newer preview
+    @Modifying
+    @Query(value = """
+            UPDATE user_chat_state SET
+            last_message_preview = CASE WHEN last_message_at <= :sentAt THEN COALESCE(LEFT(CAST(:preview AS TEXT), 200), '') ELSE last_message_preview END,
+            last_message_at = GREATEST(last_message_at, :sentAt),
+            unread_count = unread_count + CASE WHEN user_id = :senderId THEN 0 ELSE :count END
+            WHERE chat_id = :chatId
+            """, nativeQuery = true)
+    int recordMessages(@Param("chatId") Long chatId,
+                       @Param("senderId") Long senderId,
+                       @Param("preview") String preview,
+                       @Param("sentAt") Instant sentAt,
+                       @Param("count") int count);
+
+    // readers and writers of a chat lock its rows before touching read watermarks, in user id order
+    @Query(value = "SELECT s.user_id FROM user_chat_state s WHERE s.chat_id = :chatId ORDER BY s.user_id FOR UPDATE",
+            nativeQuery = true)
+    List<Long> lockChat(@Param("chatId") Long chatId);
+
+    @Query("""
+            SELECT s FROM UserChatState s WHERE s.id.userId = :userId
+            ORDER BY s.lastMessageAt DESC, s.id.chatId DESC
+            """)
+    List<UserChatState> findFirstPage(@Param("userId") Long userId, Limit limit);
+
+    @Query("""
+            SELECT s FROM UserChatState s WHERE s.id.userId = :userId
+            AND (s.lastMessageAt < :beforeTime OR (s.lastMessageAt = :beforeTime AND s.id.chatId < :beforeChatId))
+            ORDER BY s.lastMessageAt DESC, s.id.chatId DESC
+            """)
+    List<UserChatState> findPageBefore(@Param("userId") Long userId,
+                                       @Param("beforeTime") Instant beforeTime,
+                                       @Param("beforeChatId") Long beforeChatId,
+                                       Limit limit);
+
+    // each chat list row names the other participant, so the rows double as a contact list
+    @Query("""
+            SELECT s.id.userId AS userId, s.companionId AS contactId FROM UserChatState s
+            WHERE s.id.userId IN :userIds AND s.companionId IS NOT NULL
+            """)
+    List<Contact> findContacts(@Param("userIds") Collection<Long> userIds);
+
+    interface Contact {
+        Long getUserId();
+
+        Long getContactId();
+    }
+}
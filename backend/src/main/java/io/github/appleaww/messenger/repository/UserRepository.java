@@ -1,9 +1,13 @@
 package io.github.appleaww.messenger.repository;
 
 import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.security.UserIdentity;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
@@ -15,6 +19,16 @@ public interface UserRepository extends JpaRepository<User, Long> {
     @Query("SELECT u FROM User u LEFT JOIN FETCH u.chats WHERE u.id = :userId")
     Optional<User> findWithChatsById(Long userId);
 
-    @Query("SELECT u FROM User u LEFT JOIN FETCH u.chats c LEFT JOIN FETCH c.messages WHERE u.id = :userId")
-    Optional<User> findWithChatsAndMessagesById(Long userId);
+    @Query("SELECT new io.github.appleaww.messenger.security.UserIdentity(u.id, u.username, u.name, u.role, u.isPremium) " +
+            "FROM User u WHERE u.id = :userId")
+    Optional<UserIdentity> findIdentityById(Long userId);
+
+    @Query("SELECT u.id AS userId, u.lastSeen AS lastSeen FROM User u WHERE u.id IN :userIds")
+    List<LastSeen> findLastSeenByIdIn(Collection<Long> userIds);
+
+    interface LastSeen {
+        Long getUserId();
+
+        Instant getLastSeen();
+    }
 }
@@ -0,0 +1,28 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.model.entity.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * The only way an account gets the ADMIN role: its email is listed in {@code app.admin-emails}.
+ */
+@Component
+public class AdminEmails {
+    @Value("${app.admin-emails:}")
+    private String adminEmails;
+
+    public User.Role roleFor(String email){
+        return isAdminEmail(email) ? User.Role.ADMIN : User.Role.USER;
+    }
+
+    private boolean isAdminEmail(String email){
+        if(email == null || adminEmails.isBlank()){
+            return false;
+        }
+        return Arrays.stream(adminEmails.split(","))
+                .map(String::trim).anyMatch(adminEmail -> adminEmail.equalsIgnoreCase(email));
+    }
+}
@@ -1,40 +1,40 @@
 package io.github.appleaww.messenger.security;
 
 import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.model.dto.AvailabilityDTO;
 import io.github.appleaww.messenger.model.dto.response.AuthenticationResponse;
 import io.github.appleaww.messenger.model.dto.request.LoginRequestDTO;
+import io.github.appleaww.messenger.model.dto.request.RefreshRequestDTO;
 import io.github.appleaww.messenger.model.dto.request.RegisterRequestDTO;
 import io.github.appleaww.messenger.model.entity.User;
 import io.github.appleaww.messenger.repository.UserRepository;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.hibernate.cfg.Environment;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-
-import java.util.Arrays;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class AuthenticationService {
     private final JwtTokenProvider jwtTokenProvider;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashing passwordHashing;
+    private final RefreshTokenService refreshTokenService;
+    private final RegistrationIndex registrationIndex;
     private final UserRepository userRepository;
     private final MetricsService metricsService;
+    private final TransactionTemplate transactionTemplate;
+    private final AdminEmails adminEmails;
 
-    @Value("${app.admin-emails:}")
-    private String adminEmails;
-
-    @Transactional
+    // the password is hashed before the transaction, so no connection is held during bcrypt
     public void register(RegisterRequestDTO registerRequestDTO){
-        if(userRepository.existsByEmail(registerRequestDTO.email())){
+        if(registrationIndex.isEmailTaken(registerRequestDTO.email())){
             throw new RuntimeException("user with the email " + registerRequestDTO.email() + " already exist");
         }
-        if(userRepository.existsByUsername(registerRequestDTO.username())){
+        if(registrationIndex.isUsernameTaken(registerRequestDTO.username())){
             throw new RuntimeException("user with the username " + registerRequestDTO.username() + " already exist");
         }
 
@@ -43,43 +43,70 @@ public class AuthenticationService {
         user.setUsername(registerRequestDTO.username());
         user.setName(registerRequestDTO.name());
 
-        boolean isAdmin = isAdminEmail(registerRequestDTO.email());
-        user.setRole(isAdmin ? User.Role.ADMIN : User.Role.USER);
+        user.setRole(adminEmails.roleFor(registerRequestDTO.email()));
 
-        String hashedPassword = passwordEncoder.encode(registerRequestDTO.password());
+        String hashedPassword = passwordHashing.encode(registerRequestDTO.password());
         user.setPassword(hashedPassword);
 
-        userRepository.save(user);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                userRepository.saveAndFlush(user);
+                registrationIndex.registered(user.getUsername(), user.getEmail());
+            });
+        } catch (DataIntegrityViolationException e) {
+            // the filter answered free for a name taken on another node or before its rebuild
+            if(userRepository.existsByEmail(registerRequestDTO.email())){
+                throw new RuntimeException("user with the email " + registerRequestDTO.email() + " already exist");
+            }
+            throw new RuntimeException("user with the username " + registerRequestDTO.username() + " already exist");
+        }
 
         metricsService.userRegistered();
 
         log.debug("User has registered with the email {}", registerRequestDTO.email());
     }
 
-    @Transactional(readOnly = true)
+    // not transactional: no connection is held while the password is being hashed
     public AuthenticationResponse login(LoginRequestDTO loginRequestDTO){
         User user = userRepository.findByEmail(loginRequestDTO.email())
                 .orElseThrow(()->new EntityNotFoundException("User with the email "+ loginRequestDTO.email() + " does not exist"));
 
-        if(!passwordEncoder.matches(loginRequestDTO.password(),user.getPassword())){
+        if(!passwordHashing.matches(loginRequestDTO.password(),user.getPassword())){
             throw new RuntimeException("Invalid password");
         }
 
-        String token = jwtTokenProvider.generateToken(user);
+        String refreshToken = refreshTokenService.issue(user.getId());
 
         log.debug("User has logged in with the email {}", user.getEmail());
 
         metricsService.userLogged();
 
-        return new AuthenticationResponse(token,user.getId(),user.getRole().toString(),user.getName(),user.getEmail());
+        return authenticationResponse(user, refreshToken);
+    }
+
+    public AvailabilityDTO checkAvailability(String username, String email){
+        Boolean usernameAvailable = username == null ? null : !registrationIndex.isUsernameTaken(username);
+        Boolean emailAvailable = email == null ? null : !registrationIndex.isEmailTaken(email);
+        return new AvailabilityDTO(usernameAvailable, emailAvailable);
     }
 
-    private boolean isAdminEmail(String email){
-        if(email == null || adminEmails.isBlank()){
-            return false;
+    public AuthenticationResponse refresh(RefreshRequestDTO refreshRequestDTO){
+        if(refreshRequestDTO.refreshToken() == null || refreshRequestDTO.refreshToken().isBlank()){
+            throw new BadCredentialsException("Missing refresh token");
         }
-        return Arrays.stream(adminEmails.split(","))
-                .map(String::trim).anyMatch(adminEmail -> adminEmail.equalsIgnoreCase(email));
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(refreshRequestDTO.refreshToken());
+
+        User user = userRepository.findById(rotation.userId())
+                .orElseThrow(()->new EntityNotFoundException("User with id " + rotation.userId() + " does not exist"));
+
+        log.debug("User with id {} refreshed the access token", user.getId());
 
+        return authenticationResponse(user, rotation.refreshToken());
+    }
+
+    private AuthenticationResponse authenticationResponse(User user, String refreshToken){
+        String token = jwtTokenProvider.generateToken(user);
+        return new AuthenticationResponse(token, refreshToken, jwtTokenProvider.getExpirationMs(),
+                user.getId(), user.getRole().toString(), user.getName(), user.getEmail());
     }
 }
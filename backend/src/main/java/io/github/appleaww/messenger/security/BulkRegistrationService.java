@@ -0,0 +1,110 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.model.dto.request.RegisterRequestDTO;
+import io.github.appleaww.messenger.model.dto.response.BulkRegistrationResponseDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Registers a whole organization in one request; users colliding with an existing username or email
+ * are skipped and reported back.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class BulkRegistrationService {
+    private static final String INSERT_PREFIX =
+            "INSERT INTO users (name, username, email, password, role, is_online, is_premium) VALUES ";
+    private static final String INSERT_SUFFIX = " ON CONFLICT DO NOTHING RETURNING username";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PasswordHashing passwordHashing;
+    private final RegistrationIndex registrationIndex;
+    private final MetricsService metricsService;
+    private final AdminEmails adminEmails;
+
+    @Value("${app.auth.bulk-register.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.auth.bulk-register.max-users:2000}")
+    private int maxUsers;
+
+    public BulkRegistrationResponseDTO register(List<RegisterRequestDTO> requests) {
+        if (requests.size() > maxUsers) {
+            throw new IllegalArgumentException("At most " + maxUsers + " users can be registered at once");
+        }
+
+        List<String> rejected = new ArrayList<>();
+        List<RegisterRequestDTO> accepted = new ArrayList<>(requests.size());
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+
+        for (RegisterRequestDTO request : requests) {
+            if (isBlank(request.username()) || isBlank(request.email()) || isBlank(request.name()) || isBlank(request.password())) {
+                rejected.add(request.username() + ": username, name, email and password are required");
+            } else if (!usernames.add(request.username()) || !emails.add(request.email())) {
+                rejected.add(request.username() + ": duplicated in the request");
+            } else if (registrationIndex.isUsernameTaken(request.username()) || registrationIndex.isEmailTaken(request.email())) {
+                // checked before hashing, hashing is the expensive part
+                rejected.add(request.username() + ": username or email already taken");
+            } else {
+                accepted.add(request);
+            }
+        }
+
+        List<String> hashedPasswords = passwordHashing.encodeAll(accepted.stream().map(RegisterRequestDTO::password).toList());
+
+        int registered = 0;
+        for (int from = 0; from < accepted.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, accepted.size());
+            List<RegisterRequestDTO> batch = accepted.subList(from, to);
+            Set<String> inserted = new HashSet<>(insertBatch(batch, hashedPasswords.subList(from, to)));
+
+            for (RegisterRequestDTO request : batch) {
+                if (inserted.contains(request.username())) {
+                    registrationIndex.registered(request.username(), request.email());
+                    registered++;
+                } else {
+                    rejected.add(request.username() + ": username or email already taken");
+                }
+            }
+        }
+
+        metricsService.usersBulkRegistered(registered);
+        log.info("Bulk registration: {} users registered, {} rejected", registered, rejected.size());
+
+        return new BulkRegistrationResponseDTO(registered, rejected);
+    }
+
+    private List<String> insertBatch(List<RegisterRequestDTO> batch, List<String> hashedPasswords) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX);
+        List<Object> args = new ArrayList<>(batch.size() * 5);
+
+        for (int i = 0; i < batch.size(); i++) {
+            RegisterRequestDTO request = batch.get(i);
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, false, false)" : ", (?, ?, ?, ?, ?, false, false)");
+            args.add(request.name());
+            args.add(request.username());
+            args.add(request.email());
+            args.add(hashedPasswords.get(i));
+            // the role in the payload is ignored, as in a single registration
+            args.add(adminEmails.roleFor(request.email()).name());
+        }
+        sql.append(INSERT_SUFFIX);
+
+        return jdbcTemplate.queryForList(sql.toString(), String.class, args.toArray());
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
@@ -1,7 +1,6 @@
 package io.github.appleaww.messenger.security;
 
 import io.github.appleaww.messenger.model.entity.User;
-import io.github.appleaww.messenger.repository.UserRepository;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -25,7 +24,7 @@ import java.util.List;
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtTokenProvider jwtTokenProvider;
-    private final UserRepository userRepository;
+    private final UserIdentityCache userIdentityCache;
 
     @Override
     protected void doFilterInternal(@NotNull HttpServletRequest request,
@@ -34,9 +33,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String token = extractTokenFromRequest(request);
 
-            if (token != null && jwtTokenProvider.validateToken(token)) {
-                Long userId = jwtTokenProvider.extractId(token);
-                User user = userRepository.findById(userId).orElse(null);
+            if (token != null) {
+                Long userId = jwtTokenProvider.verify(token).userId();
+                User user = userIdentityCache.get(userId).map(UserIdentity::toUser).orElse(null);
 
                 if (user != null) {
                     List<GrantedAuthority> authorities = List.of(new SimpleGrantedAuthority("ROLE_" + user.getRole().toString()));
@@ -48,7 +47,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                     authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
                     SecurityContextHolder.getContext().setAuthentication(authenticationToken);
-                    log.debug("JWT authentication successful for user: {}", user.getEmail());
+                    log.debug("JWT authentication successful for user with id: {}", user.getId());
 
                 }
             }
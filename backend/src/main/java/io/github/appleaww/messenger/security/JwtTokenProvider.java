@@ -1,14 +1,24 @@
 package io.github.appleaww.messenger.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.github.appleaww.messenger.model.entity.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Date;
 
@@ -18,9 +28,29 @@ public class JwtTokenProvider {
     @Value("${jwt.access:CHANGE_ME_IN_PROPERTIES}")
     private String jwtAccessSignature; // часть JWT токена(секретный ключ для подписи)
 
-    @Value("${jwt.expiration:86400000}")
+    @Value("${jwt.expiration:900000}")
     private long jwtExpiration; // время жизни токена в миллисекундах
 
+    @Value("${app.jwt.verified-cache.max-size:100000}")
+    private long verifiedCacheMaxSize;
+
+    private SecretKey signingKey;
+    private JwtParser parser;
+    private Cache<ByteBuffer, VerifiedToken> verifiedTokens;
+
+    @PostConstruct
+    public void init() {
+        signingKey = getSigningKey();
+        parser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheMaxSize)
+                .expireAfter(Expiry.<ByteBuffer, VerifiedToken>writing(
+                        (key, token) -> Duration.between(Instant.now(), token.expiresAt())))
+                .build();
+    }
+
     public String generateToken(User user) {
         Instant now = Instant.now();
         Instant expiryDate = now.plusMillis(jwtExpiration);
@@ -31,50 +61,64 @@ public class JwtTokenProvider {
                 .claim("email", user.getEmail())
                 .issuedAt(Date.from(now))
                 .expiration(Date.from(expiryDate))
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 
-    public boolean validateToken(String token) {
-        try {
-            Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
+    /**
+     * Parses and verifies the token once, caching the verified claims by token hash until it expires.
+     *
+     * @throws RuntimeException if the token is malformed, badly signed or expired
+     */
+    public VerifiedToken verify(String token) {
+        ByteBuffer key = hash(token);
+        VerifiedToken verified = verifiedTokens.getIfPresent(key);
+        if (verified != null && verified.expiresAt().isAfter(Instant.now())) {
+            return verified;
+        }
 
+        try {
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            verified = new VerifiedToken(
+                    Long.parseLong(claims.getSubject()),
+                    claims.get("role", String.class),
+                    claims.get("email", String.class),
+                    claims.getExpiration().toInstant());
         } catch (Exception e) {
             log.warn("Invalid JWT token");
             throw new RuntimeException("Invalid JWT token", e);
         }
+        verifiedTokens.put(key, verified);
+        return verified;
+    }
+
+    public long getExpirationMs() {
+        return jwtExpiration;
+    }
+
+    public boolean validateToken(String token) {
+        verify(token);
+        return true;
     }
 
     public long extractId(String token) {
-        return Long.parseLong(Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getSubject());
+        return verify(token).userId();
     }
 
     public String extractRole(String token){
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .get("role", String.class);
+        return verify(token).role();
     }
     public String extractEmail(String token){
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .get("email", String.class);
+        return verify(token).email();
     }
 
+    private static ByteBuffer hash(String token) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
     private SecretKey getSigningKey() {
         byte[] keyBytes = jwtAccessSignature.getBytes(StandardCharsets.UTF_8);
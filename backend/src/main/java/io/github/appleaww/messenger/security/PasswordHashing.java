@@ -0,0 +1,158 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs BCrypt on a small bounded pool, rejecting overflow with {@link TaskRejectedException},
+ * and bulk registration on a separate low-priority pool.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PasswordHashing {
+    private final PasswordEncoder passwordEncoder;
+    private final MetricsService metricsService;
+
+    @Value("${app.auth.password-hash.threads:2}")
+    private int threads;
+
+    @Value("${app.auth.password-hash.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${app.auth.password-hash.timeout-ms:5000}")
+    private long timeoutMs;
+
+    @Value("${app.auth.password-hash.bulk-parallelism:0}")
+    private int bulkParallelism;
+
+    @Value("${app.auth.password-hash.bulk-timeout-ms:120000}")
+    private long bulkTimeoutMs;
+
+    private ThreadPoolTaskExecutor executor;
+    private ForkJoinPool bulkPool;
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("password-hash-");
+        executor.initialize();
+        int parallelism = bulkParallelism > 0
+                ? bulkParallelism
+                : Math.max(1, Runtime.getRuntime().availableProcessors() - threads);
+        bulkPool = new ForkJoinPool(parallelism, PasswordHashing::newBulkThread, null, false);
+        metricsService.passwordHashingConfigured(this::getQueuedTasks);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        bulkPool.shutdown();
+    }
+
+    public String encode(CharSequence rawPassword) {
+        return run(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Hashes all passwords in parallel, results in the order of the input. Throws
+     * {@link TaskRejectedException} if the whole list is not hashed within the bulk timeout.
+     */
+    public List<String> encodeAll(List<? extends CharSequence> rawPasswords) {
+        // workers don't react to interrupts, they check the flag before each password instead
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ForkJoinTask<List<String>> task = bulkPool.submit(() -> rawPasswords.parallelStream()
+                .map(rawPassword -> {
+                    if (cancelled.get()) {
+                        throw new CancellationException("Bulk password hashing cancelled");
+                    }
+                    return passwordEncoder.encode(rawPassword);
+                })
+                .toList());
+
+        try {
+            return task.get(bulkTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            cancelled.set(true);
+            task.cancel(true);
+            metricsService.passwordHashRejected();
+            throw new TaskRejectedException("Bulk password hashing did not finish within " + bulkTimeoutMs + " ms", e);
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new TaskRejectedException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public int getQueuedTasks() {
+        return executor.getQueueSize();
+    }
+
+    // priority is only a hint to the OS scheduler, the pool size is what actually leaves cores free
+    private static ForkJoinWorkerThread newBulkThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("password-hash-bulk-" + thread.getPoolIndex());
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (TaskRejectedException e) {
+            metricsService.passwordHashRejected();
+            throw e;
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            metricsService.passwordHashRejected();
+            throw new TaskRejectedException("Password hashing did not finish within " + timeoutMs + " ms", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new TaskRejectedException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
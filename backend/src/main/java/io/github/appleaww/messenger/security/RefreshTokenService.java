@@ -0,0 +1,119 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.model.entity.RefreshToken;
+import io.github.appleaww.messenger.repository.RefreshTokenRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Opaque single-use refresh tokens stored as SHA-256; reusing a spent token revokes its whole family,
+ * except for a repeat within the grace window on the same node.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class RefreshTokenService {
+    private static final int TOKEN_BYTES = 32;
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final MetricsService metricsService;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    @Value("${app.auth.refresh-token.ttl-days:30}")
+    private long ttlDays;
+
+    @Value("${app.auth.refresh-token.grace-ms:10000}")
+    private long graceMs;
+
+    // hash of a spent token -> the rotation that spent it, kept for the grace window
+    private Cache<String, Rotation> recentRotations;
+
+    public record Rotation(Long userId, String refreshToken) {}
+
+    @PostConstruct
+    public void init() {
+        recentRotations = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(graceMs))
+                .build();
+    }
+
+    @Transactional
+    public String issue(Long userId) {
+        return issue(userId, UUID.randomUUID());
+    }
+
+    @Transactional(noRollbackFor = BadCredentialsException.class)
+    public Rotation rotate(String token) {
+        String tokenHash = hash(token);
+        RefreshToken current = refreshTokenRepository.findById(tokenHash)
+                .orElseThrow(() -> new BadCredentialsException("Unknown refresh token"));
+
+        Instant now = Instant.now();
+        if (!current.getExpiresAt().isAfter(now)) {
+            throw new BadCredentialsException("Refresh token expired");
+        }
+        if (current.getUsedAt() != null || refreshTokenRepository.markUsed(tokenHash, now) == 0) {
+            // a concurrent rotation blocks in markUsed until the winner commits, so its successor is cached by now
+            Rotation previous = recentRotations.getIfPresent(tokenHash);
+            if (previous != null) {
+                log.debug("Refresh token of user with id {} repeated within the grace window", current.getUserId());
+                return previous;
+            }
+            refreshTokenRepository.deleteFamily(current.getFamilyId());
+            metricsService.refreshTokenReused();
+            log.warn("Refresh token reuse detected for user with id {}, token family {} revoked",
+                    current.getUserId(), current.getFamilyId());
+            throw new BadCredentialsException("Refresh token reuse detected");
+        }
+
+        metricsService.tokenRefreshed();
+        Rotation rotation = new Rotation(current.getUserId(), issue(current.getUserId(), current.getFamilyId()));
+        recentRotations.put(tokenHash, rotation);
+        return rotation;
+    }
+
+    @Transactional
+    @Scheduled(cron = "${app.auth.refresh-token.cleanup-cron:0 30 * * * *}", zone = "UTC")
+    public void deleteExpired() {
+        int deleted = refreshTokenRepository.deleteExpired(Instant.now());
+        log.debug("Expired refresh tokens deleted: {}", deleted);
+    }
+
+    private String issue(Long userId, UUID familyId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        refreshTokenRepository.save(new RefreshToken(hash(token), familyId, userId,
+                Instant.now().plus(Duration.ofDays(ttlDays)), null));
+        return token;
+    }
+
+    static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
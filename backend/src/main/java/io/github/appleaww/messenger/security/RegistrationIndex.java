@@ -0,0 +1,118 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+
+/**
+ * Bloom filters of taken usernames and emails, built at startup; a possible hit is confirmed by a query,
+ * and the unique constraints on users stay the final check.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class RegistrationIndex {
+    private static final String LOAD_SQL = "SELECT username, email FROM users";
+
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MetricsService metricsService;
+
+    @Value("${app.auth.availability.expected-users:1000000}")
+    private long expectedUsers;
+
+    @Value("${app.auth.availability.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    private volatile Filters filters;
+    // filled alongside the live filters while a rebuild loads the table
+    private volatile Filters rebuilding;
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long userCount = userRepository.count();
+        Filters next = new Filters(
+                new BloomFilter(Math.max(expectedUsers, userCount * 2), falsePositiveRate),
+                new BloomFilter(Math.max(expectedUsers, userCount * 2), falsePositiveRate));
+        rebuilding = next;
+        try {
+            // a cursor instead of the whole table in memory
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(LOAD_SQL);
+                statement.setFetchSize(10_000);
+                return statement;
+            }, resultSet -> {
+                next.usernames().put(resultSet.getString(1));
+                next.emails().put(resultSet.getString(2));
+            }));
+            filters = next;
+            log.info("Registration index built for {} users", userCount);
+        } catch (Exception e) {
+            log.error("Error: build registration index, availability checks stay on the database", e);
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    public boolean isUsernameTaken(String username) {
+        Filters current = filters;
+        if (current != null && !current.usernames().mightContain(username)) {
+            metricsService.availabilityChecked("filter");
+            return false;
+        }
+        metricsService.availabilityChecked("database");
+        return userRepository.existsByUsername(username);
+    }
+
+    public boolean isEmailTaken(String email) {
+        Filters current = filters;
+        if (current != null && !current.emails().mightContain(email)) {
+            metricsService.availabilityChecked("filter");
+            return false;
+        }
+        metricsService.availabilityChecked("database");
+        return userRepository.existsByEmail(email);
+    }
+
+    public void registered(String username, String email) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            add(username, email);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                add(username, email);
+            }
+        });
+    }
+
+    public boolean isReady() {
+        return filters != null;
+    }
+
+    private void add(String username, String email) {
+        for (Filters target : new Filters[]{filters, rebuilding}) {
+            if (target != null) {
+                target.usernames().put(username);
+                target.emails().put(email);
+            }
+        }
+    }
+
+    private record Filters(BloomFilter usernames, BloomFilter emails) {}
+}
@@ -0,0 +1,27 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.model.entity.User;
+
+/**
+ * The part of a user that authentication and the request path need, small enough to cache.
+ */
+public record UserIdentity(
+        Long id,
+        String username,
+        String name,
+        User.Role role,
+        boolean premium
+) {
+    /**
+     * Detached user carrying only the identity fields, used as the authenticated principal.
+     */
+    public User toUser() {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setName(name);
+        user.setRole(role);
+        user.setIsPremium(premium);
+        return user;
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.appleaww.messenger.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Bounded user id -> identity cache for REST and STOMP authentication, invalidated when a cached field changes.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class UserIdentityCache {
+    private final UserRepository userRepository;
+    private final MetricsService metricsService;
+
+    @Value("${app.identity-cache.max-size:100000}")
+    private long maxSize;
+
+    @Value("${app.identity-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private Cache<Long, UserIdentity> identities;
+
+    @PostConstruct
+    public void init() {
+        identities = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        metricsService.identityCacheConfigured(identities);
+    }
+
+    public Optional<UserIdentity> get(Long userId) {
+        return Optional.ofNullable(identities.get(userId, this::loadIdentity));
+    }
+
+    public void invalidate(Long userId) {
+        identities.invalidate(userId);
+        // a request may have re-cached the old identity before the change committed
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    identities.invalidate(userId);
+                }
+            });
+        }
+    }
+
+    private UserIdentity loadIdentity(Long userId) {
+        UserIdentity identity = userRepository.findIdentityById(userId).orElse(null);
+        log.debug("Identity of user with id {} loaded into cache", userId);
+        return identity;
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.appleaww.messenger.security;
+
+import java.time.Instant;
+
+/**
+ * Claims of an access token whose signature and expiry have been checked.
+ */
+public record VerifiedToken(
+        long userId,
+        String role,
+        String email,
+        Instant expiresAt
+) {}
@@ -0,0 +1,110 @@
+package io.github.appleaww.messenger.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.appleaww.messenger.repository.ChatRepository;
+import io.github.appleaww.messenger.websocket.MessageFanoutService;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Bounded chat -> participant ids index for membership checks on the send, typing and read paths.
+ * Entries expire shortly after loading, so a node that missed a chat deletion stops accepting it soon.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ChatMembershipIndex {
+    private final ChatRepository chatRepository;
+    private final MessageFanoutService messageFanoutService;
+
+    @Value("${app.chat-membership.max-size:100000}")
+    private long maxSize;
+
+    @Value("${app.chat-membership.expire-after-write-seconds:30}")
+    private long expireAfterWriteSeconds;
+
+    private Cache<Long, List<Long>> participantsByChat;
+
+    @PostConstruct
+    public void init() {
+        participantsByChat = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(expireAfterWriteSeconds))
+                .build();
+    }
+
+    public List<Long> getParticipantIds(Long chatId) {
+        List<Long> participantIds = participantsByChat.get(chatId, this::loadParticipantIds);
+        if (participantIds == null) {
+            throw new EntityNotFoundException("Chat not found with id " + chatId);
+        }
+        return participantIds;
+    }
+
+    /**
+     * Checks that the user belongs to the chat and returns the other participant.
+     */
+    public Long findRecipientId(Long chatId, Long userId) {
+        List<Long> participantIds = getParticipantIds(chatId);
+
+        if (!participantIds.contains(userId)) {
+            throw new IllegalArgumentException("Chat with id " + chatId + " does not contain user with id " + userId);
+        }
+
+        return participantIds.stream()
+                .filter(participantId -> !participantId.equals(userId))
+                .findFirst()
+                .orElseThrow(() -> new EntityNotFoundException("Recipient not found"));
+    }
+
+    public void put(Long chatId, Collection<Long> participantIds) {
+        afterCommit(() -> participantsByChat.put(chatId, List.copyOf(participantIds)));
+    }
+
+    public void invalidate(Long chatId) {
+        participantsByChat.invalidate(chatId);
+        // a reader may have re-cached the chat before the delete committed
+        afterCommit(() -> {
+            participantsByChat.invalidate(chatId);
+            messageFanoutService.broadcastMembershipInvalidation(chatId);
+        });
+    }
+
+    /**
+     * Drops the chat from this node's index only, for an invalidation broadcast by another node.
+     */
+    public void evict(Long chatId) {
+        participantsByChat.invalidate(chatId);
+        log.debug("Chat with id {} evicted from membership index by another node", chatId);
+    }
+
+    private List<Long> loadParticipantIds(Long chatId) {
+        List<Long> participantIds = chatRepository.findParticipantIdsByChatId(chatId);
+        log.debug("Participants of chat with id {} loaded into membership index", chatId);
+        return participantIds.isEmpty() ? null : List.copyOf(participantIds);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -6,33 +6,57 @@ import io.github.appleaww.messenger.model.dto.request.ChatCreateRequestDTO;
 import io.github.appleaww.messenger.model.dto.response.ChatCreateResponseDTO;
 import io.github.appleaww.messenger.model.dto.ChatDetailDTO;
 import io.github.appleaww.messenger.model.dto.ChatListItemDTO;
+import io.github.appleaww.messenger.model.dto.MessageCursor;
 import io.github.appleaww.messenger.model.dto.MessageDTO;
+import io.github.appleaww.messenger.model.dto.MessagePageDTO;
 import io.github.appleaww.messenger.model.entity.Chat;
+import io.github.appleaww.messenger.model.entity.DirectChat;
 import io.github.appleaww.messenger.model.entity.Message;
 import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.model.entity.UserChatState;
+import io.github.appleaww.messenger.repository.ChatReadWatermarkRepository;
 import io.github.appleaww.messenger.repository.ChatRepository;
+import io.github.appleaww.messenger.repository.DirectChatRepository;
+import io.github.appleaww.messenger.repository.MessageRepository;
+import io.github.appleaww.messenger.repository.UserChatStateRepository;
 import io.github.appleaww.messenger.repository.UserRepository;
 import jakarta.persistence.EntityNotFoundException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.transaction.annotation.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class ChatService {
     private final ChatRepository chatRepository;
+    private final DirectChatRepository directChatRepository;
     private final UserRepository userRepository;
+    private final ChatReadWatermarkRepository chatReadWatermarkRepository;
     private final ChatMapper chatMapper;
     private final MetricsService metricsService;
+    private final ChatMembershipIndex chatMembershipIndex;
+    private final MessageRepository messageRepository;
+    private final UserChatStateRepository userChatStateRepository;
+
+    @Value("${app.messages.page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${app.messages.max-page-size:200}")
+    private int maxPageSize;
+
+    @Value("${app.chats.page-size:50}")
+    private int chatListPageSize;
+
+    @Value("${app.chats.max-page-size:200}")
+    private int chatListMaxPageSize;
 
     @Transactional
     public ChatCreateResponseDTO createChat(ChatCreateRequestDTO chatCreateRequestDTO, User initiator) {
@@ -42,11 +66,8 @@ public class ChatService {
         if (initiator.getId().equals(companion.getId())) {
             throw new RuntimeException("Cannot create chat with yourself");
         }
-        Optional<Chat> existingChat = chatRepository.findExistingChatBetweenUserIds(
-                initiator.getId(), companion.getId()
-        );
-
-        if (existingChat.isPresent()) {
+        DirectChat.Key pair = DirectChat.Key.of(initiator.getId(), companion.getId());
+        if (directChatRepository.existsById(pair)) {
             throw new RuntimeException("Chat already exists");
         }
         Chat chat = new Chat();
@@ -55,7 +76,20 @@ public class ChatService {
         chat.getChatNames().put(companion.getId(), initiator.getName());
         chat.setLastMessage("Send the first message!");
 
-        chat = chatRepository.save(chat);
+        chat = chatRepository.saveAndFlush(chat);
+        if (directChatRepository.claim(pair.getLowUserId(), pair.getHighUserId(), chat.getId()) == 0) {
+            // lost the race against a concurrent create, the transaction rolls the new chat back
+            throw new RuntimeException("Chat already exists");
+        }
+        chatMembershipIndex.put(chat.getId(), List.of(initiator.getId(), companion.getId()));
+
+        Instant createdAt = Instant.now();
+        userChatStateRepository.saveAll(List.of(
+                new UserChatState(new UserChatState.Key(initiator.getId(), chat.getId()),
+                        companion.getId(), companion.getName(), chat.getLastMessage(), createdAt, 0L),
+                new UserChatState(new UserChatState.Key(companion.getId(), chat.getId()),
+                        initiator.getId(), initiator.getName(), chat.getLastMessage(), createdAt, 0L)
+        ));
 
         log.debug("Chat created with id {}", chat.getId());
 
@@ -75,8 +109,8 @@ public class ChatService {
     public void saveLastMessage(Long chatId) {
         Chat chat = chatRepository.findById(chatId)
                 .orElseThrow(() -> new EntityNotFoundException("Chat not found with id " + chatId));
-        String lastMessage = chat.getMessages().stream()
-                .max(Comparator.comparing(Message::getSendingTime))
+        String lastMessage = messageRepository.findNewest(chatId, 1).stream()
+                .findFirst()
                 .map(Message::getContent)
                 .orElse("Send the first message!");
 
@@ -85,43 +119,31 @@ public class ChatService {
         log.debug("last message created for chat with id {}", chatId);
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public List<ChatListItemDTO> getAllUserChatsWithDetails(User user) {
-        User refreshedUser = userRepository.findWithChatsAndMessagesById(user.getId())
-                .orElseThrow(() -> new EntityNotFoundException("User with id " + user.getId() + " not found"));
-
-        log.debug("User with id {} requested all chats", user.getId());
-
-        return refreshedUser.getChats().stream()
-                .map(chat -> {
-                    User companion = chat.getParticipants().stream()
-                            .filter(participant -> !participant.getId().equals(user.getId()))
-                            .findFirst().orElse(null);
-
-                    Optional<Message> lastMessage = chat.getMessages().stream()
-                            .max(Comparator.comparing(Message::getSendingTime));
-
-                    String lastMessageContent = lastMessage.map(Message::getContent)
-                            .orElse(chat.getLastMessage());
-
-                    Instant lastMessageSendingTime = lastMessage.map(Message::getSendingTime)
-                            .orElse(Instant.MIN);
-
-                    Long unreadMessagesCount = chat.getMessages().stream()
-                            .filter(message -> !message.getSender().getId().equals(user.getId()))
-                            .filter(message -> !message.isRead())
-                            .count();
-
-                    return new ChatListItemDTO(
-                            chat.getId(),
-                            companion != null ? companion.getId() : null,
-                            companion != null ? companion.getName() : "Unknown",
-                            lastMessageContent,
-                            lastMessageSendingTime,
-                            unreadMessagesCount
-                    );
-                }).sorted(Comparator.comparing(ChatListItemDTO::lastMessageSendingTime).reversed()).collect(Collectors.toList());
+        return getAllUserChatsWithDetails(user, null, null, null);
+    }
 
+    @Transactional(readOnly = true)
+    public List<ChatListItemDTO> getAllUserChatsWithDetails(User user, Instant beforeTime, Long beforeChatId, Integer limit) {
+        Limit pageLimit = Limit.of(limit == null ? chatListPageSize : Math.clamp(limit, 1, chatListMaxPageSize));
+
+        List<UserChatState> states = beforeTime == null || beforeChatId == null
+                ? userChatStateRepository.findFirstPage(user.getId(), pageLimit)
+                : userChatStateRepository.findPageBefore(user.getId(), beforeTime, beforeChatId, pageLimit);
+
+        log.debug("User with id {} requested chats, {} returned", user.getId(), states.size());
+
+        return states.stream()
+                .map(state -> new ChatListItemDTO(
+                        state.getId().getChatId(),
+                        state.getCompanionId(),
+                        state.getCompanionName() != null ? state.getCompanionName() : "Unknown",
+                        state.getLastMessagePreview(),
+                        state.getLastMessageAt(),
+                        state.getUnreadCount()
+                ))
+                .toList();
     }
 
     @Transactional
@@ -137,6 +159,9 @@ public class ChatService {
         }
 
         chatRepository.delete(chat);
+        // the chat list query must not see rows the database is about to cascade away
+        chatRepository.flush();
+        chatMembershipIndex.invalidate(chat.getId());
 
         log.debug("Chat with id {} deleted by User with id {}", chat.getId(), user.getId());
         return getAllUserChatsWithDetails(user);
@@ -157,28 +182,95 @@ public class ChatService {
                 .filter(participant -> !participant.getId().equals(user.getId())).findFirst()
                 .orElseThrow(() -> new EntityNotFoundException("Companion not found in chat with id " +chat.getId()));
 
-        chat.getMessages().stream().filter(message -> !message.getSender().getId().equals(user.getId()))
-                .filter(message -> !message.isRead())
-                .forEach(message -> message.setRead(true));
-
-        List<MessageDTO> messages = chat.getMessages().stream()
-                .map(message -> new MessageDTO(
-                        message.getId(),
-                        message.getContent(),
-                        message.getSendingTime(),
-                        message.getSender().getId(),
-                        message.getSender().getUsername(),
-                        message.getSender().getName(),
-                        message.isRead(),
-                        message.getSender().getId().equals(user.getId())
-                )).toList();
+        userChatStateRepository.lockChat(chat.getId());
+        chatReadWatermarkRepository.advanceToLatest(user.getId(), chat.getId());
+        long companionLastReadMessageId = chatReadWatermarkRepository
+                .findLastReadMessageId(companion.getId(), chat.getId())
+                .orElse(0L);
+
+        List<Message> newestMessages = messageRepository.findNewest(chat.getId(), defaultPageSize + 1);
+        boolean hasOlder = newestMessages.size() > defaultPageSize;
+        if (hasOlder) {
+            newestMessages = newestMessages.subList(0, defaultPageSize);
+        }
+
+        // the chat was just read up to its newest message, so only own messages can still be unread
+        List<MessageDTO> messages = newestMessages.reversed().stream()
+                .map(message -> toMessageDTO(message, user.getId(), Long.MAX_VALUE, companionLastReadMessageId))
+                .toList();
 
         log.debug("Chat with id {} opened by User with id {}", chat.getId(), user.getId());
 
         return new ChatDetailDTO(chat.getId(),
+                companion.getId(),
                 companion.getName(),
                 companion.getUsername(),
-                messages);
+                messages,
+                hasOlder ? MessageCursor.of(newestMessages.getLast()).encode() : null);
 
     }
+
+    @Transactional(readOnly = true)
+    public MessagePageDTO getMessages(Long chatId, User user, String before, String after, Instant at, Integer limit) {
+        Long companionId = chatMembershipIndex.findRecipientId(chatId, user.getId());
+        int pageSize = limit == null ? defaultPageSize : Math.clamp(limit, 1, maxPageSize);
+
+        List<Message> page;
+        boolean newestFirst;
+        if (before != null) {
+            MessageCursor cursor = MessageCursor.decode(before);
+            page = messageRepository.findBefore(chatId, cursor.sendingTime(), cursor.id(), pageSize + 1);
+            newestFirst = true;
+        } else if (after != null) {
+            MessageCursor cursor = MessageCursor.decode(after);
+            page = messageRepository.findAfter(chatId, cursor.sendingTime(), cursor.id(), pageSize + 1);
+            newestFirst = false;
+        } else if (at != null) {
+            page = messageRepository.findFrom(chatId, at, pageSize + 1);
+            newestFirst = false;
+        } else {
+            page = messageRepository.findNewest(chatId, pageSize + 1);
+            newestFirst = true;
+        }
+
+        boolean hasMore = page.size() > pageSize;
+        if (hasMore) {
+            page = page.subList(0, pageSize);
+        }
+        List<Message> ascendingPage = newestFirst ? page.reversed() : page;
+
+        String olderCursor = null;
+        String newerCursor = null;
+        if (!ascendingPage.isEmpty()) {
+            MessageCursor oldest = MessageCursor.of(ascendingPage.getFirst());
+            MessageCursor newest = MessageCursor.of(ascendingPage.getLast());
+            olderCursor = !newestFirst || hasMore ? oldest.encode() : null;
+            newerCursor = newestFirst ? (before != null ? newest.encode() : null) : (hasMore ? newest.encode() : null);
+        }
+
+        long ownLastReadMessageId = chatReadWatermarkRepository.findLastReadMessageId(user.getId(), chatId).orElse(0L);
+        long companionLastReadMessageId = chatReadWatermarkRepository.findLastReadMessageId(companionId, chatId).orElse(0L);
+
+        List<MessageDTO> messages = ascendingPage.stream()
+                .map(message -> toMessageDTO(message, user.getId(), ownLastReadMessageId, companionLastReadMessageId))
+                .toList();
+
+        log.debug("User with id {} loaded {} messages of chat with id {}", user.getId(), messages.size(), chatId);
+
+        return new MessagePageDTO(messages, olderCursor, newerCursor);
+    }
+
+    private MessageDTO toMessageDTO(Message message, Long userId, long ownLastReadMessageId, long companionLastReadMessageId) {
+        boolean isMine = message.getSender().getId().equals(userId);
+        return new MessageDTO(
+                message.getId(),
+                message.getContent(),
+                message.getSendingTime(),
+                message.getSender().getId(),
+                message.getSender().getUsername(),
+                message.getSender().getName(),
+                isMine ? message.getId() <= companionLastReadMessageId : message.getId() <= ownLastReadMessageId,
+                isMine
+        );
+    }
 }
@@ -0,0 +1,266 @@
+package io.github.appleaww.messenger.service;
+
+import io.github.appleaww.messenger.id.SnowflakeIdGenerator;
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.repository.ChatReadWatermarkRepository;
+import io.github.appleaww.messenger.repository.UserChatStateRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind for chat messages: queued messages are inserted in micro-batches with one commit,
+ * and a batch rejected for its data is split so only the offending messages fail.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class MessageBatchWriter {
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MetricsService metricsService;
+    private final UserChatStateRepository userChatStateRepository;
+    private final ChatReadWatermarkRepository chatReadWatermarkRepository;
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
+
+    @Value("${app.messages.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.messages.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.messages.write-behind.flush-interval-ms:5}")
+    private long flushIntervalMs;
+
+    @Value("${app.messages.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.messages.write-behind.ack-timeout-ms:5000}")
+    private long ackTimeoutMs;
+
+    private BlockingQueue<PendingMessage> queue;
+    private Thread flusher;
+    private volatile boolean running;
+    // the batch the flusher is committing, failed by stop() if the flusher does not finish it in time
+    private volatile List<PendingMessage> inFlight = List.of();
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        flusher = Thread.ofPlatform().name("message-write-behind").daemon().start(this::runFlushLoop);
+
+        log.info("Message write-behind enabled: batch size {}, flush interval {} ms", batchSize, flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        flusher.join(ackTimeoutMs);
+
+        // nothing drains the queue once the flusher is gone, so the senders still waiting are told now
+        IllegalStateException stopped = new IllegalStateException("Message writer stopped before the message was saved");
+        List<PendingMessage> abandoned = new ArrayList<>(inFlight);
+        queue.drainTo(abandoned);
+        abandoned.forEach(pendingMessage -> pendingMessage.result().completeExceptionally(stopped));
+        if (!abandoned.isEmpty()) {
+            log.warn("Message writer stopped with {} messages not saved", abandoned.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a message and waits up to the ack timeout for its batch to commit;
+     * past that the id is returned as pending.
+     */
+    public WriteResult write(Long chatId, Long senderId, String content, Instant sendingTime) {
+        PendingMessage pendingMessage = new PendingMessage(
+                snowflakeIdGenerator.nextId(), chatId, senderId, content, sendingTime, new CompletableFuture<>());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ackTimeoutMs);
+        if (!running) {
+            throw new IllegalStateException("Message writer is stopped");
+        }
+        try {
+            if (!queue.offer(pendingMessage, ackTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Message queue is full, try again later");
+            }
+            // stopped while queueing: take the message back, unless the flusher or stop() already has it
+            if (!running && queue.remove(pendingMessage)) {
+                throw new IllegalStateException("Message writer is stopped");
+            }
+            return new WriteResult(pendingMessage.result().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS), false,
+                    pendingMessage.result());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for message to be saved", e);
+        } catch (TimeoutException e) {
+            // the message is already queued, failing here would make the client resend a duplicate
+            log.warn("Message with id {} was not saved within {} ms, acknowledged as pending",
+                    pendingMessage.id(), ackTimeoutMs);
+            return new WriteResult(pendingMessage.id(), true, pendingMessage.result());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Message could not be saved: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void runFlushLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<PendingMessage> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                inFlight = batch;
+                flush(batch);
+                inFlight = List.of();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    void flush(List<PendingMessage> batch) {
+        try {
+            commit(batch);
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                PendingMessage rejected = batch.getFirst();
+                log.error("Error: message with id {} in chat with id {} rejected", rejected.id(), rejected.chatId(), e);
+                rejected.result().completeExceptionally(e);
+                return;
+            }
+            log.warn("Batch of {} messages rejected, retrying it in halves: {}", batch.size(), e.getMessage());
+            int half = batch.size() / 2;
+            flush(batch.subList(0, half));
+            flush(batch.subList(half, batch.size()));
+        } catch (Exception e) {
+            log.error("Error: flush batch of {} messages", batch.size(), e);
+            batch.forEach(pendingMessage -> pendingMessage.result().completeExceptionally(e));
+        }
+    }
+
+    private void commit(List<PendingMessage> batch) {
+        Map<ChatSender, List<PendingMessage>> bySender = groupByChatSender(batch);
+        transactionTemplate.executeWithoutResult(status -> {
+            rewindReadWatermarks(bySender);
+            insertBatch(batch);
+            updateChatStates(bySender);
+        });
+
+        metricsService.messageBatchFlushed(batch.size());
+        batch.forEach(pendingMessage -> pendingMessage.result().complete(pendingMessage.id()));
+
+        log.debug("Flushed batch of {} messages", batch.size());
+    }
+
+    private void insertBatch(List<PendingMessage> batch) {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO messages (id, sending_time, message_content, chat_id, user_id) VALUES ");
+        List<Object> args = new ArrayList<>(batch.size() * 5);
+
+        for (int i = 0; i < batch.size(); i++) {
+            PendingMessage pendingMessage = batch.get(i);
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+            args.add(pendingMessage.id());
+            args.add(OffsetDateTime.ofInstant(pendingMessage.sendingTime(), ZoneOffset.UTC));
+            args.add(pendingMessage.content());
+            args.add(pendingMessage.chatId());
+            args.add(pendingMessage.senderId());
+        }
+
+        jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    // chats are locked in id order so two nodes flushing overlapping chats cannot deadlock
+    private Map<ChatSender, List<PendingMessage>> groupByChatSender(List<PendingMessage> batch) {
+        return batch.stream()
+                .collect(Collectors.groupingBy(
+                        pendingMessage -> new ChatSender(pendingMessage.chatId(), pendingMessage.senderId()),
+                        () -> new TreeMap<>(Comparator.comparing(ChatSender::chatId).thenComparing(ChatSender::senderId)),
+                        Collectors.toList()));
+    }
+
+    // runs before the insert: the messages were queued with ids a reader's watermark may already have passed
+    private void rewindReadWatermarks(Map<ChatSender, List<PendingMessage>> bySender) {
+        bySender.keySet().stream()
+                .map(ChatSender::chatId)
+                .distinct()
+                .forEach(userChatStateRepository::lockChat);
+
+        bySender.forEach((chatSender, messages) -> {
+            Long firstId = messages.stream().map(PendingMessage::id).min(Long::compareTo).orElseThrow();
+            chatReadWatermarkRepository.rewindForLateMessages(chatSender.chatId(), chatSender.senderId(), firstId);
+        });
+    }
+
+    // one chat list update per (chat, sender) in the batch rather than one per message
+    private void updateChatStates(Map<ChatSender, List<PendingMessage>> bySender) {
+        bySender.forEach((chatSender, messages) -> {
+            PendingMessage newest = messages.stream()
+                    .max(Comparator.comparing(PendingMessage::sendingTime))
+                    .orElseThrow();
+            userChatStateRepository.recordMessages(
+                    chatSender.chatId(), chatSender.senderId(), newest.content(), newest.sendingTime(), messages.size());
+        });
+    }
+
+    public record WriteResult(Long messageId, boolean pending, CompletableFuture<Long> committed) {}
+
+    private record ChatSender(Long chatId, Long senderId) {}
+
+    record PendingMessage(Long id,
+                          Long chatId,
+                          Long senderId,
+                          String content,
+                          Instant sendingTime,
+                          CompletableFuture<Long> result
+    ) {}
+}
@@ -0,0 +1,55 @@
+package io.github.appleaww.messenger.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Keeps monthly partitions of the messages table created ahead of time, so inserts never
+ * fall into the default partition (which would make creating that month's partition later expensive).
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class MessagePartitionMaintainer {
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.messages.partitions.months-ahead:3}")
+    private int monthsAhead;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${app.messages.partitions.cron:0 0 3 * * *}", zone = "UTC")
+    public void createUpcomingPartitions() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            try {
+                jdbcTemplate.execute(partitionDdl(month));
+            } catch (Exception e) {
+                // most likely rows for that month already sit in the default partition
+                log.error("Error: create messages partition for {}", month, e);
+            }
+        }
+        log.debug("Messages partitions ensured up to {}", current.plusMonths(monthsAhead));
+    }
+
+    public static String partitionDdl(YearMonth month) {
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        return "CREATE TABLE IF NOT EXISTS messages_p" + PARTITION_SUFFIX.format(month)
+                + " PARTITION OF messages FOR VALUES FROM ('" + from.atStartOfDay().atOffset(ZoneOffset.UTC)
+                + "') TO ('" + to.atStartOfDay().atOffset(ZoneOffset.UTC) + "')";
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.appleaww.messenger.service;
+
+import io.github.appleaww.messenger.model.dto.MessageSearchHitDTO;
+import io.github.appleaww.messenger.model.dto.MessageSearchPageDTO;
+import io.github.appleaww.messenger.model.dto.SearchCursor;
+import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.repository.MessageSearchRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class MessageSearchService {
+    private static final int MAX_QUERY_LENGTH = 200;
+
+    private final MessageSearchRepository messageSearchRepository;
+    private final ChatMembershipIndex chatMembershipIndex;
+
+    @Value("${app.search.page-size:20}")
+    private int defaultPageSize;
+
+    @Value("${app.search.max-page-size:100}")
+    private int maxPageSize;
+
+    @Transactional(readOnly = true)
+    public MessageSearchPageDTO search(String query, Long chatId, String cursor, Integer limit, User user) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query must not be blank");
+        }
+        if (query.length() > MAX_QUERY_LENGTH) {
+            throw new IllegalArgumentException("Search query must not be longer than " + MAX_QUERY_LENGTH + " characters");
+        }
+        if (chatId != null) {
+            chatMembershipIndex.findRecipientId(chatId, user.getId());
+        }
+        int pageSize = limit == null ? defaultPageSize : Math.clamp(limit, 1, maxPageSize);
+        SearchCursor after = cursor == null ? null : SearchCursor.decode(cursor);
+
+        List<MessageSearchHitDTO> hits = messageSearchRepository.search(user.getId(), query.strip(), chatId, after, pageSize + 1);
+
+        boolean hasMore = hits.size() > pageSize;
+        if (hasMore) {
+            hits = hits.subList(0, pageSize);
+        }
+
+        log.debug("User with id {} searched messages, {} hits returned", user.getId(), hits.size());
+
+        return new MessageSearchPageDTO(hits, hasMore ? SearchCursor.of(hits.getLast()).encode() : null);
+    }
+}
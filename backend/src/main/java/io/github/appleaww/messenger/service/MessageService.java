@@ -1,7 +1,6 @@
 package io.github.appleaww.messenger.service;
 
 import io.github.appleaww.messenger.metrics.MetricsService;
-import io.github.appleaww.messenger.model.dto.TypingDTO;
 import io.github.appleaww.messenger.model.dto.request.MessageCreateRequestDTO;
 import io.github.appleaww.messenger.model.dto.request.ReadReceiptRequestDTO;
 import io.github.appleaww.messenger.model.dto.response.MessageCreateResponseDTO;
@@ -9,17 +8,18 @@ import io.github.appleaww.messenger.model.dto.response.ReadReceiptResponseDTO;
 import io.github.appleaww.messenger.model.entity.Chat;
 import io.github.appleaww.messenger.model.entity.Message;
 import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.repository.ChatReadWatermarkRepository;
 import io.github.appleaww.messenger.repository.ChatRepository;
 import io.github.appleaww.messenger.repository.MessageRepository;
+import io.github.appleaww.messenger.repository.UserChatStateRepository;
 import io.github.appleaww.messenger.repository.UserRepository;
-import jakarta.persistence.EntityNotFoundException;
 import org.springframework.transaction.annotation.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @Slf4j
@@ -29,26 +29,21 @@ public class MessageService {
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final ChatRepository chatRepository;
+    private final ChatReadWatermarkRepository chatReadWatermarkRepository;
+    private final UserChatStateRepository userChatStateRepository;
     private final MetricsService metricsService;
+    private final MessageBatchWriter messageBatchWriter;
+    private final ChatMembershipIndex chatMembershipIndex;
 
     @Transactional
     public MessageCreateResponseDTO createMessage(MessageCreateRequestDTO messageCreateRequestDTO, User user) {
-        MetricsService.MessageSendTimerContext timerContext = metricsService.startMessageSendLatency();
+        MetricsService.MessageSendTimerContext timerContext = metricsService.startMessageSendLatency("per_message");
         try {
-            User sender = userRepository.findById(user.getId())
-                    .orElseThrow(() -> new EntityNotFoundException("User not found with id " + user.getId()));
+            Long recipientId = chatMembershipIndex.findRecipientId(messageCreateRequestDTO.chatId(), user.getId());
 
-            Chat chat = chatRepository.findById(messageCreateRequestDTO.chatId())
-                    .orElseThrow(() -> new EntityNotFoundException("Chat not found with id " + messageCreateRequestDTO.chatId()));
-
-            if (!chat.getParticipants().contains(sender)) {
-                throw new IllegalArgumentException("Chat with id " + messageCreateRequestDTO.chatId() + " does not contain user with id " + sender.getId());
-            }
-
-            User recipient = chat.getParticipants().stream()
-                    .filter(participant -> !participant.getId().equals(user.getId()))
-                    .findFirst()
-                    .orElseThrow(() -> new EntityNotFoundException("Recipient not found"));
+            User sender = userRepository.getReferenceById(user.getId());
+            Chat chat = chatRepository.getReferenceById(messageCreateRequestDTO.chatId());
+            userChatStateRepository.lockChat(messageCreateRequestDTO.chatId());
 
             Message message = new Message();
             message.setContent(messageCreateRequestDTO.content());
@@ -57,8 +52,11 @@ public class MessageService {
             message.setChat(chat);
 
             message = messageRepository.save(message);
+            chatReadWatermarkRepository.rewindForLateMessages(messageCreateRequestDTO.chatId(), user.getId(), message.getId());
+            userChatStateRepository.recordMessages(
+                    messageCreateRequestDTO.chatId(), user.getId(), message.getContent(), message.getSendingTime(), 1);
             log.debug("Message saved in chat with id {} by User with id {}",
-                    chat.getId(), sender.getId());
+                    messageCreateRequestDTO.chatId(), user.getId());
 
             metricsService.messageSent();
 
@@ -66,74 +64,77 @@ public class MessageService {
                     message.getId(),
                     message.getSendingTime(),
                     message.getContent(),
-                    message.isRead(),
-                    sender.getId(),
-                    recipient.getId(),
-                    chat.getId()
+                    false,
+                    user.getId(),
+                    recipientId,
+                    messageCreateRequestDTO.chatId(),
+                    false
             );
         } finally {
             timerContext.stop();
         }
     }
 
+    /**
+     * Queues the message for the write-behind batch; a pending response is stored
+     * only once {@link WriteBehindResult#committed()} completes.
+     */
+    public WriteBehindResult createMessageWriteBehind(MessageCreateRequestDTO messageCreateRequestDTO, User user) {
+        MetricsService.MessageSendTimerContext timerContext = metricsService.startMessageSendLatency("write_behind");
+        try {
+            Long chatId = messageCreateRequestDTO.chatId();
+            Long recipientId = chatMembershipIndex.findRecipientId(chatId, user.getId());
 
-    @Transactional
-    public ReadReceiptResponseDTO processReadReceipt(ReadReceiptRequestDTO readReceiptRequestDTO, User user){
-        User reader = userRepository.findById(user.getId())
-                .orElseThrow(() -> new EntityNotFoundException("User not found with id " + user.getId()));
-        Chat chat = chatRepository.findById(readReceiptRequestDTO.chatId())
-                .orElseThrow(() -> new EntityNotFoundException("Chat not found with id " + readReceiptRequestDTO.chatId()));
+            Instant sendingTime = Instant.now();
+            MessageBatchWriter.WriteResult writeResult =
+                    messageBatchWriter.write(chatId, user.getId(), messageCreateRequestDTO.content(), sendingTime);
+            log.debug("Message saved in chat with id {} by User with id {}", chatId, user.getId());
 
-        if(!chat.getParticipants().contains(reader)){
-            throw new IllegalArgumentException("Chat with id " + readReceiptRequestDTO.chatId() + "does not contain user with id " + reader.getId());
+            metricsService.messageSent();
+
+            MessageCreateResponseDTO committed = new MessageCreateResponseDTO(
+                    writeResult.messageId(),
+                    sendingTime,
+                    messageCreateRequestDTO.content(),
+                    false,
+                    user.getId(),
+                    recipientId,
+                    chatId,
+                    false
+            );
+            if (!writeResult.pending()) {
+                return new WriteBehindResult(committed, CompletableFuture.completedFuture(committed));
+            }
+            MessageCreateResponseDTO pending = new MessageCreateResponseDTO(committed.messageId(), sendingTime,
+                    committed.content(), false, user.getId(), recipientId, chatId, true);
+            return new WriteBehindResult(pending, writeResult.committed().thenApply(messageId -> committed));
+        } finally {
+            timerContext.stop();
         }
+    }
 
-        User recipient = chat.getParticipants().stream()
-                .filter(participant -> !participant.getId().equals(reader.getId()))
-                .findFirst()
-                .orElseThrow(() -> new EntityNotFoundException("Recipient not found"));
 
-        List<Message> messagesToUpdate = messageRepository.findAllById(readReceiptRequestDTO.messageIds());
+    @Transactional
+    public ReadReceiptResponseDTO processReadReceipt(ReadReceiptRequestDTO readReceiptRequestDTO, User user){
+        Long recipientId = chatMembershipIndex.findRecipientId(readReceiptRequestDTO.chatId(), user.getId());
 
-        messagesToUpdate.stream()
-                .filter(message -> !message.getSender().equals(reader))
-                .forEach(message -> message.setRead(true));
+        userChatStateRepository.lockChat(readReceiptRequestDTO.chatId());
+        readReceiptRequestDTO.messageIds().stream()
+                .max(Long::compareTo)
+                .ifPresent(lastReadMessageId -> chatReadWatermarkRepository.advance(
+                        user.getId(), readReceiptRequestDTO.chatId(), lastReadMessageId));
 
-        log.debug("Read receipt processed for chat {}", chat.getId());
+        log.debug("Read receipt processed for chat {}", readReceiptRequestDTO.chatId());
 
         return new ReadReceiptResponseDTO(
-                chat.getId(),
+                readReceiptRequestDTO.chatId(),
                 readReceiptRequestDTO.messageIds(),
-                reader.getId(),
-                recipient.getId()
+                user.getId(),
+                recipientId
         );
     }
 
-    @Transactional
-    public TypingDTO processTyping(TypingDTO typingDTO, User user){
-        User typingUser = userRepository.findById(user.getId())
-                .orElseThrow(() -> new EntityNotFoundException("User not found with id " + user.getId()));
-        Chat chat = chatRepository.findById(typingDTO.chatId())
-                .orElseThrow(() -> new EntityNotFoundException("Chat not found with id " + typingDTO.chatId()));
-
-        if(!chat.getParticipants().contains(typingUser)){
-            throw new IllegalArgumentException("Chat with id " + typingDTO.chatId() + "does not contain user with id " + typingUser.getId());
-        }
-
-        User recipient = chat.getParticipants().stream()
-                .filter(participant -> !participant.getId().equals(typingUser.getId()))
-                .findFirst()
-                .orElseThrow(() -> new EntityNotFoundException("Recipient not found"));
-
-        log.debug("Typing processed for chat {} by user {}", typingDTO.chatId(), user.getId());
-
-        return new TypingDTO(
-                chat.getId(),
-                typingUser.getId(),
-                typingUser.getUsername(),
-                recipient.getId(),
-                typingDTO.isTyping()
-        );
-
-    }
+    public record WriteBehindResult(MessageCreateResponseDTO response,
+                                    CompletableFuture<MessageCreateResponseDTO> committed
+    ) {}
 }
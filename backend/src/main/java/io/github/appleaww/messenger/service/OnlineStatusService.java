@@ -2,16 +2,20 @@ package io.github.appleaww.messenger.service;
 
 import io.github.appleaww.messenger.metrics.MetricsService;
 import io.github.appleaww.messenger.model.dto.OnlineStatusDTO;
-import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.presence.PresenceRegistry;
 import io.github.appleaww.messenger.repository.UserRepository;
-import jakarta.transaction.Transactional;
+import io.github.appleaww.messenger.websocket.PresenceFanoutService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -21,72 +25,118 @@ import java.util.concurrent.ConcurrentHashMap;
 @Slf4j
 public class OnlineStatusService {
 
-    private final Set<Long> onlineUsers = ConcurrentHashMap.newKeySet();
-    private final SimpMessagingTemplate simpMessagingTemplate;
-    private final SimpUserRegistry simpUserRegistry;
+    private final PresenceRegistry presenceRegistry;
+    private final PresenceFanoutService presenceFanoutService;
+    private final UserPresenceWriter userPresenceWriter;
     private final UserRepository userRepository;
     private final Map<String, LocalDateTime> sessionStartTimes = new ConcurrentHashMap<>();
     private final MetricsService metricsService;
 
-    @Transactional
+    @Value("${app.presence.query.max-ids:1000}")
+    private int maxQueryIds;
+
     public void userConnected(Long userId) {
-        onlineUsers.add(userId);
+        boolean firstSession = presenceRegistry.sessionOpened(userId);
+        Instant now = Instant.now();
 
-        userRepository.findById(userId).ifPresent(user -> {
-            user.setLastSeen(Instant.now());
-            user.setIsOnline(true);
-            userRepository.save(user);
-        });
+        userPresenceWriter.record(userId, true, now);
 
-        broadcastStatus(userId, true);
-        log.debug("User with id {} connected. Active sessions: {}", userId, simpUserRegistry.getUserCount());
+        if (firstSession) {
+            presenceFanoutService.statusChanged(userId, true, now);
+        }
+        log.debug("User with id {} connected", userId);
 
         sessionStartTimes.put(userId.toString(), LocalDateTime.now());
 
         metricsService.recordUserActivity(userId.toString(), "session_started");
     }
 
-    @Transactional
     public void userDisconnected(Long userId) {
-        int sessionCount = getSessionCount(userId);
-
-        if (sessionCount == 0) {
-            onlineUsers.remove(userId);
-
-            userRepository.findById(userId).ifPresent(user -> {
-                user.setLastSeen(Instant.now());
-                user.setIsOnline(false);
-                userRepository.save(user);
-            });
-
-            broadcastStatus(userId, false);
+        if (presenceRegistry.sessionClosed(userId)) {
+            markOffline(userId);
             log.debug("User with id {} is now offline", userId);
         } else {
-            log.debug("User with id {} disconnected one session, {} remaining", userId, sessionCount);
+            log.debug("User with id {} disconnected one session, still online", userId);
         }
         metricsService.sessionDuration(sessionStartTimes.remove(userId.toString()));
 
     }
 
-    private int getSessionCount(Long userId) {
-        var user = simpUserRegistry.getUser(userId.toString());
-        return user != null ? user.getSessions().size() : 0;
+    /**
+     * Takes offline the users whose only sessions were on a node that stopped heartbeating.
+     */
+    @Scheduled(fixedDelayString = "${app.presence.sweep-interval-ms:5000}")
+    public void expireDeadNodes() {
+        for (Long userId : presenceRegistry.expireDeadNodes()) {
+            markOffline(userId);
+        }
+    }
+
+    /**
+     * Fixes the transitions reported while this node's view of the other nodes was stale.
+     */
+    @Scheduled(fixedDelayString = "${app.presence.near-cache-refresh-ms:1000}")
+    public void applyCorrections() {
+        presenceRegistry.drainCorrections().forEach((userId, online) -> {
+            if (online) {
+                markOnline(userId);
+            } else {
+                markOffline(userId);
+            }
+        });
     }
 
     public boolean isUserOnline(Long userId) {
-        return onlineUsers.contains(userId);
+        return presenceRegistry.isOnline(userId);
     }
 
     public Set<Long> getOnlineUsers() {
-        return Set.copyOf(onlineUsers);
+        return presenceRegistry.getOnlineUsers();
     }
 
-    private void broadcastStatus(Long userId, boolean isOnline) {
-        Instant lastSeen = isOnline
-                ? Instant.now()
-                : userRepository.findById(userId).map(User::getLastSeen).orElse(Instant.now());
+    /**
+     * Online flags and last seen times of a batch of users, in request order; unknown ids are skipped.
+     */
+    public List<OnlineStatusDTO> queryStatuses(Collection<Long> userIds) {
+        if (userIds == null) {
+            throw new IllegalArgumentException("User IDs list is required");
+        }
+        Set<Long> distinctIds = new LinkedHashSet<>(userIds);
+        distinctIds.remove(null);
+        if (distinctIds.size() > maxQueryIds) {
+            throw new IllegalArgumentException("At most " + maxQueryIds + " user ids can be queried at once");
+        }
+        if (distinctIds.isEmpty()) {
+            return List.of();
+        }
+
+        Set<Long> online = presenceRegistry.filterOnline(distinctIds);
+        Map<Long, Instant> lastSeenById = new HashMap<>();
+        userRepository.findLastSeenByIdIn(distinctIds)
+                .forEach(row -> lastSeenById.put(row.getUserId(), row.getLastSeen()));
+
+        return distinctIds.stream()
+                .filter(lastSeenById::containsKey)
+                .map(userId -> new OnlineStatusDTO(
+                        userId,
+                        online.contains(userId),
+                        userPresenceWriter.findPendingLastSeen(userId).orElse(lastSeenById.get(userId))))
+                .toList();
+    }
+
+    private void markOnline(Long userId) {
+        Instant now = Instant.now();
+
+        userPresenceWriter.record(userId, true, now);
+
+        presenceFanoutService.statusChanged(userId, true, now);
+    }
+
+    private void markOffline(Long userId) {
+        Instant now = Instant.now();
+
+        userPresenceWriter.record(userId, false, now);
 
-        OnlineStatusDTO status = new OnlineStatusDTO(userId, isOnline, lastSeen);
-        simpMessagingTemplate.convertAndSend("/topic/online-status", status);
+        presenceFanoutService.statusChanged(userId, false, now);
     }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package io.github.appleaww.messenger.service;
+
+import io.github.appleaww.messenger.model.dto.TypingDTO;
+import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.websocket.MessageFanoutService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Handles typing events in memory: repeated "typing" frames from the same user and chat
+ * are coalesced to one outbound frame per window, and "stopped typing" is sent on inactivity.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class TypingIndicatorService {
+    private final ChatMembershipIndex chatMembershipIndex;
+    private final MessageFanoutService messageFanoutService;
+
+    private final Map<TypingKey, TypingState> activeTypers = new ConcurrentHashMap<>();
+
+    @Value("${app.typing.coalesce-window-ms:1000}")
+    private long coalesceWindowMs;
+
+    @Value("${app.typing.inactivity-timeout-ms:5000}")
+    private long inactivityTimeoutMs;
+
+    public void processTyping(TypingDTO typingDTO, User user) {
+        Long recipientId = chatMembershipIndex.findRecipientId(typingDTO.chatId(), user.getId());
+        TypingKey key = new TypingKey(typingDTO.chatId(), user.getId());
+        long now = System.currentTimeMillis();
+
+        if (!typingDTO.isTyping()) {
+            TypingState previous = activeTypers.remove(key);
+            if (previous != null) {
+                send(key, previous.username(), recipientId, false);
+            }
+            return;
+        }
+
+        TypingState state = activeTypers.compute(key, (typingKey, previous) ->
+                previous == null || now - previous.lastSentAt() >= coalesceWindowMs
+                        ? new TypingState(user.getUsername(), recipientId, now, now, true)
+                        : new TypingState(previous.username(), recipientId, previous.lastSentAt(), now, false));
+
+        if (state.sendPending()) {
+            send(key, state.username(), recipientId, true);
+        }
+        log.debug("Typing processed for chat {} by user {}", typingDTO.chatId(), user.getId());
+    }
+
+    @Scheduled(fixedDelayString = "${app.typing.sweep-interval-ms:1000}")
+    public void expireInactiveTypers() {
+        long now = System.currentTimeMillis();
+
+        activeTypers.forEach((key, state) -> {
+            if (now - state.lastActivityAt() >= inactivityTimeoutMs && activeTypers.remove(key, state)) {
+                send(key, state.username(), state.recipientId(), false);
+            }
+        });
+    }
+
+    private void send(TypingKey key, String username, Long recipientId, boolean isTyping) {
+        messageFanoutService.sendToUser(
+                recipientId,
+                "/queue/typing-events",
+                new TypingDTO(key.chatId(), key.userId(), username, recipientId, isTyping)
+        );
+    }
+
+    private record TypingKey(Long chatId, Long userId) {}
+
+    private record TypingState(String username,
+                               Long recipientId,
+                               long lastSentAt,
+                               long lastActivityAt,
+                               boolean sendPending
+    ) {}
+}
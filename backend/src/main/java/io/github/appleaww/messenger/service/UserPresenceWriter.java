@@ -0,0 +1,106 @@
+package io.github.appleaww.messenger.service;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-behind for users.is_online and users.last_seen: the latest state per user is kept in memory
+ * and flushed on a schedule with one UPDATE per batch.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class UserPresenceWriter {
+    private final JdbcTemplate jdbcTemplate;
+    private final MetricsService metricsService;
+
+    private final Map<Long, PendingPresence> pendingPresence = new ConcurrentHashMap<>();
+
+    @Value("${app.presence.persist.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    @Value("${app.presence.persist.batch-size:1000}")
+    private int batchSize;
+
+    @PostConstruct
+    public void registerMetrics() {
+        metricsService.presenceFlushConfigured(flushIntervalMs, pendingPresence::size);
+    }
+
+    public void record(Long userId, boolean isOnline, Instant lastSeen) {
+        long now = System.nanoTime();
+        pendingPresence.merge(userId, new PendingPresence(isOnline, lastSeen, now),
+                (previous, next) -> new PendingPresence(isOnline, lastSeen, previous.recordedAt()));
+    }
+
+    /**
+     * @return the last seen time recorded on this node but not flushed yet
+     */
+    public Optional<Instant> findPendingLastSeen(Long userId) {
+        return Optional.ofNullable(pendingPresence.get(userId)).map(PendingPresence::lastSeen);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    @Scheduled(fixedDelayString = "${app.presence.persist.flush-interval-ms:1000}")
+    public void flush() {
+        List<Map.Entry<Long, PendingPresence>> drained = new ArrayList<>();
+        pendingPresence.forEach((userId, pending) -> {
+            if (pendingPresence.remove(userId, pending)) {
+                drained.add(Map.entry(userId, pending));
+            }
+        });
+
+        for (int from = 0; from < drained.size(); from += batchSize) {
+            List<Map.Entry<Long, PendingPresence>> batch = drained.subList(from, Math.min(from + batchSize, drained.size()));
+            try {
+                update(batch);
+                long oldest = batch.stream().mapToLong(entry -> entry.getValue().recordedAt()).min().orElseThrow();
+                metricsService.presenceFlushed(batch.size(), Duration.ofNanos(System.nanoTime() - oldest));
+            } catch (Exception e) {
+                log.error("Error: flush presence of {} users", batch.size(), e);
+                // a state recorded meanwhile is newer than the one that failed
+                batch.forEach(entry -> pendingPresence.putIfAbsent(entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    // last_seen only moves forward, so a late flush from another node can't roll a user back
+    private void update(List<Map.Entry<Long, PendingPresence>> batch) {
+        StringBuilder sql = new StringBuilder("UPDATE users u SET is_online = v.is_online, last_seen = v.last_seen FROM (VALUES ");
+        List<Object> args = new ArrayList<>(batch.size() * 3);
+
+        for (int i = 0; i < batch.size(); i++) {
+            Map.Entry<Long, PendingPresence> entry = batch.get(i);
+            sql.append(i == 0 ? "(?::bigint, ?::boolean, ?::timestamptz)" : ", (?, ?, ?)");
+            args.add(entry.getKey());
+            args.add(entry.getValue().isOnline());
+            args.add(OffsetDateTime.ofInstant(entry.getValue().lastSeen(), ZoneOffset.UTC));
+        }
+        sql.append(") AS v (id, is_online, last_seen) WHERE u.id = v.id AND (u.last_seen IS NULL OR u.last_seen <= v.last_seen)");
+
+        jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    private record PendingPresence(boolean isOnline, Instant lastSeen, long recordedAt) {}
+}
@@ -4,6 +4,7 @@ import io.github.appleaww.messenger.metrics.MetricsService;
 import io.github.appleaww.messenger.model.dto.request.SubscribeRequestDTO;
 import io.github.appleaww.messenger.model.entity.User;
 import io.github.appleaww.messenger.repository.UserRepository;
+import io.github.appleaww.messenger.security.UserIdentityCache;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
@@ -16,6 +17,7 @@ import org.springframework.stereotype.Service;
 public class UserService {
     private final UserRepository userRepository;
     private final MetricsService metricsService;
+    private final UserIdentityCache userIdentityCache;
 
     @Transactional
     public void activateSubscription(User currentUser, SubscribeRequestDTO subscribeRequestDTO) {
@@ -27,6 +29,7 @@ public class UserService {
         }
         user.setIsPremium(true);
         userRepository.save(user);
+        userIdentityCache.invalidate(user.getId());
 
         metricsService.subscriptionStarted(subscribeRequestDTO.tier());
 
@@ -1,8 +1,9 @@
 package io.github.appleaww.messenger.websocket;
 
 import io.github.appleaww.messenger.model.entity.User;
-import io.github.appleaww.messenger.repository.UserRepository;
 import io.github.appleaww.messenger.security.JwtTokenProvider;
+import io.github.appleaww.messenger.security.UserIdentity;
+import io.github.appleaww.messenger.security.UserIdentityCache;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,7 +29,7 @@ import java.util.List;
 @Order(Ordered.HIGHEST_PRECEDENCE + 30)
 public class AuthChannelInterceptor implements ChannelInterceptor {
     private final JwtTokenProvider jwtTokenProvider;
-    private final UserRepository userRepository;
+    private final UserIdentityCache userIdentityCache;
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
@@ -47,12 +48,9 @@ public class AuthChannelInterceptor implements ChannelInterceptor {
             }
             String token = authHeader.substring(7);
             try {
-                if (!jwtTokenProvider.validateToken(token)) {
-                    log.error("Invalid JWT token");
-                    throw new IllegalArgumentException("Invalid JWT token");
-                }
-                Long userId = jwtTokenProvider.extractId(token);
-                User user = userRepository.findById(userId)
+                Long userId = jwtTokenProvider.verify(token).userId();
+                User user = userIdentityCache.get(userId)
+                        .map(UserIdentity::toUser)
                         .orElseThrow(() -> new EntityNotFoundException("User with id " + userId + "not found"));
 
                 List<GrantedAuthority> authorities = List.of(
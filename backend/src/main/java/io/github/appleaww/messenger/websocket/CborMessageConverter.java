@@ -0,0 +1,34 @@
+package io.github.appleaww.messenger.websocket;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+/**
+ * Reads {@code application/cbor} bodies of frames sent by clients that negotiated the binary codec.
+ */
+public class CborMessageConverter extends AbstractMessageConverter {
+    private final CBORMapper cborMapper;
+
+    public CborMessageConverter(CBORMapper cborMapper) {
+        super(StompBodyCodec.APPLICATION_CBOR);
+        this.cborMapper = cborMapper;
+        setStrictContentTypeMatch(true);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return true;
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        return cborMapper.readValue((byte[]) message.getPayload(), targetClass);
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        return cborMapper.writeValueAsBytes(payload);
+    }
+}
@@ -0,0 +1,67 @@
+package io.github.appleaww.messenger.websocket;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Ring of slots, one per tick, holding the keys due in that tick; callers recheck each key handed back,
+ * since a deadline past one rotation comes due early. {@link #advance} must run on one thread at a time.
+ */
+public class HashedTimingWheel<K> {
+    private final long tickNanos;
+    private final long startNanos;
+    private final Set<K>[] slots;
+    private volatile long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(long tickNanos, int slotCount, long startNanos) {
+        if (tickNanos <= 0 || slotCount <= 0) {
+            throw new IllegalArgumentException("Tick and slot count must be positive");
+        }
+        this.tickNanos = tickNanos;
+        this.startNanos = startNanos;
+        this.slots = new Set[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    public void schedule(K key, long deadlineNanos) {
+        long tick = Math.max(Math.ceilDiv(deadlineNanos - startNanos, tickNanos), currentTick);
+        slots[slotOf(tick)].add(key);
+    }
+
+    /**
+     * Passes every tick up to {@code nowNanos}, removing the keys of each slot and handing them to {@code due}.
+     */
+    public void advance(long nowNanos, Consumer<K> due) {
+        long targetTick = (nowNanos - startNanos) / tickNanos;
+        long tick = currentTick;
+        long lastTick = Math.min(targetTick, tick + slots.length - 1);
+
+        for (; tick <= lastTick; tick++) {
+            currentTick = tick + 1;
+            Iterator<K> keys = slots[slotOf(tick)].iterator();
+            while (keys.hasNext()) {
+                K key = keys.next();
+                keys.remove();
+                due.accept(key);
+            }
+        }
+        currentTick = Math.max(currentTick, targetTick + 1);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Set<K> slot : slots) {
+            size += slot.size();
+        }
+        return size;
+    }
+
+    private int slotOf(long tick) {
+        return (int) Math.floorMod(tick, (long) slots.length);
+    }
+}
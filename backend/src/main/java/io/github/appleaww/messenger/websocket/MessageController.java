@@ -1,27 +1,34 @@
 package io.github.appleaww.messenger.websocket;
 
+import io.github.appleaww.messenger.model.dto.ResyncHintDTO;
 import io.github.appleaww.messenger.model.dto.TypingDTO;
 import io.github.appleaww.messenger.model.dto.request.MessageCreateRequestDTO;
 import io.github.appleaww.messenger.model.dto.request.ReadReceiptRequestDTO;
 import io.github.appleaww.messenger.model.dto.response.MessageCreateResponseDTO;
 import io.github.appleaww.messenger.model.dto.response.ReadReceiptResponseDTO;
+import io.github.appleaww.messenger.service.MessageBatchWriter;
 import io.github.appleaww.messenger.service.MessageService;
+import io.github.appleaww.messenger.service.TypingIndicatorService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
+import java.util.List;
 
 @Controller
 @RequiredArgsConstructor
 @Slf4j
 public class MessageController {
-    private final SimpMessagingTemplate messagingTemplate;
+    private static final String CHAT_MESSAGES_DESTINATION = "/queue/chat-messages";
+
+    private final MessageFanoutService messageFanoutService;
     private final MessageService messageService;
+    private final MessageBatchWriter messageBatchWriter;
+    private final TypingIndicatorService typingIndicatorService;
 
     @MessageMapping("/chat.sendMessage")
     public void sendMessage(@Payload MessageCreateRequestDTO messageCreateRequestDTO, Principal principal) {
@@ -34,17 +41,23 @@ public class MessageController {
         Authentication authentication = (Authentication) principal;
         UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
 
-        MessageCreateResponseDTO messageCreateResponseDTO = messageService.createMessage(messageCreateRequestDTO, userPrincipal.getUser());
-
-        messagingTemplate.convertAndSendToUser(
-                messageCreateResponseDTO.senderId().toString(),
-                "/queue/chat-messages",
-                messageCreateResponseDTO
-        );
+        if (messageBatchWriter.isEnabled()) {
+            MessageService.WriteBehindResult writeBehindResult =
+                    messageService.createMessageWriteBehind(messageCreateRequestDTO, userPrincipal.getUser());
+            if (writeBehindResult.response().pending()) {
+                sendPending(writeBehindResult);
+                return;
+            }
+            deliver(writeBehindResult.response());
+            return;
+        }
+        deliver(messageService.createMessage(messageCreateRequestDTO, userPrincipal.getUser()));
+    }
 
-        messagingTemplate.convertAndSendToUser(
-                messageCreateResponseDTO.recipientId().toString(),
-                "/queue/chat-messages",
+    private void deliver(MessageCreateResponseDTO messageCreateResponseDTO) {
+        messageFanoutService.sendToUsers(
+                List.of(messageCreateResponseDTO.senderId(), messageCreateResponseDTO.recipientId()),
+                CHAT_MESSAGES_DESTINATION,
                 messageCreateResponseDTO
         );
 
@@ -52,6 +65,22 @@ public class MessageController {
                 messageCreateResponseDTO.senderId(), messageCreateResponseDTO.recipientId());
     }
 
+    // a message not yet durable is only acknowledged to its sender; the recipient gets it once it is committed
+    private void sendPending(MessageService.WriteBehindResult writeBehindResult) {
+        MessageCreateResponseDTO pending = writeBehindResult.response();
+        messageFanoutService.sendToUser(pending.senderId(), CHAT_MESSAGES_DESTINATION, pending);
+
+        writeBehindResult.committed().whenComplete((committed, error) -> {
+            if (error == null) {
+                deliver(committed);
+                return;
+            }
+            log.warn("Pending message with id {} from User with id {} was not saved",
+                    pending.messageId(), pending.senderId());
+            messageFanoutService.sendToUser(pending.senderId(), MessageFanoutService.RESYNC_DESTINATION, new ResyncHintDTO("message-not-saved"));
+        });
+    }
+
     @MessageMapping("/chat.readMessages")
     public void markMessagesAsRead(@Payload ReadReceiptRequestDTO readReceiptRequestDTO, Principal principal) {
         if (principal == null) {
@@ -62,8 +91,8 @@ public class MessageController {
         UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
 
         ReadReceiptResponseDTO readReceiptResponseDTO = messageService.processReadReceipt(readReceiptRequestDTO, userPrincipal.getUser());
-        messagingTemplate.convertAndSendToUser(
-                readReceiptResponseDTO.recipientId().toString(),
+        messageFanoutService.sendToUser(
+                readReceiptResponseDTO.recipientId(),
                 "/queue/read-receipts",
                 readReceiptResponseDTO
         );
@@ -75,12 +104,6 @@ public class MessageController {
     public void displayTypingProcess(@Payload TypingDTO typingDTO, Principal principal) {
         Authentication authentication = (Authentication) principal;
         UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
-        TypingDTO typingResponseDTO = messageService.processTyping(typingDTO, userPrincipal.getUser());
-
-        messagingTemplate.convertAndSendToUser(
-                typingResponseDTO.recipientId().toString(),
-                "/queue/typing-events",
-                typingResponseDTO
-        );
+        typingIndicatorService.processTyping(typingDTO, userPrincipal.getUser());
     }
 }
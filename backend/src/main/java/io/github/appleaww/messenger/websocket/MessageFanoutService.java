@@ -0,0 +1,229 @@
+package io.github.appleaww.messenger.websocket;
+
+import io.github.appleaww.messenger.kafka.UserDelivery;
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.model.dto.ResyncHintDTO;
+import io.github.appleaww.messenger.presence.PresenceRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single entry point for user-destination frames: served locally by the simple broker and, in cluster mode,
+ * published through a bounded queue to the fan-out topic for recipients with sessions on other nodes.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class MessageFanoutService {
+    static final String RESYNC_DESTINATION = "/queue/resync";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final SimpUserRegistry simpUserRegistry;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final JsonMapper jsonMapper;
+    private final PresenceRegistry presenceRegistry;
+    private final MetricsService metricsService;
+
+    @Value("${app.fanout.kafka.enabled:false}")
+    private boolean clusterEnabled;
+
+    @Value("${app.fanout.kafka.topic:user-deliveries}")
+    private String topic;
+
+    @Value("${app.node-id:0}")
+    private int nodeId;
+
+    @Value("${app.fanout.kafka.publish-queue-capacity:10000}")
+    private int publishQueueCapacity;
+
+    private BlockingQueue<UserDelivery> publishQueue;
+    private final Queue<UserDelivery> invalidationQueue = new ConcurrentLinkedQueue<>();
+    private Thread publisher;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        if (!clusterEnabled) {
+            return;
+        }
+        publishQueue = new ArrayBlockingQueue<>(publishQueueCapacity);
+        running = true;
+        metricsService.fanoutPublishConfigured(publishQueue::size);
+        publisher = Thread.ofPlatform().name("fanout-publisher").daemon().start(this::runPublishLoop);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (publisher == null) {
+            return;
+        }
+        running = false;
+        publisher.join(5_000);
+    }
+
+    public void sendToUser(Long userId, String destination, Object payload) {
+        if (!clusterEnabled) {
+            deliverLocally(userId, destination, payload);
+            return;
+        }
+        boolean connectedLocally = isConnectedLocally(userId);
+        if (connectedLocally) {
+            deliverLocally(userId, destination, payload);
+        }
+        if (!connectedLocally || presenceRegistry.isOnlineOnOtherNode(userId)) {
+            publish(new UserDelivery(userId, destination, payload, null, nodeId));
+        }
+    }
+
+    public void sendToUsers(Collection<Long> userIds, String destination, Object payload) {
+        byte[] jsonFrame = jsonMapper.writeValueAsBytes(payload);
+        for (Long userId : userIds) {
+            sendFrameToUser(userId, destination, jsonFrame);
+        }
+    }
+
+    /**
+     * Sends a JSON frame serialized by the caller, so one serialization can be shared by many recipients.
+     */
+    public void sendFrameToUser(Long userId, String destination, byte[] jsonFrame) {
+        if (!clusterEnabled) {
+            deliverFrameLocally(userId, destination, jsonFrame);
+            return;
+        }
+        boolean connectedLocally = isConnectedLocally(userId);
+        if (connectedLocally) {
+            deliverFrameLocally(userId, destination, jsonFrame);
+        }
+        if (!connectedLocally || presenceRegistry.isOnlineOnOtherNode(userId)) {
+            publish(new UserDelivery(userId, destination, null, jsonFrame, nodeId));
+        }
+    }
+
+    /**
+     * Called for every record of the fan-out topic; only the nodes holding the recipient's sessions deliver it,
+     * and the publishing node already served its own sessions before publishing.
+     */
+    public void deliverIfConnected(UserDelivery delivery) {
+        if (delivery.originNodeId() == nodeId || !isConnectedLocally(delivery.userId())) {
+            return;
+        }
+        if (delivery.frame() != null) {
+            deliverFrameLocally(delivery.userId(), delivery.destination(), delivery.frame());
+        } else {
+            deliverLocally(delivery.userId(), delivery.destination(), delivery.payload());
+        }
+        log.debug("Delivered {} from node {} to user {}", delivery.destination(), delivery.originNodeId(), delivery.userId());
+    }
+
+    /**
+     * Tells the other nodes to drop a deleted chat from their membership index.
+     */
+    public void broadcastMembershipInvalidation(Long chatId) {
+        if (clusterEnabled) {
+            invalidationQueue.add(UserDelivery.membershipInvalidated(chatId, nodeId));
+        }
+    }
+
+    /**
+     * Tells a session that lost frames to slow-consumer backpressure to reload its state.
+     */
+    @EventListener
+    public void sendResyncHint(OutboundResyncEvent event) {
+        // a user name equal to the session id header makes the user destination resolver target only that session
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(event.sessionId());
+        accessor.setLeaveMutable(true);
+
+        messagingTemplate.convertAndSendToUser(event.sessionId(), RESYNC_DESTINATION,
+                new ResyncHintDTO("slow-consumer"), accessor.getMessageHeaders());
+        log.debug("Sent resync hint to session {}", event.sessionId());
+    }
+
+    private void publish(UserDelivery delivery) {
+        if (!publishQueue.offer(delivery)) {
+            metricsService.fanoutPublishDropped();
+            log.debug("Fan-out queue full, dropped {} to user {}", delivery.destination(), delivery.userId());
+        }
+    }
+
+    private void runPublishLoop() {
+        // fetch the topic metadata up front so the first send doesn't wait for it
+        try {
+            kafkaTemplate.partitionsFor(topic);
+        } catch (Exception e) {
+            log.warn("Fan-out topic {} metadata not available yet: {}", topic, e.getMessage());
+        }
+
+        while (running || !publishQueue.isEmpty() || !invalidationQueue.isEmpty()) {
+            try {
+                for (UserDelivery invalidation; (invalidation = invalidationQueue.poll()) != null; ) {
+                    send(invalidation);
+                }
+                UserDelivery delivery = publishQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (delivery != null) {
+                    send(delivery);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void send(UserDelivery delivery) {
+        try {
+            kafkaTemplate.send(topic, delivery.key(), delivery)
+                    .whenComplete((result, exception) -> {
+                        if (exception != null) {
+                            log.error("Error: fan out {}", describe(delivery), exception);
+                        }
+                    });
+        } catch (Exception e) {
+            log.error("Error: fan out {}", describe(delivery), e);
+        }
+    }
+
+    private static String describe(UserDelivery delivery) {
+        return delivery.type() == UserDelivery.Type.MEMBERSHIP_INVALIDATED
+                ? "membership invalidation of chat " + delivery.chatId()
+                : delivery.destination() + " to user " + delivery.userId();
+    }
+
+    private boolean isConnectedLocally(Long userId) {
+        return simpUserRegistry.getUser(userId.toString()) != null;
+    }
+
+    private void deliverLocally(Long userId, String destination, Object payload) {
+        messagingTemplate.convertAndSendToUser(userId.toString(), destination, payload);
+    }
+
+    // bypasses the message converters, which would encode a byte[] payload as a base64 JSON string
+    private void deliverFrameLocally(Long userId, String destination, byte[] jsonFrame) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+
+        messagingTemplate.send(messagingTemplate.getUserDestinationPrefix() + userId + destination,
+                MessageBuilder.createMessage(jsonFrame, accessor.getMessageHeaders()));
+    }
+}
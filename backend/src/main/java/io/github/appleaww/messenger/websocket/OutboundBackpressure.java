@@ -0,0 +1,208 @@
+package io.github.appleaww.messenger.websocket;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts outbound frames per session until written and applies the {@link Policy} to a session
+ * past the soft limit; the transport's own buffer and time limits remain the hard ceiling.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class OutboundBackpressure implements ChannelInterceptor {
+    public enum Policy { DROP, RESYNC, DISCONNECT }
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final MetricsService metricsService;
+
+    private final Map<String, OutboundSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    @Value("${app.websocket.outbound.soft-limit-bytes:131072}")
+    private long softLimitBytes;
+
+    @Value("${app.websocket.outbound.policy:DROP}")
+    private Policy policy;
+
+    @Value("${app.websocket.outbound.droppable-destinations:/user/queue/typing-events,/user/queue/online-status}")
+    private Set<String> droppableDestinations;
+
+    @PostConstruct
+    public void registerMetrics() {
+        metricsService.websocketOutboundConfigured(bufferedBytes::get);
+    }
+
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                OutboundSession outbound = new OutboundSession(session);
+                sessions.put(session.getId(), outbound);
+                super.afterConnectionEstablished(outbound);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                try {
+                    super.afterConnectionClosed(session, closeStatus);
+                } finally {
+                    OutboundSession outbound = sessions.remove(session.getId());
+                    if (outbound != null) {
+                        outbound.discardBacklog();
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        OutboundSession session = sessionId != null ? sessions.get(sessionId) : null;
+        if (session == null) {
+            return message;
+        }
+
+        if (SimpMessageHeaderAccessor.getMessageType(headers) == SimpMessageType.MESSAGE
+                && session.pendingBytes.get() > softLimitBytes) {
+            boolean droppable = droppableDestinations.contains(destination(headers));
+            switch (policy) {
+                case DROP -> {
+                    if (droppable) {
+                        metricsService.websocketFrameDropped(policy.name());
+                        return null;
+                    }
+                }
+                case RESYNC -> {
+                    if (!droppable) {
+                        session.resyncPending = true;
+                    }
+                    metricsService.websocketFrameDropped(policy.name());
+                    return null;
+                }
+                case DISCONNECT -> {
+                    disconnect(session);
+                    return null;
+                }
+            }
+        }
+
+        session.enqueued(message.getPayload() instanceof byte[] payload ? payload.length : 0);
+        return message;
+    }
+
+    private void disconnect(OutboundSession session) {
+        if (!session.open) {
+            return;
+        }
+        session.open = false;
+        log.warn("Closing slow WebSocket session {}: {} bytes outstanding", session.getId(), session.pendingBytes.get());
+        metricsService.websocketSlowConsumerDisconnected();
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to close slow WebSocket session {}", session.getId(), e);
+        }
+    }
+
+    // user destinations reach the session rewritten to /queue/...-user{sessionId}, the original is kept in a header
+    private static String destination(MessageHeaders headers) {
+        Object original = headers.get(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION);
+        return original != null ? original.toString() : SimpMessageHeaderAccessor.getDestination(headers);
+    }
+
+    // STOMP frames are the headers, a blank line, the body and a NUL; the body is the payload counted in preSend
+    static int bodyLength(WebSocketMessage<?> message) {
+        ByteBuffer frame;
+        if (message instanceof TextMessage text) {
+            frame = ByteBuffer.wrap(text.asBytes());
+        } else if (message instanceof BinaryMessage binary) {
+            frame = binary.getPayload();
+        } else {
+            return -1;
+        }
+        for (int i = frame.position(); i + 1 < frame.limit(); i++) {
+            if (frame.get(i) == '\n' && frame.get(i + 1) == '\n') {
+                return frame.limit() - i - 3;
+            }
+        }
+        // a heartbeat
+        return 0;
+    }
+
+    // sits between the transport's send buffer and the socket, so a write returning here has left the node
+    private final class OutboundSession extends WebSocketSessionDecorator {
+        private final Queue<Integer> frameSizes = new ConcurrentLinkedQueue<>();
+        private final AtomicLong pendingBytes = new AtomicLong();
+        private volatile boolean resyncPending;
+        private volatile boolean open = true;
+
+        private OutboundSession(WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        private void enqueued(int size) {
+            frameSizes.add(size);
+            pendingBytes.addAndGet(size);
+            bufferedBytes.addAndGet(size);
+        }
+
+        // frames written straight to the socket, like STOMP errors, match nothing recorded and are ignored
+        private void written(int size) {
+            if (size >= 0 && frameSizes.remove(size)) {
+                pendingBytes.addAndGet(-size);
+                bufferedBytes.addAndGet(-size);
+            }
+        }
+
+        private void discardBacklog() {
+            for (Integer size; (size = frameSizes.poll()) != null; ) {
+                pendingBytes.addAndGet(-size);
+                bufferedBytes.addAndGet(-size);
+            }
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            try {
+                super.sendMessage(message);
+            } finally {
+                written(bodyLength(message));
+            }
+            if (resyncPending && pendingBytes.get() <= softLimitBytes / 2) {
+                resyncPending = false;
+                eventPublisher.publishEvent(new OutboundResyncEvent(getId()));
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package io.github.appleaww.messenger.websocket;
+
+/**
+ * Published by {@link OutboundBackpressure} when a session that lost frames has caught up again.
+ */
+public record OutboundResyncEvent(String sessionId) {}
@@ -0,0 +1,132 @@
+package io.github.appleaww.messenger.websocket;
+
+import io.github.appleaww.messenger.model.dto.OnlineStatusDTO;
+import io.github.appleaww.messenger.presence.PresenceRegistry;
+import io.github.appleaww.messenger.repository.UserChatStateRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends presence changes, debounced and batched per tick, on {@code /user/queue/online-status}
+ * to the online users who share a chat with the subject.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class PresenceFanoutService {
+    static final String DESTINATION = "/queue/online-status";
+
+    private final UserChatStateRepository userChatStateRepository;
+    private final PresenceRegistry presenceRegistry;
+    private final MessageFanoutService messageFanoutService;
+    private final JsonMapper jsonMapper;
+
+    private final Map<Long, PendingStatus> pendingStatuses = new ConcurrentHashMap<>();
+
+    @Value("${app.presence.fanout.debounce-ms:1500}")
+    private long debounceMs;
+
+    @Value("${app.presence.fanout.max-delay-ms:10000}")
+    private long maxDelayMs;
+
+    @Value("${app.presence.fanout.contacts-chunk-size:500}")
+    private int contactsChunkSize;
+
+    public void statusChanged(Long userId, boolean isOnline, Instant lastSeen) {
+        OnlineStatusDTO status = new OnlineStatusDTO(userId, isOnline, lastSeen);
+        long now = System.currentTimeMillis();
+
+        pendingStatuses.merge(userId, new PendingStatus(status, !isOnline, now, now),
+                (previous, next) -> new PendingStatus(status, previous.onlineBefore(), previous.firstChangedAt(), now));
+    }
+
+    @Scheduled(fixedDelayString = "${app.presence.fanout.tick-ms:250}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        Map<Long, PendingStatus> settled = new LinkedHashMap<>();
+
+        pendingStatuses.forEach((userId, pending) -> {
+            boolean quiet = now - pending.lastChangedAt() >= debounceMs;
+            boolean overdue = now - pending.firstChangedAt() >= maxDelayMs;
+            if ((quiet || overdue) && pendingStatuses.remove(userId, pending)
+                    && pending.status().isOnline() != pending.onlineBefore()) {
+                settled.put(userId, pending);
+            }
+        });
+        if (settled.isEmpty()) {
+            return;
+        }
+
+        Map<Long, List<Long>> subjectsByRecipient = new HashMap<>();
+        List<Long> subjectIds = List.copyOf(settled.keySet());
+        for (int from = 0; from < subjectIds.size(); from += contactsChunkSize) {
+            List<Long> chunk = subjectIds.subList(from, Math.min(from + contactsChunkSize, subjectIds.size()));
+            try {
+                addOnlineContacts(chunk, subjectsByRecipient);
+            } catch (RuntimeException e) {
+                log.error("Error: look up contacts of {} users, retrying on the next tick", chunk.size(), e);
+                chunk.forEach(userId -> requeue(userId, settled.remove(userId)));
+            }
+        }
+
+        Map<Long, byte[]> serialized = new HashMap<>();
+        settled.forEach((userId, pending) -> serialized.put(userId, jsonMapper.writeValueAsBytes(pending.status())));
+
+        Map<List<Long>, byte[]> frames = new HashMap<>();
+        subjectsByRecipient.forEach((recipientId, subjects) -> {
+            subjects.sort(null);
+            byte[] frame = frames.computeIfAbsent(subjects, ids -> frame(ids, serialized));
+            messageFanoutService.sendFrameToUser(recipientId, DESTINATION, frame);
+        });
+        log.debug("Presence of {} users sent to {} recipients in {} distinct frames",
+                settled.size(), subjectsByRecipient.size(), frames.size());
+    }
+
+    private void addOnlineContacts(List<Long> subjectIds, Map<Long, List<Long>> subjectsByRecipient) {
+        List<UserChatStateRepository.Contact> contacts = userChatStateRepository.findContacts(subjectIds);
+        Set<Long> onlineContacts = presenceRegistry.filterOnline(
+                contacts.stream().map(UserChatStateRepository.Contact::getContactId).toList());
+
+        for (UserChatStateRepository.Contact contact : contacts) {
+            if (onlineContacts.contains(contact.getContactId())) {
+                subjectsByRecipient.computeIfAbsent(contact.getContactId(), id -> new ArrayList<>()).add(contact.getUserId());
+            }
+        }
+    }
+
+    // a change that arrived meanwhile wins, but it is still compared against the status before the failed one
+    private void requeue(Long userId, PendingStatus failed) {
+        pendingStatuses.merge(userId, failed,
+                (newer, previous) -> new PendingStatus(newer.status(), previous.onlineBefore(),
+                        previous.firstChangedAt(), newer.lastChangedAt()));
+    }
+
+    private static byte[] frame(List<Long> subjectIds, Map<Long, byte[]> serialized) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('[');
+        for (int i = 0; i < subjectIds.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(serialized.get(subjectIds.get(i)));
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    private record PendingStatus(OnlineStatusDTO status, boolean onlineBefore, long firstChangedAt, long lastChangedAt) {}
+}
@@ -0,0 +1,6 @@
+package io.github.appleaww.messenger.websocket;
+
+/**
+ * Published by {@link SessionReaper} after it closed a session that went silent.
+ */
+public record SessionExpiredEvent(String sessionId, Long userId) {}
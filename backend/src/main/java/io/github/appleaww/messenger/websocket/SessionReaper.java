@@ -0,0 +1,150 @@
+package io.github.appleaww.messenger.websocket;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closes WebSocket sessions that sent nothing, not even a heartbeat, for the idle timeout,
+ * so a half-open connection doesn't keep its user online.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SessionReaper implements ChannelInterceptor {
+    private final ApplicationEventPublisher eventPublisher;
+    private final MetricsService metricsService;
+
+    private final Map<String, TrackedSession> sessions = new ConcurrentHashMap<>();
+    private HashedTimingWheel<String> wheel;
+
+    @Value("${app.websocket.reaper.idle-timeout-ms:30000}")
+    private long idleTimeoutMs;
+
+    @Value("${app.websocket.reaper.tick-ms:1000}")
+    private long tickMs;
+
+    @PostConstruct
+    public void init() {
+        int slotCount = (int) Math.ceilDiv(idleTimeoutMs, tickMs) + 1;
+        wheel = new HashedTimingWheel<>(TimeUnit.MILLISECONDS.toNanos(tickMs), slotCount, System.nanoTime());
+        metricsService.websocketConnectionsTracked(sessions::size);
+    }
+
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                track(session);
+                super.afterConnectionEstablished(session);
+            }
+        };
+    }
+
+    public void track(WebSocketSession session) {
+        long now = System.nanoTime();
+        sessions.put(session.getId(), new TrackedSession(session, now));
+        wheel.schedule(session.getId(), now + TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs));
+    }
+
+    /**
+     * Attaches the authenticated user, so expiring the session takes that user's session offline.
+     *
+     * @return false if the session is already gone
+     */
+    public boolean register(String sessionId, Long userId) {
+        TrackedSession session = sessions.get(sessionId);
+        if (session == null) {
+            return false;
+        }
+        session.userId = userId;
+        return true;
+    }
+
+    /**
+     * @return true if the session was still tracked, i.e. the caller is the one to close it for its user
+     */
+    public boolean release(String sessionId) {
+        return sessionId != null && sessions.remove(sessionId) != null;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId != null) {
+            TrackedSession session = sessions.get(sessionId);
+            if (session != null) {
+                session.lastActivityNanos = System.nanoTime();
+            }
+        }
+        return message;
+    }
+
+    @Scheduled(fixedRateString = "${app.websocket.reaper.tick-ms:1000}")
+    public void reap() {
+        long now = System.nanoTime();
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+
+        wheel.advance(now, sessionId -> {
+            TrackedSession session = sessions.get(sessionId);
+            if (session == null) {
+                return;
+            }
+            long deadline = session.lastActivityNanos + idleTimeoutNanos;
+            if (deadline - now > 0) {
+                wheel.schedule(sessionId, deadline);
+            } else if (sessions.remove(sessionId, session)) {
+                expire(session);
+            }
+        });
+    }
+
+    public int getTrackedSessions() {
+        return sessions.size();
+    }
+
+    private void expire(TrackedSession session) {
+        String sessionId = session.transport.getId();
+        log.info("Closing WebSocket session {} of user {}: no inbound traffic for {} ms",
+                sessionId, session.userId, idleTimeoutMs);
+        metricsService.websocketConnectionReaped();
+
+        try {
+            session.transport.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to close idle WebSocket session {}", sessionId, e);
+        }
+        if (session.userId != null) {
+            eventPublisher.publishEvent(new SessionExpiredEvent(sessionId, session.userId));
+        }
+    }
+
+    private static final class TrackedSession {
+        private final WebSocketSession transport;
+        private volatile long lastActivityNanos;
+        private volatile Long userId;
+
+        private TrackedSession(WebSocketSession transport, long lastActivityNanos) {
+            this.transport = transport;
+            this.lastActivityNanos = lastActivityNanos;
+        }
+    }
+}
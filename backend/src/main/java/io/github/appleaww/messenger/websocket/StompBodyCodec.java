@@ -0,0 +1,153 @@
+package io.github.appleaww.messenger.websocket;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.JsonParser;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-connection JSON or CBOR bodies, chosen by the content-type of the CONNECT frame on the native endpoint;
+ * the CBOR copy of a broadcast payload is made once, not per session.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StompBodyCodec implements ChannelInterceptor {
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    private final JsonMapper jsonMapper;
+    private final CBORMapper cborMapper = CBORMapper.builder().build();
+
+    // native sessions only, true once the client negotiated CBOR
+    private final Map<String, Boolean> binarySessions = new ConcurrentHashMap<>();
+    // keyed by the identity of the broker's payload array, dropped once the broker lets go of it
+    private final Cache<byte[], byte[]> transcoded = Caffeine.newBuilder().weakKeys().build();
+
+    public MessageConverter messageConverter() {
+        return new CborMessageConverter(cborMapper);
+    }
+
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                if (session instanceof SockJsSession) {
+                    super.afterConnectionEstablished(session);
+                    return;
+                }
+                binarySessions.put(session.getId(), false);
+                super.afterConnectionEstablished(new CodecSession(session));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                binarySessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId == null) {
+            return message;
+        }
+
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (messageType == SimpMessageType.CONNECT) {
+            if (APPLICATION_CBOR.equalsTypeAndSubtype(contentType(headers))
+                    && binarySessions.replace(sessionId, true) != null) {
+                log.debug("Session {} negotiated CBOR bodies", sessionId);
+            }
+            return message;
+        }
+        if (messageType == SimpMessageType.MESSAGE && Boolean.TRUE.equals(binarySessions.get(sessionId))
+                && message.getPayload() instanceof byte[] json && json.length > 0
+                && MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType(headers))) {
+            MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+            accessor.setContentType(APPLICATION_CBOR);
+            return MessageBuilder.createMessage(transcodeOnce(json), accessor.getMessageHeaders());
+        }
+        return message;
+    }
+
+    // no lock is held while transcoding: sessions racing on a new payload may each transcode it, and one copy wins
+    private byte[] transcodeOnce(byte[] json) {
+        byte[] cbor = transcoded.getIfPresent(json);
+        if (cbor != null) {
+            return cbor;
+        }
+        cbor = toCbor(json);
+        byte[] raced = transcoded.asMap().putIfAbsent(json, cbor);
+        return raced != null ? raced : cbor;
+    }
+
+    byte[] toCbor(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = jsonMapper.createParser(json);
+             JsonGenerator generator = cborMapper.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        return out.toByteArray();
+    }
+
+    private static MimeType contentType(MessageHeaders headers) {
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        if (contentType instanceof MimeType mimeType) {
+            return mimeType;
+        }
+        return contentType != null ? MimeTypeUtils.parseMimeType(contentType.toString()) : null;
+    }
+
+    /**
+     * STOMP frames are handed over as text; a session that negotiated CBOR gets the same bytes as a binary message.
+     */
+    private final class CodecSession extends WebSocketSessionDecorator {
+
+        private CodecSession(WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (message instanceof TextMessage text && Boolean.TRUE.equals(binarySessions.get(getId()))) {
+                super.sendMessage(new BinaryMessage(text.asBytes()));
+                return;
+            }
+            super.sendMessage(message);
+        }
+    }
+}
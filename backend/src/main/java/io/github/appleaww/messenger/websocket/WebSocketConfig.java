@@ -2,13 +2,25 @@ package io.github.appleaww.messenger.websocket;
 
 import io.github.appleaww.messenger.exception.WebSocketExceptionHandler;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.thread.Threading;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -17,12 +29,35 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     private final AuthChannelInterceptor authChannelInterceptor;
     private final WebSocketExceptionHandler webSocketExceptionHandler;
     private final ChannelInterceptor csrfChannelInterceptor;
+    private final SessionReaper sessionReaper;
+    private final OutboundBackpressure outboundBackpressure;
+    private final StompBodyCodec stompBodyCodec;
+    private final Environment environment;
+
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    @Value("${app.websocket.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    @Value("${app.websocket.outbound.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${app.websocket.outbound.send-buffer-limit-bytes:524288}")
+    private int sendBufferLimitBytes;
+
+    @Autowired
+    public void setMessageBrokerTaskScheduler(@Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler taskScheduler) {
+        this.messageBrokerTaskScheduler = taskScheduler;
+    }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config){
-        config.enableSimpleBroker("/topic", "/queue");
+        config.enableSimpleBroker("/topic", "/queue")
+                .setHeartbeatValue(new long[]{heartbeatMs, heartbeatMs})
+                .setTaskScheduler(messageBrokerTaskScheduler);
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
+        config.setPreservePublishOrder(virtualThreads());
     }
 
     @Override
@@ -30,13 +65,50 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/websocket")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+        // plain WebSocket for clients that don't need the SockJS fallbacks; the only one offering CBOR bodies
+        registry.addEndpoint("/ws")
+                .setAllowedOriginPatterns("*");
 
         registry.setErrorHandler(webSocketExceptionHandler);
+        registry.setPreserveReceiveOrder(virtualThreads());
+    }
 
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferLimitBytes)
+                .addDecoratorFactory(sessionReaper::decorate)
+                .addDecoratorFactory(outboundBackpressure::decorate)
+                .addDecoratorFactory(stompBodyCodec::decorate);
     }
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-        registration.interceptors(authChannelInterceptor, csrfChannelInterceptor);
+        registration.interceptors(sessionReaper, stompBodyCodec, authChannelInterceptor, csrfChannelInterceptor);
+        if (virtualThreads()) {
+            registration.executor(new VirtualThreadTaskExecutor("ws-inbound-"));
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(stompBodyCodec, outboundBackpressure);
+        if (virtualThreads()) {
+            registration.executor(new VirtualThreadTaskExecutor("ws-outbound-"));
+        }
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        messageConverters.add(stompBodyCodec.messageConverter());
+        return true;
+    }
+
+    /**
+     * Same switch as Tomcat and @Async: spring.threads.virtual.enabled. A virtual thread per
+     * message has no pool to exhaust, so ordering per session is restored explicitly instead.
+     */
+    private boolean virtualThreads() {
+        return Threading.VIRTUAL.isActive(environment);
     }
 }
@@ -16,6 +16,7 @@ import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 @RequiredArgsConstructor
 public class WebSocketEventListener {
     private final OnlineStatusService onlineStatusService;
+    private final SessionReaper sessionReaper;
 
     @Async
     @EventListener
@@ -25,6 +26,10 @@ public class WebSocketEventListener {
         if (headerAccessor.getUser() instanceof UsernamePasswordAuthenticationToken auth) {
             if (auth.getPrincipal() instanceof UserPrincipal userPrincipal) {
                 Long userId = userPrincipal.getUserId();
+                if (!sessionReaper.register(headerAccessor.getSessionId(), userId)) {
+                    log.debug("Session {} closed before its connect event was handled", headerAccessor.getSessionId());
+                    return;
+                }
                 onlineStatusService.userConnected(userId);
                 log.info("User with id {} connected", userId);
             } else {
@@ -40,6 +45,10 @@ public class WebSocketEventListener {
     public void HandleWebSocketDisconnectListener(SessionDisconnectEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
 
+        if (!sessionReaper.release(event.getSessionId())) {
+            log.debug("Session {} was already closed by the reaper", event.getSessionId());
+            return;
+        }
         if (headerAccessor.getUser() instanceof UsernamePasswordAuthenticationToken auth) {
             if (auth.getPrincipal() instanceof UserPrincipal userPrincipal) {
                 Long userId = userPrincipal.getUserId();
@@ -52,4 +61,11 @@ public class WebSocketEventListener {
             log.debug("No authentication for disconnect event - skipping");
         }
     }
+
+    @Async
+    @EventListener
+    public void handleSessionExpired(SessionExpiredEvent event) {
+        onlineStatusService.userDisconnected(event.userId());
+        log.info("User with id {} disconnected after session {} went silent", event.userId(), event.sessionId());
+    }
 }
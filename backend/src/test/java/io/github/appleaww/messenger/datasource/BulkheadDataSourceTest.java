@@ -0,0 +1,78 @@
+package io.github.appleaww.messenger.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BulkheadDataSourceTest {
+    private final DataSource target = mock(DataSource.class);
+    private final Connection connection = mock(Connection.class);
+
+    private BulkheadDataSource bulkheadDataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        when(target.getConnection()).thenReturn(connection);
+        bulkheadDataSource = new BulkheadDataSource(target, 2, 50);
+    }
+
+    @Test
+    @DisplayName("Test a thread past the permit limit times out with a transient connection error")
+    void getConnection_rejectsPastLimit() throws SQLException {
+        bulkheadDataSource.getConnection();
+        bulkheadDataSource.getConnection();
+
+        assertThatThrownBy(() -> bulkheadDataSource.getConnection())
+                .isInstanceOf(SQLTransientConnectionException.class);
+        verify(target, times(2)).getConnection();
+    }
+
+    @Test
+    @DisplayName("Test closing a connection hands its permit to a waiting thread, only once")
+    void close_releasesPermitOnce() throws Exception {
+        bulkheadDataSource = new BulkheadDataSource(target, 1, 5_000);
+        Connection held = bulkheadDataSource.getConnection();
+
+        CompletableFuture<Connection> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return bulkheadDataSource.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        held.close();
+        held.close();
+
+        assertThat(waiting.get(1, TimeUnit.SECONDS)).isNotNull();
+        assertThat(bulkheadDataSource.getAvailablePermits()).isZero();
+        verify(connection, times(1)).close();
+    }
+
+    @Test
+    @DisplayName("Test a failing pool doesn't leak the permit")
+    void getConnection_failureReleasesPermit() throws SQLException {
+        when(target.getConnection()).thenThrow(new SQLException("pool down"));
+
+        assertThatThrownBy(() -> bulkheadDataSource.getConnection()).hasMessage("pool down");
+        assertThat(bulkheadDataSource.getAvailablePermits()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Test calls other than close go straight to the pooled connection")
+    void connection_delegates() throws SQLException {
+        when(connection.getAutoCommit()).thenReturn(true);
+
+        assertThat(bulkheadDataSource.getConnection().getAutoCommit()).isTrue();
+        assertThat(bulkheadDataSource.unwrap(BulkheadDataSource.class)).isSameAs(bulkheadDataSource);
+    }
+}
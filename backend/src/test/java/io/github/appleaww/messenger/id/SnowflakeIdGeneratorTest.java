@@ -0,0 +1,69 @@
+package io.github.appleaww.messenger.id;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    @DisplayName("Test ids are strictly increasing, even past the per-millisecond sequence")
+    void nextId_increasing() {
+        SnowflakeIdGenerator generator = SnowflakeIdGenerator.forNode(3);
+
+        long previous = generator.nextId();
+        for (int i = 0; i < 10_000; i++) {
+            long next = generator.nextId();
+            assertThat(next).isGreaterThan(previous);
+            previous = next;
+        }
+    }
+
+    @Test
+    @DisplayName("Test an exhausted sequence waits for the next millisecond instead of running ahead of the clock")
+    void nextId_neverAheadOfClock() {
+        SnowflakeIdGenerator generator = SnowflakeIdGenerator.forNode(4);
+
+        for (int i = 0; i < 10_000; i++) {
+            long timestamp = generator.nextId() >> (SnowflakeIdGenerator.NODE_BITS + SnowflakeIdGenerator.SEQUENCE_BITS);
+            assertThat(timestamp).isLessThanOrEqualTo(System.currentTimeMillis() - SnowflakeIdGenerator.EPOCH.toEpochMilli());
+        }
+    }
+
+    @Test
+    @DisplayName("Test ids carry the node id and stay exact as JavaScript numbers")
+    void nextId_layout() {
+        long id = SnowflakeIdGenerator.forNode(5).nextId();
+
+        assertThat((id >> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_NODE_ID).isEqualTo(5);
+        assertThat(id).isLessThan(1L << 53);
+    }
+
+    @Test
+    @DisplayName("Test concurrent callers never get the same id")
+    void nextId_concurrent() {
+        SnowflakeIdGenerator generator = SnowflakeIdGenerator.forNode(7);
+
+        Set<Long> ids = IntStream.range(0, 8)
+                .mapToObj(thread -> CompletableFuture.supplyAsync(() ->
+                        IntStream.range(0, 5_000).mapToObj(i -> generator.nextId()).toList()))
+                .map(CompletableFuture::join)
+                .collect(HashSet::new, Set::addAll, Set::addAll);
+
+        assertThat(ids).hasSize(8 * 5_000);
+    }
+
+    @Test
+    @DisplayName("Test the same node always shares one generator and invalid nodes are rejected")
+    void forNode() {
+        assertThat(SnowflakeIdGenerator.forNode(2)).isSameAs(SnowflakeIdGenerator.forNode(2));
+        assertThatThrownBy(() -> SnowflakeIdGenerator.forNode(SnowflakeIdGenerator.MAX_NODE_ID + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
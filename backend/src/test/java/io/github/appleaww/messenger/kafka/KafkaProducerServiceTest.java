@@ -1,12 +1,149 @@
 package io.github.appleaww.messenger.kafka;
 
+import io.github.appleaww.messenger.metrics.event.UserActivityEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
 
 class KafkaProducerServiceTest {
+    @TempDir
+    Path directory;
+
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, Object> kafkaTemplate = mock(KafkaTemplate.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private KafkaProducerService kafkaProducerService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        kafkaProducerService = new KafkaProducerService(kafkaTemplate, meterRegistry);
+        ReflectionTestUtils.setField(kafkaProducerService, "bufferCapacity", 2);
+        ReflectionTestUtils.setField(kafkaProducerService, "batchSize", 10);
+        ReflectionTestUtils.setField(kafkaProducerService, "sendTimeoutMs", 1_000L);
+        ReflectionTestUtils.setField(kafkaProducerService, "spillPath", directory.resolve("spill.journal").toString());
+        ReflectionTestUtils.setField(kafkaProducerService, "spillMaxBytes", 8 + 2 * 64);
+        kafkaProducerService.open();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        kafkaProducerService.stop();
+    }
 
     @Test
     void sendMessage() {
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test buffered events are sent to the user activity topic by the sender")
+    void transfer_sendsBufferedEvents() throws InterruptedException {
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenReturn(acknowledged());
+
+        kafkaProducerService.sendUserActivity("1", "session_started");
+        kafkaProducerService.sendUserActivity("2", "session_started");
+
+        assertTrue(kafkaProducerService.transfer());
+        verify(kafkaTemplate).send(eq(KafkaProducerService.USER_ACTIVITY_TOPIC), eq("1"), any(UserActivityEvent.class));
+        verify(kafkaTemplate).send(eq(KafkaProducerService.USER_ACTIVITY_TOPIC), eq("2"), any(UserActivityEvent.class));
+        assertThat(gauge("messenger.telemetry.buffer.depth")).isZero();
+    }
+
+    @Test
+    @DisplayName("Test events Kafka rejects are spilled and replayed once it recovers")
+    void transfer_spillsAndReplays() throws InterruptedException {
+        when(kafkaTemplate.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")))
+                .thenReturn(acknowledged());
+
+        kafkaProducerService.sendUserActivity("1", "session_started");
+
+        assertFalse(kafkaProducerService.transfer());
+        assertThat(gauge("messenger.telemetry.spill.bytes")).isPositive();
+
+        assertTrue(kafkaProducerService.transfer());
+        verify(kafkaTemplate, times(2)).send(eq(KafkaProducerService.USER_ACTIVITY_TOPIC), eq("1"), any(UserActivityEvent.class));
+        assertThat(gauge("messenger.telemetry.spill.bytes")).isZero();
+    }
+
+    @Test
+    @DisplayName("Test a send that throws stops the batch and spills the rest untried")
+    void transfer_stopsOnSynchronousFailure() throws InterruptedException {
+        when(kafkaTemplate.send(anyString(), anyString(), any()))
+                .thenThrow(new IllegalStateException("metadata not available"));
+
+        kafkaProducerService.sendUserActivity("1", "session_started");
+        kafkaProducerService.sendUserActivity("2", "session_started");
+
+        assertFalse(kafkaProducerService.transfer());
+        verify(kafkaTemplate, times(1)).send(anyString(), anyString(), any());
+        assertThat(gauge("messenger.telemetry.spill.bytes"))
+                .isEqualTo(2.0 * (Integer.BYTES + KafkaProducerService.encode(
+                        new UserActivityEvent("1", "session_started", Instant.EPOCH)).length));
+    }
+
+    @Test
+    @DisplayName("Test a caller never blocks: overflow goes to the journal, then events are dropped")
+    void sendUserActivity_overflow() {
+        for (int i = 0; i < 10; i++) {
+            kafkaProducerService.sendUserActivity("user-" + i, "session_started");
+        }
+
+        assertThat(gauge("messenger.telemetry.buffer.depth")).isEqualTo(2);
+        assertThat(gauge("messenger.telemetry.spill.bytes")).isPositive();
+        assertThat(meterRegistry.counter("messenger.telemetry.dropped").count()).isPositive();
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    @DisplayName("Test a journal already held by another node leaves the service running without spilling")
+    void open_lockedJournalFallsBackToDropping() throws Exception {
+        MeterRegistry secondNodeMeters = new SimpleMeterRegistry();
+        KafkaProducerService secondNode = new KafkaProducerService(kafkaTemplate, secondNodeMeters);
+        ReflectionTestUtils.setField(secondNode, "bufferCapacity", 1);
+        ReflectionTestUtils.setField(secondNode, "batchSize", 10);
+        ReflectionTestUtils.setField(secondNode, "sendTimeoutMs", 1_000L);
+        ReflectionTestUtils.setField(secondNode, "spillPath", directory.resolve("spill.journal").toString());
+        ReflectionTestUtils.setField(secondNode, "spillMaxBytes", 8 + 2 * 64);
+
+        assertDoesNotThrow(secondNode::open);
+        secondNode.sendUserActivity("1", "session_started");
+        secondNode.sendUserActivity("2", "session_started");
+
+        assertThat(secondNodeMeters.counter("messenger.telemetry.dropped").count()).isEqualTo(1);
+        secondNode.stop();
+    }
+
+    @Test
+    @DisplayName("Test events survive the journal encoding unchanged")
+    void encode_roundTrip() {
+        UserActivityEvent event = new UserActivityEvent("42", "session_started", Instant.ofEpochSecond(1_700_000_000L, 123));
+
+        assertThat(KafkaProducerService.decode(KafkaProducerService.encode(event))).isEqualTo(event);
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+
+    private static CompletableFuture<SendResult<String, Object>> acknowledged() {
+        return CompletableFuture.completedFuture(null);
+    }
+}
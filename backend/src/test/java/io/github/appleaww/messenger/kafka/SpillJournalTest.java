@@ -0,0 +1,158 @@
+package io.github.appleaww.messenger.kafka;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+class SpillJournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Test records are read back in append order and consumed by commit")
+    void appendPeekCommit() throws IOException {
+        try (SpillJournal journal = SpillJournal.open(directory.resolve("journal"), 1024)) {
+            journal.append(bytes("first"));
+            journal.append(bytes("second"));
+            journal.append(bytes("third"));
+
+            assertThat(journal.peek(2)).extracting(SpillJournalTest::string).containsExactly("first", "second");
+
+            journal.commit(2);
+
+            assertThat(journal.peek(10)).extracting(SpillJournalTest::string).containsExactly("third");
+            journal.commit(1);
+            assertThat(journal.isEmpty()).isTrue();
+            assertThat(journal.getUsedBytes()).isZero();
+        }
+    }
+
+    @Test
+    @DisplayName("Test unconsumed records survive reopening the journal")
+    void reopen_keepsRecords() throws IOException {
+        Path path = directory.resolve("journal");
+        try (SpillJournal journal = SpillJournal.open(path, 1024)) {
+            journal.append(bytes("consumed"));
+            journal.append(bytes("kept"));
+            journal.commit(1);
+        }
+
+        try (SpillJournal journal = SpillJournal.open(path, 1024)) {
+            assertThat(journal.peek(10)).extracting(SpillJournalTest::string).containsExactly("kept");
+        }
+    }
+
+    @Test
+    @DisplayName("Test a full journal refuses the record until the reader compacts consumed space")
+    void append_fullJournal() throws IOException {
+        // header 8 bytes + 4 records of 4 + 20 bytes
+        try (SpillJournal journal = SpillJournal.open(directory.resolve("journal"), 8 + 4 * 24)) {
+            for (int i = 0; i < 4; i++) {
+                assertThat(journal.append(new byte[20])).isTrue();
+            }
+            assertThat(journal.append(new byte[20])).isFalse();
+
+            journal.commit(1);
+            assertThat(journal.append(new byte[20])).isFalse();
+
+            journal.compact();
+            assertThat(journal.append(bytes("after-compaction-20b"))).isTrue();
+
+            List<byte[]> records = journal.peek(10);
+            assertThat(records).hasSize(4);
+            assertThat(string(records.get(3))).isEqualTo("after-compaction-20b");
+        }
+    }
+
+    @Test
+    @DisplayName("Test compaction waits until the consumed space outgrows the free tail")
+    void compact_onlyWhenWorthIt() throws IOException {
+        // header 8 bytes + a 4 + 8 byte record + a 4 + 8 byte record + 20 free bytes
+        try (SpillJournal journal = SpillJournal.open(directory.resolve("journal"), 8 + 2 * 12 + 20)) {
+            journal.append(bytes("consumed"));
+            journal.append(bytes("kept-rec"));
+            journal.commit(1);
+
+            // 12 consumed bytes, 20 free ones after the last record: nothing to gain yet
+            journal.compact();
+            assertThat(journal.append(new byte[16])).isTrue();
+            assertThat(journal.append(new byte[8])).isFalse();
+
+            journal.compact();
+            assertThat(journal.append(new byte[8])).isTrue();
+            assertThat(journal.peek(1)).extracting(SpillJournalTest::string).containsExactly("kept-rec");
+        }
+    }
+
+    @Test
+    @DisplayName("Test a journal file can't be opened twice while in use")
+    void open_lockedFileIsRejected() throws IOException {
+        Path path = directory.resolve("journal");
+        try (SpillJournal journal = SpillJournal.open(path, 1024)) {
+            assertThatThrownBy(() -> SpillJournal.open(path, 1024)).isInstanceOf(IOException.class);
+        }
+        try (SpillJournal reopened = SpillJournal.open(path, 1024)) {
+            assertThat(reopened.isEmpty()).isTrue();
+        }
+    }
+
+    @Test
+    @DisplayName("Test a record with a corrupt length is discarded with everything after it")
+    void peek_corruptLengthTruncates() throws IOException {
+        Path path = directory.resolve("journal");
+        try (SpillJournal journal = SpillJournal.open(path, 1024)) {
+            journal.append(bytes("intact"));
+            journal.append(bytes("corrupt"));
+            journal.append(bytes("after"));
+        }
+        // second record starts after the header (8) and the first one (4 + 6)
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 1_000_000), 18);
+        }
+
+        try (SpillJournal journal = SpillJournal.open(path, 1024)) {
+            assertThat(journal.peek(10)).extracting(SpillJournalTest::string).containsExactly("intact");
+            assertThat(journal.getUsedBytes()).isEqualTo(Integer.BYTES + 6);
+
+            journal.commit(1);
+            assertThat(journal.isEmpty()).isTrue();
+            assertThat(journal.append(bytes("next"))).isTrue();
+            assertThat(journal.peek(10)).extracting(SpillJournalTest::string).containsExactly("next");
+        }
+    }
+
+    @Test
+    @DisplayName("Test a corrupt first record leaves the journal empty instead of failing every read")
+    void peek_corruptFirstRecordEmpties() throws IOException {
+        Path path = directory.resolve("journal");
+        try (SpillJournal journal = SpillJournal.open(path, 1024)) {
+            journal.append(bytes("corrupt"));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, -5), 8);
+        }
+
+        try (SpillJournal journal = SpillJournal.open(path, 1024)) {
+            assertThat(journal.peek(10)).isEmpty();
+            assertThat(journal.isEmpty()).isTrue();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.appleaww.messenger.kafka;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.presence.PresenceRegistry;
+import io.github.appleaww.messenger.service.ChatMembershipIndex;
+import io.github.appleaww.messenger.websocket.MessageFanoutService;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.kafka.autoconfigure.KafkaProperties;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Two nodes sharing an embedded broker: a frame for a user connected only to node B,
+ * sent on node A, has to reach node B's local broker.
+ */
+@EmbeddedKafka(partitions = 2, topics = "user-deliveries")
+class UserDeliveryFanoutTest {
+
+    @Test
+    @DisplayName("Test fan-out: frame for a user connected to another node is delivered there through Kafka")
+    void sendToUser_deliveredByRemoteNode(EmbeddedKafkaBroker broker) throws InterruptedException {
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        kafkaProperties.setBootstrapServers(List.of(broker.getBrokersAsString()));
+
+        KafkaProducerConfig producerConfig = new KafkaProducerConfig(kafkaProperties);
+        KafkaTemplate<String, Object> kafkaTemplate = new KafkaTemplate<>(producerConfig.producerFactory());
+
+        SimpMessagingTemplate nodeAMessaging = mock(SimpMessagingTemplate.class);
+        MessageFanoutService nodeA = node(nodeAMessaging, mock(SimpUserRegistry.class), kafkaTemplate, 1);
+
+        SimpMessagingTemplate nodeBMessaging = mock(SimpMessagingTemplate.class);
+        SimpUserRegistry nodeBRegistry = mock(SimpUserRegistry.class);
+        when(nodeBRegistry.getUser("42")).thenReturn(mock(SimpUser.class));
+        MessageFanoutService nodeB = node(nodeBMessaging, nodeBRegistry, kafkaTemplate, 2);
+
+        ConcurrentMessageListenerContainer<String, UserDelivery> container =
+                nodeBListener(kafkaProperties, nodeB, mock(ChatMembershipIndex.class));
+        try {
+            ContainerTestUtils.waitForAssignment(container, 2);
+
+            nodeA.sendToUser(42L, "/queue/chat-messages", Map.of("content", "hello"));
+
+            verify(nodeBMessaging, timeout(10_000)).convertAndSendToUser(
+                    eq("42"), eq("/queue/chat-messages"), argThat((Object payload) ->
+                            payload instanceof Map<?, ?> map && "hello".equals(map.get("content"))));
+            verifyNoInteractions(nodeAMessaging);
+        } finally {
+            container.stop();
+            nodeA.stop();
+            nodeB.stop();
+            kafkaTemplate.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Test fan-out: a chat deleted on one node is evicted from the membership index of the others")
+    void broadcastMembershipInvalidation_evictsOnRemoteNode(EmbeddedKafkaBroker broker) throws InterruptedException {
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        kafkaProperties.setBootstrapServers(List.of(broker.getBrokersAsString()));
+
+        KafkaProducerConfig producerConfig = new KafkaProducerConfig(kafkaProperties);
+        KafkaTemplate<String, Object> kafkaTemplate = new KafkaTemplate<>(producerConfig.producerFactory());
+
+        MessageFanoutService nodeA = node(mock(SimpMessagingTemplate.class), mock(SimpUserRegistry.class), kafkaTemplate, 1);
+        SimpMessagingTemplate nodeBMessaging = mock(SimpMessagingTemplate.class);
+        MessageFanoutService nodeB = node(nodeBMessaging, mock(SimpUserRegistry.class), kafkaTemplate, 2);
+        ChatMembershipIndex nodeBIndex = mock(ChatMembershipIndex.class);
+
+        ConcurrentMessageListenerContainer<String, UserDelivery> container = nodeBListener(kafkaProperties, nodeB, nodeBIndex);
+        try {
+            ContainerTestUtils.waitForAssignment(container, 2);
+
+            nodeA.broadcastMembershipInvalidation(7L);
+
+            verify(nodeBIndex, timeout(10_000)).evict(7L);
+            verifyNoInteractions(nodeBMessaging);
+        } finally {
+            container.stop();
+            nodeA.stop();
+            nodeB.stop();
+            kafkaTemplate.destroy();
+        }
+    }
+
+    private MessageFanoutService node(SimpMessagingTemplate messagingTemplate,
+                                      SimpUserRegistry simpUserRegistry,
+                                      KafkaTemplate<String, Object> kafkaTemplate,
+                                      int nodeId) {
+        MessageFanoutService messageFanoutService = new MessageFanoutService(messagingTemplate, simpUserRegistry, kafkaTemplate,
+                JsonMapper.builder().build(), mock(PresenceRegistry.class), mock(MetricsService.class));
+        ReflectionTestUtils.setField(messageFanoutService, "clusterEnabled", true);
+        ReflectionTestUtils.setField(messageFanoutService, "topic", "user-deliveries");
+        ReflectionTestUtils.setField(messageFanoutService, "nodeId", nodeId);
+        ReflectionTestUtils.setField(messageFanoutService, "publishQueueCapacity", 100);
+        messageFanoutService.start();
+        return messageFanoutService;
+    }
+
+    private ConcurrentMessageListenerContainer<String, UserDelivery> nodeBListener(KafkaProperties kafkaProperties,
+                                                                                  MessageFanoutService nodeB,
+                                                                                  ChatMembershipIndex nodeBIndex) {
+        KafkaFanoutConfig fanoutConfig = new KafkaFanoutConfig(kafkaProperties);
+        ReflectionTestUtils.setField(fanoutConfig, "topic", "user-deliveries");
+
+        var factory = fanoutConfig.userDeliveryListenerContainerFactory();
+        // the record may be produced before the fresh group has resolved its "latest" position
+        ((DefaultKafkaConsumerFactory<String, UserDelivery>) factory.getConsumerFactory())
+                .updateConfigs(Map.of(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest"));
+
+        ConcurrentMessageListenerContainer<String, UserDelivery> container = factory.createContainer("user-deliveries");
+        container.getContainerProperties().setGroupId("messenger-fanout-2");
+        UserDeliveryListener listener = new UserDeliveryListener(nodeB, nodeBIndex);
+        ReflectionTestUtils.setField(listener, "nodeId", 2);
+        container.getContainerProperties().setMessageListener(
+                (MessageListener<String, UserDelivery>) (ConsumerRecord<String, UserDelivery> record) ->
+                        listener.onDelivery(record.value()));
+        container.start();
+        return container;
+    }
+}
@@ -0,0 +1,187 @@
+package io.github.appleaww.messenger.presence;
+
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Two registries with different node ids sharing one database, as two application nodes would.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class JdbcPresenceRegistryTest {
+    @Container
+    static final PostgreSQLContainer postgres = new PostgreSQLContainer("postgres:17-alpine");
+
+    static JdbcTemplate jdbcTemplate;
+    static TransactionTemplate transactionTemplate;
+
+    private JdbcPresenceRegistry nodeA;
+    private JdbcPresenceRegistry nodeB;
+
+    @BeforeAll
+    static void migrate() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog("classpath:db/changelog/db.changelog-master.yaml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM presence_sessions");
+        jdbcTemplate.update("DELETE FROM presence_nodes");
+        nodeA = node(1);
+        nodeB = node(2);
+    }
+
+    @Test
+    @DisplayName("Test user is online cluster-wide until their last session on any node closes")
+    void sessions_countedAcrossNodes() {
+        assertThat(nodeA.sessionOpened(10L)).isTrue();
+        nodeA.heartbeat();
+        nodeB.refreshNearCache();
+        assertThat(nodeB.sessionOpened(10L)).isFalse();
+        assertThat(nodeB.isOnline(10L)).isTrue();
+        assertThat(nodeB.isOnlineOnOtherNode(10L)).isTrue();
+
+        nodeB.heartbeat();
+        nodeA.refreshNearCache();
+        assertThat(nodeA.sessionClosed(10L)).isFalse();
+        assertThat(nodeB.sessionClosed(10L)).isFalse();
+
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+        nodeA.refreshNearCache();
+        assertThat(nodeA.isOnline(10L)).isFalse();
+        assertThat(nodeA.getOnlineUsers()).isEmpty();
+        // both closes saw the other node's session, so the refresh reports the user offline
+        assertThat(nodeA.drainCorrections()).containsExactly(entry(10L, false));
+        assertThat(nodeA.drainCorrections()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Test an offline reported before another node published its session is corrected")
+    void sessionClosed_staleOfflineIsCorrected() {
+        assertThat(nodeA.sessionOpened(11L)).isTrue();
+        assertThat(nodeB.sessionOpened(11L)).isTrue();
+        assertThat(nodeB.sessionClosed(11L)).isTrue();
+
+        nodeA.heartbeat();
+        nodeB.refreshNearCache();
+
+        assertThat(nodeB.isOnline(11L)).isTrue();
+        assertThat(nodeB.drainCorrections()).containsExactly(entry(11L, true));
+    }
+
+    @Test
+    @DisplayName("Test a session opened behind a node that then died is reported online again")
+    void sessionOpened_behindDeadNodeIsReasserted() {
+        nodeA.sessionOpened(12L);
+        nodeA.heartbeat();
+        nodeB.refreshNearCache();
+        assertThat(nodeB.sessionOpened(12L)).isFalse();
+
+        jdbcTemplate.update("UPDATE presence_nodes SET heartbeat_at = now() - INTERVAL '1 minute' WHERE node_id = 1");
+        assertThat(nodeB.expireDeadNodes()).isEmpty();
+        nodeB.refreshNearCache();
+
+        assertThat(nodeB.drainCorrections()).containsExactly(entry(12L, true));
+    }
+
+    @Test
+    @DisplayName("Test sessions are published by the heartbeat, a failed publish is retried by the next one")
+    void heartbeat_retriesFailedPublish() {
+        jdbcTemplate.execute("""
+                CREATE FUNCTION reject_presence() RETURNS trigger AS $$
+                BEGIN RAISE EXCEPTION 'presence rejected'; END $$ LANGUAGE plpgsql
+                """);
+        jdbcTemplate.execute("""
+                CREATE TRIGGER reject_presence BEFORE INSERT ON presence_sessions
+                FOR EACH ROW WHEN (NEW.user_id = 40) EXECUTE FUNCTION reject_presence()
+                """);
+        try {
+            assertThat(nodeA.sessionOpened(40L)).isTrue();
+            assertThatThrownBy(nodeA::heartbeat).isInstanceOf(RuntimeException.class);
+        } finally {
+            jdbcTemplate.execute("DROP TRIGGER reject_presence ON presence_sessions");
+            jdbcTemplate.execute("DROP FUNCTION reject_presence()");
+        }
+
+        nodeA.heartbeat();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT session_count FROM presence_sessions WHERE node_id = 1 AND user_id = 40", Integer.class))
+                .isEqualTo(1);
+
+        nodeA.sessionClosed(40L);
+        nodeA.heartbeat();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM presence_sessions WHERE user_id = 40", Integer.class))
+                .isZero();
+    }
+
+    @Test
+    @DisplayName("Test sessions of a node that stopped heartbeating expire and are reported once")
+    void expireDeadNodes_dropsGhostSessions() {
+        nodeA.sessionOpened(20L);
+        nodeA.sessionOpened(21L);
+        nodeB.sessionOpened(21L);
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+
+        jdbcTemplate.update("UPDATE presence_nodes SET heartbeat_at = now() - INTERVAL '1 minute' WHERE node_id = 1");
+
+        assertThat(nodeB.expireDeadNodes()).containsExactly(20L);
+        assertThat(nodeB.expireDeadNodes()).isEmpty();
+
+        nodeB.refreshNearCache();
+        assertThat(nodeB.getOnlineUsers()).containsExactly(21L);
+    }
+
+    @Test
+    @DisplayName("Test a node taken for dead republishes its sessions on the next heartbeat")
+    void heartbeat_republishesAfterExpiry() {
+        nodeA.sessionOpened(30L);
+        nodeA.sessionOpened(30L);
+        nodeA.heartbeat();
+
+        jdbcTemplate.update("UPDATE presence_nodes SET heartbeat_at = now() - INTERVAL '1 minute' WHERE node_id = 1");
+        nodeB.expireDeadNodes();
+        nodeA.heartbeat();
+
+        nodeB.refreshNearCache();
+        assertThat(nodeB.isOnline(30L)).isTrue();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT session_count FROM presence_sessions WHERE node_id = 1 AND user_id = 30", Integer.class))
+                .isEqualTo(2);
+    }
+
+    private JdbcPresenceRegistry node(int nodeId) {
+        JdbcPresenceRegistry registry = new JdbcPresenceRegistry(jdbcTemplate, transactionTemplate);
+        ReflectionTestUtils.setField(registry, "nodeId", nodeId);
+        ReflectionTestUtils.setField(registry, "nodeTtlMs", 15_000L);
+        ReflectionTestUtils.setField(registry, "heartbeatIntervalMs", 5_000L);
+        ReflectionTestUtils.setField(registry, "nearCacheRefreshMs", 1_000L);
+        registry.registerNode();
+        return registry;
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.appleaww.messenger.presence;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+class PresenceBitmapTest {
+
+    @Test
+    @DisplayName("Test membership follows adds and removes, including ids above the int range")
+    void addRemoveContains() {
+        PresenceBitmap bitmap = new PresenceBitmap();
+        long largeId = Integer.MAX_VALUE + 10L;
+
+        bitmap.add(1L);
+        bitmap.add(largeId);
+        bitmap.remove(1L);
+
+        assertThat(bitmap.contains(1L)).isFalse();
+        assertThat(bitmap.contains(largeId)).isTrue();
+        assertThat(bitmap.cardinality()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Test filter returns only the online ids of the batch")
+    void filter() {
+        PresenceBitmap bitmap = new PresenceBitmap();
+        bitmap.add(2L);
+        bitmap.add(4L);
+
+        assertThat(bitmap.filter(List.of(1L, 2L, 3L, 4L))).containsExactlyInAnyOrder(2L, 4L);
+    }
+
+    @Test
+    @DisplayName("Test a million dense ids stay compact after replacing the snapshot")
+    void replace_compactsDenseIds() {
+        Roaring64Bitmap snapshot = new Roaring64Bitmap();
+        snapshot.addRange(1L, 1_000_001L);
+
+        PresenceBitmap bitmap = new PresenceBitmap();
+        bitmap.add(5_000_000L);
+        bitmap.replace(snapshot);
+
+        assertThat(bitmap.cardinality()).isEqualTo(1_000_000);
+        assertThat(bitmap.contains(999_999L)).isTrue();
+        assertThat(bitmap.contains(5_000_000L)).isFalse();
+        assertThat(snapshot.getLongSizeInBytes()).isLessThan(64 * 1024);
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.appleaww.messenger.repository;
+
+import io.github.appleaww.messenger.service.MessagePartitionMaintainer;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Runs the real migrations against Postgres and checks that the main message queries
+ * use the managed indexes and only touch the partitions they need.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class MessageQueryPlanTest {
+    @Container
+    static final PostgreSQLContainer postgres = new PostgreSQLContainer("postgres:17-alpine");
+
+    static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void migrateAndSeed() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog("classpath:db/changelog/db.changelog-master.yaml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 1; i <= 5; i++) {
+            jdbcTemplate.execute(MessagePartitionMaintainer.partitionDdl(current.minusMonths(i)));
+        }
+
+        jdbcTemplate.update("""
+                INSERT INTO users (name, username, email, password, role, is_online, is_premium)
+                SELECT 'user' || n, 'user' || n, 'user' || n || '@test.io', 'x', 'USER', false, false
+                FROM generate_series(1, 400) n
+                """);
+        jdbcTemplate.update("""
+                INSERT INTO chats (id, last_message) SELECT n, 'Send the first message!' FROM generate_series(1, 200) n
+                """);
+        // 200 chats x 150 messages spread over the last six months
+        jdbcTemplate.update("""
+                INSERT INTO messages (id, message_content, sending_time, chat_id, user_id)
+                SELECT n, 'message ' || n,
+                date_trunc('month', now()) - INTERVAL '5 months' + (n % 150) * INTERVAL '1 day' + n * INTERVAL '1 second',
+                n % 200 + 1, (n % 200) * 2 + 1 + n % 2
+                FROM generate_series(1, 30000) n
+                """);
+        // user 13 is a member of every chat, so a common term matches all of the messages
+        jdbcTemplate.update("INSERT INTO user_chats (chat_id, user_id) SELECT n, 13 FROM generate_series(1, 200) n");
+        jdbcTemplate.execute("VACUUM ANALYZE messages");
+        jdbcTemplate.execute("ANALYZE user_chats");
+    }
+
+    @Test
+    @DisplayName("Test newest page of a chat is read from the chat history index without sorting")
+    void findNewest_usesHistoryIndex() {
+        String plan = explain("""
+                SELECT * FROM messages m WHERE m.chat_id = 7
+                ORDER BY m.sending_time DESC, m.id DESC LIMIT 51
+                """);
+
+        assertThat(plan).contains("chat_id_sending_time_id_").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    @DisplayName("Test paging back from a cursor prunes the partitions newer than the cursor")
+    void findBefore_prunesNewerPartitions() {
+        YearMonth cursorMonth = YearMonth.now(ZoneOffset.UTC).minusMonths(3);
+        String cursorTime = cursorMonth.atDay(10).atStartOfDay().atOffset(ZoneOffset.UTC).toString();
+
+        String plan = explain("""
+                SELECT * FROM messages m WHERE m.chat_id = 7
+                AND m.sending_time <= '%1$s' AND (m.sending_time, m.id) < ('%1$s', 20000)
+                ORDER BY m.sending_time DESC, m.id DESC LIMIT 51
+                """.formatted(cursorTime));
+
+        assertThat(plan)
+                .contains("messages_p" + cursorMonth.toString().replace('-', '_'))
+                .doesNotContain("messages_p" + cursorMonth.plusMonths(1).toString().replace('-', '_'))
+                .doesNotContain("Seq Scan");
+    }
+
+    @Test
+    @DisplayName("Test messages passed by an advancing watermark are counted from the (chat_id, id) index including the sender")
+    void advance_countsFromCoveringIndex() {
+        String plan = explain("""
+                SELECT count(*) FROM messages m WHERE m.chat_id = 7 AND m.user_id <> 13 AND m.id > 100 AND m.id <= 20000
+                """);
+
+        assertThat(plan).contains("Index Only Scan").contains("chat_id_id_");
+    }
+
+    @Test
+    @DisplayName("Test latest message id of a chat comes from the (chat_id, id) index")
+    void advanceToLatest_usesChatIdIndex() {
+        String plan = explain("SELECT MAX(m.id) FROM messages m WHERE m.chat_id = 7");
+
+        assertThat(plan).contains("chat_id_id_").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    @DisplayName("Test message search finds candidates through the GIN index")
+    void search_usesGinIndex() {
+        String plan = explain("""
+                SELECT m.id FROM messages m
+                JOIN user_chats uc ON uc.chat_id = m.chat_id AND uc.user_id = 13
+                WHERE m.content_tsv @@ websearch_to_tsquery('simple', '12345')
+                """);
+
+        assertThat(plan).contains("content_tsv_idx").doesNotContain("Seq Scan on messages");
+    }
+
+    @Test
+    @DisplayName("Test search for a common term reads the newest matches by id instead of ranking every hit")
+    void search_commonTermRanksOnlyNewestCandidates() {
+        String plan = explain(MessageSearchRepository.SEARCH_SQL.formatted("", "")
+                .replace(":userId", "13")
+                .replace(":query", "'message'")
+                .replace(":candidates", "1000")
+                .replace(":limit", "21"));
+
+        assertThat(plan)
+                .contains("Index Scan Backward")
+                .doesNotContain("Bitmap Heap Scan on messages")
+                .doesNotContain("Seq Scan on messages");
+    }
+
+    private String explain(String sql) {
+        List<String> lines = jdbcTemplate.queryForList("EXPLAIN " + sql, String.class);
+        return String.join("\n", lines);
+    }
+}
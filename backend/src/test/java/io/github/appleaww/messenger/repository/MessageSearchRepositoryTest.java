@@ -0,0 +1,18 @@
+package io.github.appleaww.messenger.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+class MessageSearchRepositoryTest {
+
+    @Test
+    @DisplayName("Test headline markup in the message text is escaped and only the matches become tags")
+    void escapeHeadline() {
+        String headline = "<img src=x onerror=alert(1)> says \u0002hello\u0003 & bye";
+
+        assertThat(MessageSearchRepository.escapeHeadline(headline))
+                .isEqualTo("&lt;img src=x onerror=alert(1)&gt; says <b>hello</b> &amp; bye");
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.model.dto.request.RegisterRequestDTO;
+import io.github.appleaww.messenger.model.dto.response.BulkRegistrationResponseDTO;
+import io.github.appleaww.messenger.model.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkRegistrationServiceTest {
+    @Mock private JdbcTemplate jdbcTemplate;
+    @Mock private PasswordHashing passwordHashing;
+    @Mock private RegistrationIndex registrationIndex;
+    @Mock private MetricsService metricsService;
+    @Spy private AdminEmails adminEmails;
+
+    @InjectMocks private BulkRegistrationService bulkRegistrationService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(bulkRegistrationService, "batchSize", 2);
+        ReflectionTestUtils.setField(bulkRegistrationService, "maxUsers", 100);
+        ReflectionTestUtils.setField(adminEmails, "adminEmails", "root@example.com");
+    }
+
+    @Test
+    @DisplayName("Test users are hashed once and inserted in batches of the configured size")
+    void register_insertsInBatches() {
+        List<RegisterRequestDTO> requests = IntStream.range(0, 5)
+                .mapToObj(i -> new RegisterRequestDTO("user" + i, "User " + i, "password" + i, "user" + i + "@example.com"))
+                .toList();
+        when(passwordHashing.encodeAll(anyList())).thenAnswer(invocation -> invocation.<List<String>>getArgument(0).stream()
+                .map(password -> "hash-" + password).toList());
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), any(Object[].class)))
+                .thenReturn(List.of("user0", "user1"), List.of("user2", "user3"), List.of("user4"));
+
+        BulkRegistrationResponseDTO response = bulkRegistrationService.register(requests);
+
+        assertThat(response.registered()).isEqualTo(5);
+        assertThat(response.rejected()).isEmpty();
+        verify(passwordHashing, times(1)).encodeAll(anyList());
+        verify(jdbcTemplate, times(3)).queryForList(anyString(), eq(String.class), any(Object[].class));
+        verify(registrationIndex).registered("user4", "user4@example.com");
+        verify(metricsService).usersBulkRegistered(5);
+    }
+
+    @Test
+    @DisplayName("Test invalid, duplicated, taken and conflicting users are reported and not hashed")
+    void register_reportsRejected() {
+        List<RegisterRequestDTO> requests = List.of(
+                new RegisterRequestDTO("alice", "Alice", "pw", "alice@example.com"),
+                new RegisterRequestDTO("alice", "Alice 2", "pw", "alice2@example.com"),
+                new RegisterRequestDTO("bob", "Bob", "", "bob@example.com"),
+                new RegisterRequestDTO("carol", "Carol", "pw", "carol@example.com"),
+                new RegisterRequestDTO("dave", "Dave", "pw", "dave@example.com"));
+        when(registrationIndex.isUsernameTaken(anyString())).thenAnswer(invocation -> "carol".equals(invocation.getArgument(0)));
+        when(passwordHashing.encodeAll(List.of("pw", "pw"))).thenReturn(List.of("h1", "h2"));
+        // dave was registered concurrently, the insert skips him
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), any(Object[].class))).thenReturn(List.of("alice"));
+
+        BulkRegistrationResponseDTO response = bulkRegistrationService.register(requests);
+
+        assertThat(response.registered()).isEqualTo(1);
+        assertThat(response.rejected()).containsExactly(
+                "alice: duplicated in the request",
+                "bob: username, name, email and password are required",
+                "carol: username or email already taken",
+                "dave: username or email already taken");
+        verify(registrationIndex, never()).registered(eq("dave"), anyString());
+    }
+
+    @Test
+    @DisplayName("Test role in the payload is ignored and admins come only from the admin emails")
+    void register_ignoresRequestedRole() {
+        List<RegisterRequestDTO> requests = List.of(
+                new RegisterRequestDTO("mallory", "Mallory", "pw", "mallory@example.com", User.Role.ADMIN),
+                new RegisterRequestDTO("root", "Root", "pw", "root@example.com", User.Role.USER));
+        when(passwordHashing.encodeAll(anyList())).thenReturn(List.of("h1", "h2"));
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), any(Object[].class))).thenReturn(List.of("mallory", "root"));
+
+        bulkRegistrationService.register(requests);
+
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate).queryForList(anyString(), eq(String.class), args.capture());
+        // name, username, email, password, role per row
+        assertThat(args.getValue()[4]).isEqualTo("USER");
+        assertThat(args.getValue()[9]).isEqualTo("ADMIN");
+    }
+
+    @Test
+    @DisplayName("Test request over the size limit is refused")
+    void register_rejectsOversizedRequest() {
+        ReflectionTestUtils.setField(bulkRegistrationService, "maxUsers", 1);
+        List<RegisterRequestDTO> requests = List.of(
+                new RegisterRequestDTO("a", "A", "pw", "a@example.com"),
+                new RegisterRequestDTO("b", "B", "pw", "b@example.com"));
+
+        assertThatThrownBy(() -> bulkRegistrationService.register(requests)).isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(passwordHashing, jdbcTemplate);
+    }
+}
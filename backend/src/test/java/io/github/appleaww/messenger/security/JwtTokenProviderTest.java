@@ -0,0 +1,91 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.model.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.*;
+
+class JwtTokenProviderTest {
+    private static final String SECRET = "test-secret-test-secret-test-secret-test-secret-test-secret-test-secret";
+
+    private JwtTokenProvider jwtTokenProvider;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        jwtTokenProvider = provider(86_400_000L);
+
+        user = new User();
+        user.setId(42L);
+        user.setEmail("user@example.com");
+        user.setRole(User.Role.USER);
+    }
+
+    @Test
+    @DisplayName("Test a generated token verifies to the user's claims")
+    void verify_returnsClaims() {
+        String token = jwtTokenProvider.generateToken(user);
+
+        VerifiedToken verified = jwtTokenProvider.verify(token);
+
+        assertThat(verified.userId()).isEqualTo(42L);
+        assertThat(verified.role()).isEqualTo("USER");
+        assertThat(verified.email()).isEqualTo("user@example.com");
+        assertThat(jwtTokenProvider.extractId(token)).isEqualTo(42L);
+    }
+
+    @Test
+    @DisplayName("Test a repeated token is served from the verified-claims cache")
+    void verify_cachesVerifiedToken() {
+        String token = jwtTokenProvider.generateToken(user);
+
+        assertThat(jwtTokenProvider.verify(token)).isSameAs(jwtTokenProvider.verify(token));
+    }
+
+    @Test
+    @DisplayName("Test a token with a tampered signature is rejected")
+    void verify_rejectsTamperedToken() {
+        String token = jwtTokenProvider.generateToken(user);
+        // the last characters only carry base64 padding bits, so flip one at the start of the signature
+        int signatureStart = token.lastIndexOf('.') + 1;
+        char first = token.charAt(signatureStart);
+        String tampered = token.substring(0, signatureStart) + (first == 'A' ? 'B' : 'A') + token.substring(signatureStart + 1);
+
+        assertThatThrownBy(() -> jwtTokenProvider.verify(tampered))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Invalid JWT token");
+    }
+
+    @Test
+    @DisplayName("Test a token signed with another key is rejected")
+    void verify_rejectsForeignKey() {
+        JwtTokenProvider other = provider(86_400_000L);
+        ReflectionTestUtils.setField(other, "jwtAccessSignature", SECRET.replace('t', 'x'));
+        other.init();
+
+        String token = other.generateToken(user);
+
+        assertThatThrownBy(() -> jwtTokenProvider.verify(token)).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    @DisplayName("Test an expired token is rejected")
+    void verify_rejectsExpiredToken() {
+        JwtTokenProvider shortLived = provider(-1_000L);
+        String token = shortLived.generateToken(user);
+
+        assertThatThrownBy(() -> shortLived.verify(token)).isInstanceOf(RuntimeException.class);
+    }
+
+    private static JwtTokenProvider provider(long expirationMs) {
+        JwtTokenProvider provider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(provider, "jwtAccessSignature", SECRET);
+        ReflectionTestUtils.setField(provider, "jwtExpiration", expirationMs);
+        ReflectionTestUtils.setField(provider, "verifiedCacheMaxSize", 1_000L);
+        provider.init();
+        return provider;
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class PasswordHashingTest {
+    private final MetricsService metricsService = mock(MetricsService.class);
+
+    private PasswordHashing passwordHashing;
+
+    @AfterEach
+    void tearDown() {
+        passwordHashing.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test password hashed on the pool matches and a wrong one does not")
+    void encode_matches() {
+        passwordHashing = create(new BCryptPasswordEncoder(4), 1, 10);
+
+        String hash = passwordHashing.encode("secret");
+
+        assertThat(passwordHashing.matches("secret", hash)).isTrue();
+        assertThat(passwordHashing.matches("wrong", hash)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Test hashing past the pool and queue capacity is rejected")
+    void matches_rejectsWhenSaturated() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        PasswordEncoder slowEncoder = mock(PasswordEncoder.class);
+        when(slowEncoder.matches(any(), anyString())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return true;
+        });
+        passwordHashing = create(slowEncoder, 1, 1);
+
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> passwordHashing.matches("a", "hash"));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> passwordHashing.matches("b", "hash"));
+        await(() -> passwordHashing.getQueuedTasks() == 1);
+
+        assertThatThrownBy(() -> passwordHashing.matches("c", "hash")).isInstanceOf(TaskRejectedException.class);
+        verify(metricsService).passwordHashRejected();
+
+        release.countDown();
+        assertThat(running.join()).isTrue();
+        assertThat(queued.join()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Test bulk hashing returns hashes in input order")
+    void encodeAll_keepsOrder() {
+        passwordHashing = create(new BCryptPasswordEncoder(4), 1, 10);
+
+        List<String> hashes = passwordHashing.encodeAll(List.of("a", "b", "c"));
+
+        assertThat(hashes).hasSize(3);
+        assertThat(passwordHashing.matches("a", hashes.get(0))).isTrue();
+        assertThat(passwordHashing.matches("b", hashes.get(1))).isTrue();
+        assertThat(passwordHashing.matches("c", hashes.get(2))).isTrue();
+    }
+
+    @Test
+    @DisplayName("Test bulk hashing past the overall timeout is rejected and stops hashing")
+    void encodeAll_rejectsAfterTimeout() throws InterruptedException {
+        PasswordEncoder slowEncoder = mock(PasswordEncoder.class);
+        when(slowEncoder.encode(any())).thenAnswer(invocation -> {
+            Thread.sleep(50);
+            return "hash";
+        });
+        passwordHashing = create(slowEncoder, 1, 10);
+        ReflectionTestUtils.setField(passwordHashing, "bulkTimeoutMs", 100L);
+
+        assertThatThrownBy(() -> passwordHashing.encodeAll(List.of("a", "b", "c", "d", "e", "f", "g", "h", "i", "j")))
+                .isInstanceOf(TaskRejectedException.class);
+        verify(metricsService).passwordHashRejected();
+
+        Thread.sleep(200);
+        verify(slowEncoder, atMost(6)).encode(any());
+    }
+
+    private PasswordHashing create(PasswordEncoder encoder, int threads, int queueCapacity) {
+        PasswordHashing hashing = new PasswordHashing(encoder, metricsService);
+        ReflectionTestUtils.setField(hashing, "threads", threads);
+        ReflectionTestUtils.setField(hashing, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(hashing, "timeoutMs", 5_000L);
+        ReflectionTestUtils.setField(hashing, "bulkParallelism", 2);
+        ReflectionTestUtils.setField(hashing, "bulkTimeoutMs", 5_000L);
+        hashing.init();
+        return hashing;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,159 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.model.entity.RefreshToken;
+import io.github.appleaww.messenger.repository.RefreshTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshTokenServiceTest {
+    @Mock private RefreshTokenRepository refreshTokenRepository;
+    @Mock private MetricsService metricsService;
+
+    @InjectMocks private RefreshTokenService refreshTokenService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(refreshTokenService, "ttlDays", 30L);
+        ReflectionTestUtils.setField(refreshTokenService, "graceMs", 10_000L);
+        refreshTokenService.init();
+    }
+
+    @Test
+    @DisplayName("Test issued token is stored only as its hash in a new family")
+    void issue_storesHash() {
+        String token = refreshTokenService.issue(1L);
+
+        ArgumentCaptor<RefreshToken> captor = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).save(captor.capture());
+        RefreshToken stored = captor.getValue();
+
+        assertThat(stored.getTokenHash()).isEqualTo(RefreshTokenService.hash(token)).isNotEqualTo(token);
+        assertThat(stored.getUserId()).isEqualTo(1L);
+        assertThat(stored.getFamilyId()).isNotNull();
+        assertThat(stored.getUsedAt()).isNull();
+        assertThat(stored.getExpiresAt()).isAfter(Instant.now());
+    }
+
+    @Test
+    @DisplayName("Test rotation spends the token and issues a successor in the same family")
+    void rotate_issuesSuccessor() {
+        UUID familyId = UUID.randomUUID();
+        String hash = RefreshTokenService.hash("token");
+        when(refreshTokenRepository.findById(hash)).thenReturn(Optional.of(stored(hash, familyId, null)));
+        when(refreshTokenRepository.markUsed(eq(hash), any())).thenReturn(1);
+
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate("token");
+
+        ArgumentCaptor<RefreshToken> captor = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).save(captor.capture());
+        assertThat(rotation.userId()).isEqualTo(1L);
+        assertThat(rotation.refreshToken()).isNotEqualTo("token");
+        assertThat(captor.getValue().getFamilyId()).isEqualTo(familyId);
+        assertThat(captor.getValue().getTokenHash()).isEqualTo(RefreshTokenService.hash(rotation.refreshToken()));
+        verify(metricsService).tokenRefreshed();
+    }
+
+    @Test
+    @DisplayName("Test presenting a spent token revokes the whole family")
+    void rotate_reuseRevokesFamily() {
+        UUID familyId = UUID.randomUUID();
+        String hash = RefreshTokenService.hash("token");
+        when(refreshTokenRepository.findById(hash)).thenReturn(Optional.of(stored(hash, familyId, Instant.now())));
+
+        assertThatThrownBy(() -> refreshTokenService.rotate("token"))
+                .isInstanceOf(BadCredentialsException.class);
+
+        verify(refreshTokenRepository).deleteFamily(familyId);
+        verify(refreshTokenRepository, never()).save(any());
+        verify(metricsService).refreshTokenReused();
+    }
+
+    @Test
+    @DisplayName("Test losing a concurrent rotation counts as reuse")
+    void rotate_concurrentReuseRevokesFamily() {
+        UUID familyId = UUID.randomUUID();
+        String hash = RefreshTokenService.hash("token");
+        when(refreshTokenRepository.findById(hash)).thenReturn(Optional.of(stored(hash, familyId, null)));
+        when(refreshTokenRepository.markUsed(eq(hash), any())).thenReturn(0);
+
+        assertThatThrownBy(() -> refreshTokenService.rotate("token"))
+                .isInstanceOf(BadCredentialsException.class);
+
+        verify(refreshTokenRepository).deleteFamily(familyId);
+    }
+
+    @Test
+    @DisplayName("Test repeating a just rotated token within the grace window returns the same successor")
+    void rotate_repeatWithinGraceReturnsSameSuccessor() {
+        UUID familyId = UUID.randomUUID();
+        String hash = RefreshTokenService.hash("token");
+        when(refreshTokenRepository.findById(hash)).thenReturn(
+                Optional.of(stored(hash, familyId, null)), Optional.of(stored(hash, familyId, Instant.now())));
+        when(refreshTokenRepository.markUsed(eq(hash), any())).thenReturn(1);
+
+        RefreshTokenService.Rotation first = refreshTokenService.rotate("token");
+        RefreshTokenService.Rotation repeated = refreshTokenService.rotate("token");
+
+        assertThat(repeated).isEqualTo(first);
+        verify(refreshTokenRepository, times(1)).save(any());
+        verify(refreshTokenRepository, never()).deleteFamily(any());
+        verify(metricsService, never()).refreshTokenReused();
+    }
+
+    @Test
+    @DisplayName("Test repeating a rotated token after the grace window revokes the family")
+    void rotate_repeatAfterGraceRevokesFamily() {
+        ReflectionTestUtils.setField(refreshTokenService, "graceMs", 0L);
+        refreshTokenService.init();
+        UUID familyId = UUID.randomUUID();
+        String hash = RefreshTokenService.hash("token");
+        when(refreshTokenRepository.findById(hash)).thenReturn(
+                Optional.of(stored(hash, familyId, null)), Optional.of(stored(hash, familyId, Instant.now())));
+        when(refreshTokenRepository.markUsed(eq(hash), any())).thenReturn(1);
+
+        refreshTokenService.rotate("token");
+
+        assertThatThrownBy(() -> refreshTokenService.rotate("token"))
+                .isInstanceOf(BadCredentialsException.class);
+        verify(refreshTokenRepository).deleteFamily(familyId);
+    }
+
+    @Test
+    @DisplayName("Test unknown and expired tokens are rejected without revoking anything")
+    void rotate_rejectsUnknownAndExpired() {
+        String expiredHash = RefreshTokenService.hash("expired");
+        when(refreshTokenRepository.findById(anyString())).thenReturn(Optional.empty());
+        when(refreshTokenRepository.findById(expiredHash)).thenReturn(Optional.of(
+                new RefreshToken(expiredHash, UUID.randomUUID(), 1L, Instant.now().minusSeconds(1), null)));
+
+        assertThatThrownBy(() -> refreshTokenService.rotate("unknown")).isInstanceOf(BadCredentialsException.class);
+        assertThatThrownBy(() -> refreshTokenService.rotate("expired")).isInstanceOf(BadCredentialsException.class);
+
+        verify(refreshTokenRepository, never()).deleteFamily(any());
+        verify(refreshTokenRepository, never()).markUsed(anyString(), any());
+    }
+
+    private static RefreshToken stored(String hash, UUID familyId, Instant usedAt) {
+        return new RefreshToken(hash, familyId, 1L, Instant.now().plusSeconds(3600), usedAt);
+    }
+}
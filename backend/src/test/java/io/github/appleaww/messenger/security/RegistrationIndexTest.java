@@ -0,0 +1,98 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RegistrationIndexTest {
+    @Mock private UserRepository userRepository;
+    @Mock private JdbcTemplate jdbcTemplate;
+    @Mock private TransactionTemplate transactionTemplate;
+    @Mock private MetricsService metricsService;
+
+    @InjectMocks private RegistrationIndex registrationIndex;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(registrationIndex, "expectedUsers", 1_000L);
+        ReflectionTestUtils.setField(registrationIndex, "falsePositiveRate", 0.01);
+    }
+
+    @Test
+    @DisplayName("Test checks go to the database until the index is built")
+    void isUsernameTaken_beforeRebuild() {
+        when(userRepository.existsByUsername("alice")).thenReturn(true);
+
+        assertThat(registrationIndex.isReady()).isFalse();
+        assertThat(registrationIndex.isUsernameTaken("alice")).isTrue();
+
+        verify(metricsService).availabilityChecked("database");
+    }
+
+    @Test
+    @DisplayName("Test free names are answered by the filter and taken ones confirmed in the database")
+    void isTaken_afterRebuild() throws Exception {
+        rebuildWith("alice", "alice@example.com");
+        when(userRepository.existsByUsername("alice")).thenReturn(true);
+
+        assertThat(registrationIndex.isReady()).isTrue();
+        assertThat(registrationIndex.isUsernameTaken("bob")).isFalse();
+        assertThat(registrationIndex.isEmailTaken("bob@example.com")).isFalse();
+        assertThat(registrationIndex.isUsernameTaken("alice")).isTrue();
+
+        verify(userRepository, never()).existsByUsername("bob");
+        verify(userRepository, never()).existsByEmail(any());
+        verify(metricsService, times(2)).availabilityChecked("filter");
+    }
+
+    @Test
+    @DisplayName("Test a registration outside a transaction is added to the filters right away")
+    void registered_addsToFilters() throws Exception {
+        rebuildWith("alice", "alice@example.com");
+
+        registrationIndex.registered("bob", "bob@example.com");
+        registrationIndex.isUsernameTaken("bob");
+        registrationIndex.isEmailTaken("bob@example.com");
+
+        verify(userRepository).existsByUsername("bob");
+        verify(userRepository).existsByEmail("bob@example.com");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rebuildWith(String username, String email) throws Exception {
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getString(1)).thenReturn(username);
+        when(resultSet.getString(2)).thenReturn(email);
+        when(userRepository.count()).thenReturn(1L);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any(Consumer.class));
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(resultSet);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        registrationIndex.rebuild();
+    }
+}
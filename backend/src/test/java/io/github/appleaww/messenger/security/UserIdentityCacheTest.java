@@ -0,0 +1,83 @@
+package io.github.appleaww.messenger.security;
+
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserIdentityCacheTest {
+    private static final UserIdentity IDENTITY = new UserIdentity(1L, "alice", "Alice", User.Role.USER, false);
+
+    @Mock private UserRepository userRepository;
+    @Mock private MetricsService metricsService;
+
+    @InjectMocks private UserIdentityCache userIdentityCache;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(userIdentityCache, "maxSize", 100L);
+        ReflectionTestUtils.setField(userIdentityCache, "ttlSeconds", 300L);
+        userIdentityCache.init();
+    }
+
+    @Test
+    @DisplayName("Test identity is loaded once and then served from the cache")
+    void get_cachesIdentity() {
+        when(userRepository.findIdentityById(1L)).thenReturn(Optional.of(IDENTITY));
+
+        assertThat(userIdentityCache.get(1L)).contains(IDENTITY);
+        assertThat(userIdentityCache.get(1L)).contains(IDENTITY);
+
+        verify(userRepository, times(1)).findIdentityById(1L);
+        verify(metricsService).identityCacheConfigured(any());
+    }
+
+    @Test
+    @DisplayName("Test unknown user is not cached")
+    void get_unknownUser() {
+        when(userRepository.findIdentityById(2L)).thenReturn(Optional.empty());
+
+        assertThat(userIdentityCache.get(2L)).isEmpty();
+        assertThat(userIdentityCache.get(2L)).isEmpty();
+
+        verify(userRepository, times(2)).findIdentityById(2L);
+    }
+
+    @Test
+    @DisplayName("Test invalidated identity is reloaded from the database")
+    void invalidate_reloadsIdentity() {
+        UserIdentity premium = new UserIdentity(1L, "alice", "Alice", User.Role.USER, true);
+        when(userRepository.findIdentityById(1L)).thenReturn(Optional.of(IDENTITY), Optional.of(premium));
+
+        userIdentityCache.get(1L);
+        userIdentityCache.invalidate(1L);
+
+        assertThat(userIdentityCache.get(1L)).contains(premium);
+    }
+
+    @Test
+    @DisplayName("Test identity becomes a detached principal with the cached fields")
+    void toUser_copiesFields() {
+        User user = IDENTITY.toUser();
+
+        assertThat(user.getId()).isEqualTo(1L);
+        assertThat(user.getUsername()).isEqualTo("alice");
+        assertThat(user.getName()).isEqualTo("Alice");
+        assertThat(user.getRole()).isEqualTo(User.Role.USER);
+        assertThat(user.getIsPremium()).isFalse();
+    }
+}
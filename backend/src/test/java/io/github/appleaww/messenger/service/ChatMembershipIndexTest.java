@@ -0,0 +1,102 @@
+package io.github.appleaww.messenger.service;
+
+import io.github.appleaww.messenger.repository.ChatRepository;
+import io.github.appleaww.messenger.websocket.MessageFanoutService;
+import jakarta.persistence.EntityNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatMembershipIndexTest {
+    @Mock private ChatRepository chatRepository;
+    @Mock private MessageFanoutService messageFanoutService;
+
+    @InjectMocks private ChatMembershipIndex chatMembershipIndex;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(chatMembershipIndex, "maxSize", 100L);
+        ReflectionTestUtils.setField(chatMembershipIndex, "expireAfterWriteSeconds", 30L);
+        chatMembershipIndex.init();
+    }
+
+    @Test
+    @DisplayName("Test recipient lookup loads participants once and then serves them from the index")
+    void findRecipientId_cachesParticipants() {
+        Long chatId = 10L;
+
+        when(chatRepository.findParticipantIdsByChatId(chatId)).thenReturn(List.of(1L, 2L));
+
+        assertThat(chatMembershipIndex.findRecipientId(chatId, 1L)).isEqualTo(2L);
+        assertThat(chatMembershipIndex.findRecipientId(chatId, 2L)).isEqualTo(1L);
+
+        verify(chatRepository, times(1)).findParticipantIdsByChatId(chatId);
+    }
+
+    @Test
+    @DisplayName("Test chat filled on creation never touches the database")
+    void put_fillsIndex() {
+        chatMembershipIndex.put(10L, List.of(1L, 2L));
+
+        assertThat(chatMembershipIndex.findRecipientId(10L, 1L)).isEqualTo(2L);
+
+        verifyNoInteractions(chatRepository);
+    }
+
+    @Test
+    @DisplayName("Test invalidated chat is reloaded from the database")
+    void invalidate_removesChat() {
+        chatMembershipIndex.put(10L, List.of(1L, 2L));
+        chatMembershipIndex.invalidate(10L);
+
+        when(chatRepository.findParticipantIdsByChatId(10L)).thenReturn(List.of());
+
+        assertThatThrownBy(() -> chatMembershipIndex.findRecipientId(10L, 1L))
+                .isInstanceOf(EntityNotFoundException.class)
+                .hasMessage("Chat not found with id 10");
+        verify(messageFanoutService).broadcastMembershipInvalidation(10L);
+    }
+
+    @Test
+    @DisplayName("Test chat evicted on behalf of another node is reloaded without broadcasting again")
+    void evict_removesChatLocally() {
+        chatMembershipIndex.put(10L, List.of(1L, 2L));
+        chatMembershipIndex.evict(10L);
+
+        when(chatRepository.findParticipantIdsByChatId(10L)).thenReturn(List.of(1L, 3L));
+
+        assertThat(chatMembershipIndex.findRecipientId(10L, 1L)).isEqualTo(3L);
+        verifyNoInteractions(messageFanoutService);
+    }
+
+    @Test
+    @DisplayName("Test recipient lookup: throws IllegalArgumentException when user not in chat")
+    void findRecipientId_userNotInChat() {
+        chatMembershipIndex.put(10L, List.of(1L, 2L));
+
+        assertThatThrownBy(() -> chatMembershipIndex.findRecipientId(10L, 3L))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("does not contain user with id 3");
+    }
+
+    @Test
+    @DisplayName("Test recipient lookup: throws EntityNotFoundException when no recipient in chat")
+    void findRecipientId_noRecipient() {
+        chatMembershipIndex.put(10L, List.of(1L));
+
+        assertThatThrownBy(() -> chatMembershipIndex.findRecipientId(10L, 1L))
+                .isInstanceOf(EntityNotFoundException.class)
+                .hasMessageContaining("Recipient not found");
+    }
+}
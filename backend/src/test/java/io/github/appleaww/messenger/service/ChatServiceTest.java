@@ -1,16 +1,28 @@
 package io.github.appleaww.messenger.service;
 
 import io.github.appleaww.messenger.mapper.ChatMapper;
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.model.dto.ChatDetailDTO;
 import io.github.appleaww.messenger.model.dto.ChatListItemDTO;
+import io.github.appleaww.messenger.model.dto.MessageCursor;
+import io.github.appleaww.messenger.model.dto.MessageDTO;
+import io.github.appleaww.messenger.model.dto.MessagePageDTO;
 import io.github.appleaww.messenger.model.dto.ParticipantDTO;
 import io.github.appleaww.messenger.model.dto.request.ChatCreateRequestDTO;
 import io.github.appleaww.messenger.model.dto.response.ChatCreateResponseDTO;
 import io.github.appleaww.messenger.model.entity.Chat;
+import io.github.appleaww.messenger.model.entity.DirectChat;
 import io.github.appleaww.messenger.model.entity.Message;
 import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.model.entity.UserChatState;
+import io.github.appleaww.messenger.repository.ChatReadWatermarkRepository;
 import io.github.appleaww.messenger.repository.ChatRepository;
+import io.github.appleaww.messenger.repository.DirectChatRepository;
+import io.github.appleaww.messenger.repository.MessageRepository;
+import io.github.appleaww.messenger.repository.UserChatStateRepository;
 import io.github.appleaww.messenger.repository.UserRepository;
 import jakarta.persistence.EntityNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -18,9 +30,10 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.Instant;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -33,9 +46,22 @@ import static org.mockito.Mockito.*;
 class ChatServiceTest {
     @Mock private UserRepository userRepository;
     @Mock private ChatRepository chatRepository;
+    @Mock private DirectChatRepository directChatRepository;
+    @Mock private ChatReadWatermarkRepository chatReadWatermarkRepository;
     @Mock private ChatMapper chatMapper;
+    @Mock private MetricsService metricsService;
+    @Mock private ChatMembershipIndex chatMembershipIndex;
+    @Mock private MessageRepository messageRepository;
+    @Mock private UserChatStateRepository userChatStateRepository;
     @Spy @InjectMocks private ChatService chatService;
 
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(chatService, "defaultPageSize", 50);
+        ReflectionTestUtils.setField(chatService, "maxPageSize", 200);
+        ReflectionTestUtils.setField(chatService, "chatListPageSize", 50);
+        ReflectionTestUtils.setField(chatService, "chatListMaxPageSize", 200);
+    }
 
     @Test
     @DisplayName("Test successful chat creation")
@@ -59,8 +85,9 @@ class ChatServiceTest {
         initiator.setUsername(initiatorUsername);
 
         when(userRepository.findByUsername(companionUsername)).thenReturn(Optional.of(companion));
-        when(chatRepository.findExistingChatBetweenUserIds(eq(initiatorId),eq(companionId))).thenReturn(Optional.empty());
-        when(chatRepository.save(any(Chat.class))).thenAnswer(invocation -> {
+        when(directChatRepository.existsById(new DirectChat.Key(initiatorId, companionId))).thenReturn(false);
+        when(directChatRepository.claim(initiatorId, companionId, chatId)).thenReturn(1);
+        when(chatRepository.saveAndFlush(any(Chat.class))).thenAnswer(invocation -> {
             Chat chat = invocation.getArgument(0);
             chat.setId(chatId);
             return chat;
@@ -91,8 +118,15 @@ class ChatServiceTest {
                     );
                 });
         verify(userRepository).findByUsername(companionUsername);
-        verify(chatRepository).findExistingChatBetweenUserIds(initiatorId,companionId);
-        verify(chatRepository).save(any(Chat.class));
+        verify(directChatRepository).claim(initiatorId, companionId, chatId);
+        verify(chatRepository).saveAndFlush(any(Chat.class));
+        verify(chatMembershipIndex).put(chatId, List.of(initiatorId, companionId));
+        verify(userChatStateRepository).saveAll(argThat(states -> {
+            List<UserChatState> list = (List<UserChatState>) states;
+            return list.size() == 2
+                    && list.get(0).getCompanionName().equals(companionName)
+                    && list.get(1).getCompanionName().equals(initiatorName);
+        }));
         verifyNoMoreInteractions(userRepository,chatRepository);
 
     }
@@ -165,18 +199,40 @@ class ChatServiceTest {
         ChatCreateRequestDTO dto = new ChatCreateRequestDTO(companionUsername);
 
         when(userRepository.findByUsername(companionUsername)).thenReturn(Optional.of(companion));
-        Chat existingChat = new Chat();
-        when(chatRepository.findExistingChatBetweenUserIds(eq(initiatorId), eq(companionId)))
-                .thenReturn(Optional.of(existingChat));
+        when(directChatRepository.existsById(new DirectChat.Key(initiatorId, companionId))).thenReturn(true);
 
         assertThatThrownBy(() -> chatService.createChat(dto, initiator))
                 .isInstanceOf(RuntimeException.class)
                 .hasMessage("Chat already exists");
 
         verify(userRepository).findByUsername(companionUsername);
-        verify(chatRepository).findExistingChatBetweenUserIds(eq(initiatorId), eq(companionId));
-        verifyNoInteractions(chatMapper);
-        verifyNoMoreInteractions(userRepository, chatRepository);
+        verifyNoInteractions(chatMapper, chatRepository);
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    @DisplayName("Test chat creation: concurrent create of the same pair loses on the direct chat claim")
+    void createChat_LostRace() {
+        User initiator = new User();
+        initiator.setId(5L);
+        User companion = new User();
+        companion.setId(2L);
+        companion.setUsername("qwert");
+
+        when(userRepository.findByUsername("qwert")).thenReturn(Optional.of(companion));
+        when(directChatRepository.existsById(new DirectChat.Key(2L, 5L))).thenReturn(false);
+        when(chatRepository.saveAndFlush(any(Chat.class))).thenAnswer(invocation -> {
+            Chat chat = invocation.getArgument(0);
+            chat.setId(7L);
+            return chat;
+        });
+        when(directChatRepository.claim(2L, 5L, 7L)).thenReturn(0);
+
+        assertThatThrownBy(() -> chatService.createChat(new ChatCreateRequestDTO("qwert"), initiator))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Chat already exists");
+
+        verifyNoInteractions(chatMembershipIndex, userChatStateRepository, chatMapper);
     }
 
 
@@ -222,74 +278,141 @@ class ChatServiceTest {
         User user = new User();
         user.setId(userId);
 
-        User refreshedUser = new User();
-        refreshedUser.setId(userId);
+        UserChatState chat2 = new UserChatState(new UserChatState.Key(userId, 20L),
+                3L, "Andrey", "Send the first message!", Instant.parse("2100-01-02T10:00:00Z"), 0L);
+        UserChatState chat1 = new UserChatState(new UserChatState.Key(userId, 10L),
+                2L, null, "m2", Instant.parse("2100-01-01T10:00:00Z"), 1L);
+
+        when(userChatStateRepository.findFirstPage(userId, Limit.of(50))).thenReturn(List.of(chat2, chat1));
+
+        List<ChatListItemDTO> result = chatService.getAllUserChatsWithDetails(user);
+
+        assertThat(result).containsExactly(
+                new ChatListItemDTO(20L, 3L, "Andrey", "Send the first message!", Instant.parse("2100-01-02T10:00:00Z"), 0L),
+                new ChatListItemDTO(10L, 2L, "Unknown", "m2", Instant.parse("2100-01-01T10:00:00Z"), 1L)
+        );
+
+        verifyNoInteractions(userRepository, chatRepository, messageRepository);
+    }
+
+    @Test
+    @DisplayName("Test getAllUserChatsWithDetails continues after the keyset cursor")
+    void getAllUserChatsWithDetails_nextPage() {
+        Long userId = 1L;
+        User user = new User();
+        user.setId(userId);
+        Instant beforeTime = Instant.parse("2100-01-01T10:00:00Z");
 
-        Chat chat1 = new Chat();
-        chat1.setId(10L);
-        chat1.setLastMessage("m1");
+        when(userChatStateRepository.findPageBefore(userId, beforeTime, 10L, Limit.of(200))).thenReturn(List.of());
 
-        User companion1 = new User();
-        companion1.setId(2L);
-        companion1.setName("Artem");
+        List<ChatListItemDTO> result = chatService.getAllUserChatsWithDetails(user, beforeTime, 10L, 1000);
 
-        Message lastMsg1 = new Message();
-        lastMsg1.setContent("m2");
-        lastMsg1.setSendingTime(Instant.parse("2100-01-01T10:00:00Z"));
-        lastMsg1.setRead(false);
-        lastMsg1.setSender(companion1);
+        assertThat(result).isEmpty();
+        verify(userChatStateRepository, never()).findFirstPage(any(), any());
+    }
 
-        Message readMsg1 = new Message();
-        readMsg1.setContent("m3");
-        readMsg1.setSendingTime(Instant.parse("2100-01-01T09:00:00Z"));
-        readMsg1.setRead(true);
-        readMsg1.setSender(user);
+    @Test
+    void deleteChat() {
+    }
 
-        chat1.setParticipants(Set.of(user, companion1));
-        chat1.setMessages(List.of(readMsg1, lastMsg1));
+    @Test
+    @DisplayName("Test openChat returns only the newest page with a cursor to older messages")
+    void openChat() {
+        ReflectionTestUtils.setField(chatService, "defaultPageSize", 2);
+        User user = new User();
+        user.setId(1L);
+        User companion = new User();
+        companion.setId(2L);
+        companion.setName("Alex");
+        companion.setUsername("alex");
 
-        Chat chat2 = new Chat();
-        chat2.setId(20L);
-        chat2.setLastMessage("Send the first message!");
+        Chat chat = new Chat();
+        chat.setId(10L);
+        chat.setParticipants(Set.of(user, companion));
 
-        User companion2 = new User();
-        companion2.setId(3L);
-        companion2.setName("Andrey");
+        Message newest = message(3L, user, "2100-01-01T10:02:00Z");
+        Message middle = message(2L, companion, "2100-01-01T10:01:00Z");
+        Message oldest = message(1L, user, "2100-01-01T10:00:00Z");
 
-        Message readMsg2 = new Message();
-        readMsg2.setContent(null);
-        readMsg2.setSendingTime(Instant.parse("2100-01-02T10:00:00Z"));
-        readMsg2.setRead(true);
-        readMsg2.setSender(companion2);
+        when(chatRepository.findById(10L)).thenReturn(Optional.of(chat));
+        when(chatReadWatermarkRepository.findLastReadMessageId(2L, 10L)).thenReturn(Optional.of(2L));
+        when(messageRepository.findNewest(10L, 3)).thenReturn(List.of(newest, middle, oldest));
 
-        chat2.setParticipants(Set.of(user, companion2));
-        chat2.setMessages(List.of(readMsg2));
+        ChatDetailDTO result = chatService.openChat(10L, user);
 
-        refreshedUser.setChats(Set.of(chat2, chat1));
+        assertThat(result.messages()).extracting(MessageDTO::id).containsExactly(2L, 3L);
+        assertThat(result.messages()).extracting(MessageDTO::isRead).containsExactly(true, false);
+        assertThat(MessageCursor.decode(result.olderCursor())).isEqualTo(MessageCursor.of(middle));
+        verify(userChatStateRepository).lockChat(10L);
+        verify(chatReadWatermarkRepository).advanceToLatest(1L, 10L);
+    }
 
-        when(userRepository.findWithChatsAndMessagesById(userId)).thenReturn(Optional.of(refreshedUser));
+    @Test
+    @DisplayName("Test getMessages pages backwards from a cursor")
+    void getMessages_before() {
+        User user = new User();
+        user.setId(1L);
+        User companion = new User();
+        companion.setId(2L);
 
-        List<ChatListItemDTO> result = chatService.getAllUserChatsWithDetails(user);
+        Message newer = message(5L, companion, "2100-01-01T10:05:00Z");
+        Message older = message(4L, user, "2100-01-01T10:04:00Z");
+        MessageCursor cursor = new MessageCursor(Instant.parse("2100-01-01T10:06:00Z"), 6L);
 
-        ChatListItemDTO expectedChat2 = new ChatListItemDTO(
-                20L, 3L, "Andrey", "Send the first message!", Instant.parse("2100-01-02T10:00:00Z"), 0L);
-        ChatListItemDTO expectedChat1 = new ChatListItemDTO(
-                10L, 2L, "Artem", "m2", Instant.parse("2100-01-01T10:00:00Z"), 1L);
+        when(chatMembershipIndex.findRecipientId(10L, 1L)).thenReturn(2L);
+        when(messageRepository.findBefore(10L, cursor.sendingTime(), 6L, 3)).thenReturn(List.of(newer, older));
+        when(chatReadWatermarkRepository.findLastReadMessageId(anyLong(), eq(10L))).thenReturn(Optional.empty());
 
-        assertThat(result)
-                .hasSize(2)
-                .containsExactly(expectedChat2, expectedChat1)
-                .isSortedAccordingTo(Comparator.comparing(ChatListItemDTO::lastMessageSendingTime).reversed());
+        MessagePageDTO result = chatService.getMessages(10L, user, cursor.encode(), null, null, 2);
 
-        verify(userRepository, times(1)).findWithChatsAndMessagesById(userId);
-        verifyNoMoreInteractions(userRepository);
+        assertThat(result.messages()).extracting(MessageDTO::id).containsExactly(4L, 5L);
+        assertThat(result.olderCursor()).isNull();
+        assertThat(MessageCursor.decode(result.newerCursor())).isEqualTo(MessageCursor.of(newer));
     }
 
     @Test
-    void deleteChat() {
+    @DisplayName("Test getMessages seeks to a timestamp and pages forwards")
+    void getMessages_at() {
+        User user = new User();
+        user.setId(1L);
+        Instant at = Instant.parse("2100-01-01T10:00:00Z");
+
+        Message first = message(1L, user, "2100-01-01T10:00:00Z");
+        Message second = message(2L, user, "2100-01-01T10:01:00Z");
+
+        when(chatMembershipIndex.findRecipientId(10L, 1L)).thenReturn(2L);
+        when(messageRepository.findFrom(10L, at, 2)).thenReturn(List.of(first, second));
+        when(chatReadWatermarkRepository.findLastReadMessageId(1L, 10L)).thenReturn(Optional.empty());
+        when(chatReadWatermarkRepository.findLastReadMessageId(2L, 10L)).thenReturn(Optional.of(1L));
+
+        MessagePageDTO result = chatService.getMessages(10L, user, null, null, at, 1);
+
+        assertThat(result.messages()).extracting(MessageDTO::id).containsExactly(1L);
+        assertThat(result.messages().getFirst().isRead()).isTrue();
+        assertThat(MessageCursor.decode(result.olderCursor())).isEqualTo(MessageCursor.of(first));
+        assertThat(MessageCursor.decode(result.newerCursor())).isEqualTo(MessageCursor.of(first));
     }
 
     @Test
-    void openChat() {
+    @DisplayName("Test getMessages rejects a non-participant")
+    void getMessages_notParticipant() {
+        User user = new User();
+        user.setId(1L);
+        when(chatMembershipIndex.findRecipientId(10L, 1L))
+                .thenThrow(new IllegalArgumentException("Chat with id 10 does not contain user with id 1"));
+
+        assertThatThrownBy(() -> chatService.getMessages(10L, user, null, null, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        verifyNoInteractions(messageRepository);
+    }
+
+    private Message message(Long id, User sender, String sendingTime) {
+        Message message = new Message();
+        message.setId(id);
+        message.setSender(sender);
+        message.setContent("message " + id);
+        message.setSendingTime(Instant.parse(sendingTime));
+        return message;
     }
 }
\ No newline at end of file
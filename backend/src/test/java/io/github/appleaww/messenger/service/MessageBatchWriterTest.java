@@ -0,0 +1,243 @@
+package io.github.appleaww.messenger.service;
+
+import io.github.appleaww.messenger.id.SnowflakeIdGenerator;
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.repository.ChatReadWatermarkRepository;
+import io.github.appleaww.messenger.repository.UserChatStateRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageBatchWriterTest {
+    @Mock private JdbcTemplate jdbcTemplate;
+    @Mock private TransactionTemplate transactionTemplate;
+    @Mock private MetricsService metricsService;
+    @Mock private UserChatStateRepository userChatStateRepository;
+    @Mock private ChatReadWatermarkRepository chatReadWatermarkRepository;
+
+    private MessageBatchWriter messageBatchWriter;
+
+    @BeforeEach
+    void setUp() {
+        messageBatchWriter = new MessageBatchWriter(jdbcTemplate, transactionTemplate, metricsService,
+                userChatStateRepository, chatReadWatermarkRepository, SnowflakeIdGenerator.forNode(1));
+        ReflectionTestUtils.setField(messageBatchWriter, "enabled", true);
+        ReflectionTestUtils.setField(messageBatchWriter, "batchSize", 3);
+        ReflectionTestUtils.setField(messageBatchWriter, "flushIntervalMs", 1000L);
+        ReflectionTestUtils.setField(messageBatchWriter, "queueCapacity", 10);
+        ReflectionTestUtils.setField(messageBatchWriter, "ackTimeoutMs", 5000L);
+
+        lenient().doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        messageBatchWriter.stop();
+    }
+
+    @Test
+    @DisplayName("Test full batch is flushed as one insert and every sender gets its id")
+    void write_flushesFullBatchInOneInsert() {
+        messageBatchWriter.start();
+
+        List<CompletableFuture<Long>> results = List.of(
+                CompletableFuture.supplyAsync(() -> messageBatchWriter.write(1L, 1L, "a", Instant.now()).messageId()),
+                CompletableFuture.supplyAsync(() -> messageBatchWriter.write(1L, 2L, "b", Instant.now()).messageId()),
+                CompletableFuture.supplyAsync(() -> messageBatchWriter.write(2L, 3L, "c", Instant.now()).messageId())
+        );
+
+        assertThat(results.stream().map(CompletableFuture::join).toList())
+                .doesNotHaveDuplicates()
+                .allMatch(id -> id > 0);
+
+        verify(jdbcTemplate, times(1)).update(startsWith("INSERT INTO messages (id,"), any(Object[].class));
+        verify(metricsService).messageBatchFlushed(3);
+        verify(userChatStateRepository).recordMessages(eq(1L), eq(1L), eq("a"), any(Instant.class), eq(1));
+        verify(userChatStateRepository).recordMessages(eq(1L), eq(2L), eq("b"), any(Instant.class), eq(1));
+        verify(userChatStateRepository).recordMessages(eq(2L), eq(3L), eq("c"), any(Instant.class), eq(1));
+    }
+
+    @Test
+    @DisplayName("Test chat list state is updated once per chat and sender, after late-commit watermarks are rewound")
+    void flush_groupsChatStateUpdates() {
+        Instant first = Instant.parse("2100-01-01T10:00:00Z");
+        Instant second = Instant.parse("2100-01-01T10:00:01Z");
+
+        messageBatchWriter.flush(List.of(
+                new MessageBatchWriter.PendingMessage(10L, 1L, 1L, "a", first, new CompletableFuture<>()),
+                new MessageBatchWriter.PendingMessage(11L, 1L, 1L, "b", second, new CompletableFuture<>())
+        ));
+
+        InOrder inOrder = inOrder(userChatStateRepository, chatReadWatermarkRepository, jdbcTemplate);
+        inOrder.verify(userChatStateRepository).lockChat(1L);
+        inOrder.verify(chatReadWatermarkRepository).rewindForLateMessages(1L, 1L, 10L);
+        inOrder.verify(jdbcTemplate).update(startsWith("INSERT INTO messages (id,"), any(Object[].class));
+        inOrder.verify(userChatStateRepository).recordMessages(1L, 1L, "b", second, 2);
+        verifyNoMoreInteractions(userChatStateRepository, chatReadWatermarkRepository);
+    }
+
+    @Test
+    @DisplayName("Test failed flush is reported to every sender of the batch")
+    void write_failedFlush() {
+        when(jdbcTemplate.update(anyString(), any(Object[].class)))
+                .thenThrow(new IllegalStateException("connection refused"));
+        messageBatchWriter.start();
+
+        assertThatThrownBy(() -> messageBatchWriter.write(1L, 1L, "a", Instant.now()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("connection refused");
+
+        verify(metricsService, never()).messageBatchFlushed(anyInt());
+    }
+
+    @Test
+    @DisplayName("Test slow commit is acknowledged as pending with the id the message will be saved under")
+    void write_slowCommitIsPending() {
+        ReflectionTestUtils.setField(messageBatchWriter, "ackTimeoutMs", 50L);
+        CountDownLatch commitReleased = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            commitReleased.await();
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        messageBatchWriter.start();
+
+        MessageBatchWriter.WriteResult result = messageBatchWriter.write(1L, 1L, "a", Instant.now());
+        commitReleased.countDown();
+
+        assertThat(result.pending()).isTrue();
+        assertThat(result.messageId()).isPositive();
+        assertThat(result.committed().join()).isEqualTo(result.messageId());
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, timeout(1000)).update(startsWith("INSERT INTO messages (id,"), args.capture());
+        assertThat(args.getValue()[0]).isEqualTo(result.messageId());
+    }
+
+    @Test
+    @DisplayName("Test time spent waiting for queue space counts against the ack timeout")
+    void write_queueWaitSharesAckTimeout() throws InterruptedException {
+        ReflectionTestUtils.setField(messageBatchWriter, "batchSize", 1);
+        ReflectionTestUtils.setField(messageBatchWriter, "queueCapacity", 1);
+        ReflectionTestUtils.setField(messageBatchWriter, "ackTimeoutMs", 1000L);
+        // the first commit is released after a while, every later one hangs
+        Semaphore commits = new Semaphore(0);
+        doAnswer(invocation -> {
+            commits.acquire();
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        messageBatchWriter.start();
+
+        CompletableFuture.runAsync(() -> messageBatchWriter.write(1L, 1L, "a", Instant.now()));
+        verify(transactionTemplate, timeout(1000)).executeWithoutResult(any());
+        CompletableFuture.runAsync(() -> messageBatchWriter.write(1L, 1L, "b", Instant.now()));
+        BlockingQueue<?> queue = (BlockingQueue<?>) ReflectionTestUtils.getField(messageBatchWriter, "queue");
+        while (queue.remainingCapacity() > 0) {
+            Thread.sleep(10);
+        }
+        CompletableFuture.delayedExecutor(600, TimeUnit.MILLISECONDS).execute(commits::release);
+
+        long start = System.nanoTime();
+        MessageBatchWriter.WriteResult result = messageBatchWriter.write(1L, 1L, "c", Instant.now());
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        commits.release(10);
+
+        assertThat(result.pending()).isTrue();
+        assertThat(elapsedMs).isLessThan(1400);
+    }
+
+    @Test
+    @DisplayName("Test writes are refused once the writer is stopped")
+    void write_afterStopIsRejected() throws InterruptedException {
+        messageBatchWriter.start();
+        messageBatchWriter.stop();
+
+        assertThatThrownBy(() -> messageBatchWriter.write(1L, 1L, "a", Instant.now()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("stopped");
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("Test stop fails the messages the flusher could not save in time")
+    void stop_failsUnsavedMessages() throws InterruptedException {
+        ReflectionTestUtils.setField(messageBatchWriter, "batchSize", 1);
+        ReflectionTestUtils.setField(messageBatchWriter, "ackTimeoutMs", 100L);
+        CountDownLatch commitReleased = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            commitReleased.await();
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        messageBatchWriter.start();
+
+        CompletableFuture<MessageBatchWriter.WriteResult> inFlight =
+                CompletableFuture.supplyAsync(() -> messageBatchWriter.write(1L, 1L, "a", Instant.now()));
+        verify(transactionTemplate, timeout(1000)).executeWithoutResult(any());
+        MessageBatchWriter.WriteResult queued = messageBatchWriter.write(1L, 1L, "b", Instant.now());
+
+        messageBatchWriter.stop();
+        commitReleased.countDown();
+
+        assertThat(inFlight.join().committed()).isCompletedExceptionally();
+        assertThat(queued.committed()).isCompletedExceptionally();
+    }
+
+    @Test
+    @DisplayName("Test a batch rejected for one message is retried in halves so only that message fails")
+    void flush_rejectedMessageFailsAlone() {
+        // chat 2 was deleted after its message was validated
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            // varargs are expanded: the sql comes first, then the row values
+            Object[] args = invocation.getArguments();
+            for (int i = 4; i < args.length; i += 5) {
+                if (Long.valueOf(2L).equals(args[i])) {
+                    throw new DataIntegrityViolationException("messages_chat_id_fkey");
+                }
+            }
+            return (args.length - 1) / 5;
+        });
+        List<MessageBatchWriter.PendingMessage> batch = List.of(
+                new MessageBatchWriter.PendingMessage(10L, 1L, 1L, "a", Instant.now(), new CompletableFuture<>()),
+                new MessageBatchWriter.PendingMessage(11L, 2L, 2L, "b", Instant.now(), new CompletableFuture<>()),
+                new MessageBatchWriter.PendingMessage(12L, 3L, 3L, "c", Instant.now(), new CompletableFuture<>()),
+                new MessageBatchWriter.PendingMessage(13L, 1L, 4L, "d", Instant.now(), new CompletableFuture<>())
+        );
+
+        messageBatchWriter.flush(batch);
+
+        assertThat(batch.get(0).result()).isCompletedWithValue(10L);
+        assertThat(batch.get(1).result()).isCompletedExceptionally();
+        assertThat(batch.get(2).result()).isCompletedWithValue(12L);
+        assertThat(batch.get(3).result()).isCompletedWithValue(13L);
+        verify(metricsService).messageBatchFlushed(1);
+        verify(metricsService).messageBatchFlushed(2);
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.appleaww.messenger.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessagePartitionMaintainerTest {
+    @Mock private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks private MessagePartitionMaintainer messagePartitionMaintainer;
+
+    @Test
+    @DisplayName("Test partition DDL covers exactly one UTC month")
+    void partitionDdl() {
+        assertThat(MessagePartitionMaintainer.partitionDdl(YearMonth.of(2026, 12))).isEqualTo(
+                "CREATE TABLE IF NOT EXISTS messages_p2026_12 PARTITION OF messages "
+                        + "FOR VALUES FROM ('2026-12-01T00:00Z') TO ('2027-01-01T00:00Z')");
+    }
+
+    @Test
+    @DisplayName("Test current and upcoming partitions are created and one failure doesn't stop the rest")
+    void createUpcomingPartitions() {
+        ReflectionTestUtils.setField(messagePartitionMaintainer, "monthsAhead", 2);
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        doThrow(new BadSqlGrammarException("create partition", "ddl", new SQLException("default partition")))
+                .when(jdbcTemplate).execute(MessagePartitionMaintainer.partitionDdl(current));
+
+        messagePartitionMaintainer.createUpcomingPartitions();
+
+        verify(jdbcTemplate).execute(MessagePartitionMaintainer.partitionDdl(current.plusMonths(1)));
+        verify(jdbcTemplate).execute(MessagePartitionMaintainer.partitionDdl(current.plusMonths(2)));
+        verify(jdbcTemplate, times(3)).execute(anyString());
+    }
+}
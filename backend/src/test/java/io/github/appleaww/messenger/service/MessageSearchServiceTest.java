@@ -0,0 +1,91 @@
+package io.github.appleaww.messenger.service;
+
+import io.github.appleaww.messenger.model.dto.MessageSearchHitDTO;
+import io.github.appleaww.messenger.model.dto.MessageSearchPageDTO;
+import io.github.appleaww.messenger.model.dto.SearchCursor;
+import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.repository.MessageSearchRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageSearchServiceTest {
+    @Mock private MessageSearchRepository messageSearchRepository;
+    @Mock private ChatMembershipIndex chatMembershipIndex;
+
+    @InjectMocks private MessageSearchService messageSearchService;
+
+    private final User user = new User();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(messageSearchService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(messageSearchService, "maxPageSize", 100);
+        user.setId(1L);
+    }
+
+    @Test
+    @DisplayName("Test search returns a page and a cursor positioned on its last hit")
+    void search_firstPage() {
+        List<MessageSearchHitDTO> hits = List.of(hit(30L, 0.9f), hit(20L, 0.5f), hit(10L, 0.1f));
+        when(messageSearchRepository.search(1L, "hello", null, null, 3)).thenReturn(hits);
+
+        MessageSearchPageDTO result = messageSearchService.search("  hello ", null, null, null, user);
+
+        assertThat(result.hits()).extracting(MessageSearchHitDTO::messageId).containsExactly(30L, 20L);
+        assertThat(SearchCursor.decode(result.nextCursor())).isEqualTo(new SearchCursor(0.5f, 20L));
+        verifyNoInteractions(chatMembershipIndex);
+    }
+
+    @Test
+    @DisplayName("Test search scoped to a chat checks membership and continues after the cursor")
+    void search_inChatAfterCursor() {
+        SearchCursor cursor = new SearchCursor(0.5f, 20L);
+        when(messageSearchRepository.search(1L, "hello", 7L, cursor, 3)).thenReturn(List.of(hit(10L, 0.1f)));
+
+        MessageSearchPageDTO result = messageSearchService.search("hello", 7L, cursor.encode(), null, user);
+
+        assertThat(result.hits()).hasSize(1);
+        assertThat(result.nextCursor()).isNull();
+        verify(chatMembershipIndex).findRecipientId(7L, 1L);
+    }
+
+    @Test
+    @DisplayName("Test search rejects a blank query")
+    void search_blankQuery() {
+        assertThatThrownBy(() -> messageSearchService.search(" ", null, null, null, user))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Search query must not be blank");
+
+        verifyNoInteractions(messageSearchRepository);
+    }
+
+    @Test
+    @DisplayName("Test search rejects a chat the user doesn't belong to")
+    void search_notParticipant() {
+        when(chatMembershipIndex.findRecipientId(7L, 1L))
+                .thenThrow(new IllegalArgumentException("Chat with id 7 does not contain user with id 1"));
+
+        assertThatThrownBy(() -> messageSearchService.search("hello", 7L, null, null, user))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        verify(messageSearchRepository, never()).search(any(), any(), any(), any(), anyInt());
+    }
+
+    private MessageSearchHitDTO hit(Long id, float rank) {
+        return new MessageSearchHitDTO(id, 7L, "<b>hello</b>", Instant.now(), 2L, "Alex", rank);
+    }
+}
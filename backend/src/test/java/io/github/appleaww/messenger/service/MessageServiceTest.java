@@ -1,6 +1,7 @@
 package io.github.appleaww.messenger.service;
 
-import io.github.appleaww.messenger.model.dto.TypingDTO;
+import io.github.appleaww.messenger.kafka.KafkaProducerService;
+import io.github.appleaww.messenger.metrics.MetricsService;
 import io.github.appleaww.messenger.model.dto.request.MessageCreateRequestDTO;
 import io.github.appleaww.messenger.model.dto.request.ReadReceiptRequestDTO;
 import io.github.appleaww.messenger.model.dto.response.MessageCreateResponseDTO;
@@ -8,8 +9,10 @@ import io.github.appleaww.messenger.model.dto.response.ReadReceiptResponseDTO;
 import io.github.appleaww.messenger.model.entity.Chat;
 import io.github.appleaww.messenger.model.entity.Message;
 import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.repository.ChatReadWatermarkRepository;
 import io.github.appleaww.messenger.repository.ChatRepository;
 import io.github.appleaww.messenger.repository.MessageRepository;
+import io.github.appleaww.messenger.repository.UserChatStateRepository;
 import io.github.appleaww.messenger.repository.UserRepository;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tags;
@@ -25,10 +28,8 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.Instant;
-import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.List;
-import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.*;
@@ -40,13 +41,18 @@ class MessageServiceTest {
     @Mock private MessageRepository messageRepository;
     @Mock private UserRepository userRepository;
     @Mock private ChatRepository chatRepository;
+    @Mock private ChatReadWatermarkRepository chatReadWatermarkRepository;
+    @Mock private UserChatStateRepository userChatStateRepository;
+    @Mock private KafkaProducerService kafkaProducerService;
+    @Mock private MessageBatchWriter messageBatchWriter;
+    @Mock private ChatMembershipIndex chatMembershipIndex;
     private MeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     @InjectMocks private MessageService messageService;
 
     @BeforeEach
     void setUp() {
-        ReflectionTestUtils.setField(messageService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(messageService, "metricsService", new MetricsService(meterRegistry, kafkaProducerService));
     }
 
     @Test
@@ -60,28 +66,20 @@ class MessageServiceTest {
         User sender = new User();
         sender.setId(senderId);
 
-        User recipient = new User();
-        recipient.setId(recipientId);
-
-        Set<User> participants = new HashSet<>();
-        participants.add(sender);
-        participants.add(recipient);
-
         Chat chat = new Chat();
-        chat.setParticipants(participants);
         chat.setId(chatId);
 
         MessageCreateRequestDTO dto = new MessageCreateRequestDTO(content, chatId);
 
-        when(userRepository.findById(senderId)).thenReturn(Optional.of(sender));
-        when(chatRepository.findById(chatId)).thenReturn(Optional.of(chat));
+        when(chatMembershipIndex.findRecipientId(chatId, senderId)).thenReturn(recipientId);
+        when(userRepository.getReferenceById(senderId)).thenReturn(sender);
+        when(chatRepository.getReferenceById(chatId)).thenReturn(chat);
 
         Message savedMessage = new Message();
         savedMessage.setId(3L);
         savedMessage.setSender(sender);
         savedMessage.setChat(chat);
         savedMessage.setContent(content);
-        savedMessage.setRead(false);
         savedMessage.setSendingTime(Instant.now());
 
         when(messageRepository.save(any(Message.class))).thenReturn(savedMessage);
@@ -101,13 +99,17 @@ class MessageServiceTest {
                 });
 
 
-        assertThat(meterRegistry.timer("messenger.message.send.latency", Tags.of("chatId", chatId.toString())).count()).isEqualTo(1);
-        assertThat(meterRegistry.timer("messenger.message.send.latency", Tags.of("chatId", chatId.toString())).totalTime(TimeUnit.MILLISECONDS)).isGreaterThan(0.0);
-        assertThat(meterRegistry.counter("message.message.sent.throughput").count()).isEqualTo(1.0);
+        assertThat(meterRegistry.timer("messenger.messages.send.latency", Tags.of("mode", "per_message")).count()).isEqualTo(1);
+        assertThat(meterRegistry.timer("messenger.messages.send.latency", Tags.of("mode", "per_message")).totalTime(TimeUnit.NANOSECONDS)).isGreaterThan(0.0);
+        assertThat(meterRegistry.counter("messenger.messages.sent").count()).isEqualTo(1.0);
 
-        verify(userRepository).findById(senderId);
-        verify(chatRepository).findById(chatId);
+        verify(chatMembershipIndex).findRecipientId(chatId, senderId);
         verify(messageRepository).save(any(Message.class));
+        verify(userChatStateRepository).lockChat(chatId);
+        verify(chatReadWatermarkRepository).rewindForLateMessages(chatId, senderId, savedMessage.getId());
+        verify(userChatStateRepository).recordMessages(chatId, senderId, content, savedMessage.getSendingTime(), 1);
+        verify(userRepository, never()).findById(any());
+        verify(chatRepository, never()).findById(any());
     }
 
 
@@ -121,25 +123,18 @@ class MessageServiceTest {
         User sender = new User();
         sender.setId(senderId);
 
-        Set<User> participants = new HashSet<>();
-        participants.add(sender);
-
-        Chat chat = new Chat();
-        chat.setParticipants(participants);
-        chat.setId(chatId);
-
         MessageCreateRequestDTO dto = new MessageCreateRequestDTO(content, chatId);
 
-        when(userRepository.findById(senderId)).thenReturn(Optional.of(sender));
-        when(chatRepository.findById(chatId)).thenReturn(Optional.of(chat));
+        when(chatMembershipIndex.findRecipientId(chatId, senderId))
+                .thenThrow(new EntityNotFoundException("Recipient not found"));
 
 
         assertThatThrownBy(() -> messageService.createMessage(dto, sender))
                 .isInstanceOf(EntityNotFoundException.class)
                         .hasMessageContaining("Recipient not found");
 
-        verify(userRepository).findById(senderId);
-        verify(chatRepository).findById(chatId);
+        verify(chatMembershipIndex).findRecipientId(chatId, senderId);
+        verifyNoInteractions(userRepository, chatRepository, messageRepository);
     }
 
     @Test
@@ -152,291 +147,176 @@ class MessageServiceTest {
         User sender = new User();
         sender.setId(senderId);
 
-        Set<User> participants = new HashSet<>();
-        Chat chat = new Chat();
-        chat.setParticipants(participants);
-        chat.setId(chatId);
         MessageCreateRequestDTO dto = new MessageCreateRequestDTO(content, chatId);
 
-        when(userRepository.findById(senderId)).thenReturn(Optional.of(sender));
-        when(chatRepository.findById(chatId)).thenReturn(Optional.of(chat));
+        when(chatMembershipIndex.findRecipientId(chatId, senderId))
+                .thenThrow(new IllegalArgumentException("Chat with id " + chatId + " does not contain user with id " + senderId));
 
         assertThatThrownBy(() -> messageService.createMessage(dto, sender))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessageContaining("does not contain user with id " + senderId);
 
-        verify(userRepository).findById(senderId);
-        verify(chatRepository).findById(chatId);
-        verifyNoMoreInteractions(userRepository, chatRepository, messageRepository);
+        verify(chatMembershipIndex).findRecipientId(chatId, senderId);
+        verifyNoInteractions(userRepository, chatRepository, messageRepository);
     }
 
     @Test
-    @DisplayName("Test successful read messages")
-    void processReadReceipt() {
-        Long readerId = 1L;
-        Long recipientId = 3L;
-        Long chatId = 2L;
-
-        User reader = new User();
-        reader.setId(readerId);
-
-        User recipient = new User();
-        recipient.setId(recipientId);
-
-        Set<User> participants = new HashSet<>();
-        participants.add(recipient);
-        participants.add(reader);
-
-        Chat chat = new Chat();
-        chat.setParticipants(participants);
-        chat.setId(chatId);
-
-        when(userRepository.findById(readerId)).thenReturn(Optional.of(reader));
-        when(chatRepository.findById(chatId)).thenReturn(Optional.of(chat));
-
-        Message m1 = new Message();
-        m1.setId(1L);
-        m1.setSendingTime(Instant.now());
-        m1.setRead(false);
-        m1.setSender(recipient);
-        m1.setContent("Hello");
-
-        Message m2 = new Message();
-        m2.setId(4L);
-        m2.setSendingTime(Instant.now());
-        m2.setRead(false);
-        m2.setSender(recipient);
-        m2.setContent("Hello");
-
-        List<Long> messageIdsList = List.of(m1.getId(),m2.getId());
-        List<Message> messageList = List.of(m1,m2);
+    @DisplayName("Test successful write-behind message creation")
+    void createMessageWriteBehind() {
+        Long senderId = 1L;
+        Long recipientId = 2L;
+        Long chatId = 100L;
+        String content = "Hello";
 
+        User sender = new User();
+        sender.setId(senderId);
 
-        ReadReceiptRequestDTO dto = new ReadReceiptRequestDTO(chatId, messageIdsList);
+        MessageCreateRequestDTO dto = new MessageCreateRequestDTO(content, chatId);
 
-        when(messageRepository.findAllById(dto.messageIds())).thenReturn(messageList);
+        when(chatMembershipIndex.findRecipientId(chatId, senderId)).thenReturn(recipientId);
+        when(messageBatchWriter.write(eq(chatId), eq(senderId), eq(content), any(Instant.class)))
+                .thenReturn(new MessageBatchWriter.WriteResult(3L, false, CompletableFuture.completedFuture(3L)));
 
-        ReadReceiptResponseDTO result = messageService.processReadReceipt(dto, reader);
+        MessageService.WriteBehindResult writeBehindResult = messageService.createMessageWriteBehind(dto, sender);
+        MessageCreateResponseDTO result = writeBehindResult.response();
 
         assertThat(result)
                 .isNotNull()
-                .satisfies(res ->{
-                    assertThat(res.chatId()).isEqualTo(2L);
-                    assertThat(res.messageIds()).isEqualTo(messageIdsList);
-                    assertThat(res.readerId()).isEqualTo(1L);
-                    assertThat(res.recipientId()).isEqualTo(3L);
+                .satisfies(res -> {
+                    assertThat(res.messageId()).isEqualTo(3L);
+                    assertThat(res.chatId()).isEqualTo(chatId);
+                    assertThat(res.senderId()).isEqualTo(senderId);
+                    assertThat(res.recipientId()).isEqualTo(recipientId);
+                    assertThat(res.isRead()).isFalse();
+                    assertThat(res.pending()).isFalse();
                 });
-        assertThat(m1.isRead()).isEqualTo(true);
-        assertThat(m2.isRead()).isEqualTo(true);
+        assertThat(writeBehindResult.committed()).isCompletedWithValue(result);
+        assertThat(meterRegistry.timer("messenger.messages.send.latency", Tags.of("mode", "write_behind")).count()).isEqualTo(1);
 
-        verify(userRepository).findById(readerId);
-        verify(messageRepository).findAllById(messageIdsList);
-        verify(chatRepository).findById(chatId);
-        verifyNoMoreInteractions(userRepository,messageRepository,chatRepository);
+        verify(chatMembershipIndex).findRecipientId(chatId, senderId);
+        verifyNoInteractions(userRepository, chatRepository, messageRepository);
     }
-    @Test
-    @DisplayName("Test read process: throws EntityNotFoundException when chat not found")
-    void processReadReceipt_chatNotFound() {
-        Long userId = 1L;
-        Long chatId = 3L;
 
-        User reader = new User();
-        reader.setId(userId);
+    @Test
+    @DisplayName("Test slow write-behind commit returns a pending response and completes it once committed")
+    void createMessageWriteBehind_pending() {
+        User sender = new User();
+        sender.setId(1L);
+        CompletableFuture<Long> committed = new CompletableFuture<>();
 
-        when(userRepository.findById(userId)).thenReturn(Optional.of(reader));
-        when(chatRepository.findById(chatId)).thenReturn(Optional.empty());
-        Message m1 = new Message();
-        m1.setId(1L);
-        m1.setSendingTime(Instant.now());
-        m1.setRead(false);
-        m1.setContent("Hello");
+        when(chatMembershipIndex.findRecipientId(100L, 1L)).thenReturn(2L);
+        when(messageBatchWriter.write(eq(100L), eq(1L), eq("Hello"), any(Instant.class)))
+                .thenReturn(new MessageBatchWriter.WriteResult(3L, true, committed));
 
-        Message m2 = new Message();
-        m2.setId(4L);
-        m2.setSendingTime(Instant.now());
-        m2.setRead(false);
-        m2.setContent("Hello");
+        MessageService.WriteBehindResult result =
+                messageService.createMessageWriteBehind(new MessageCreateRequestDTO("Hello", 100L), sender);
 
-        List<Long> messageIdsList = List.of(m1.getId(),m2.getId());
+        assertThat(result.response().pending()).isTrue();
+        assertThat(result.committed()).isNotDone();
 
-        ReadReceiptRequestDTO dto = new ReadReceiptRequestDTO(chatId, messageIdsList);
-        assertThatThrownBy(() ->  messageService.processReadReceipt(dto, reader))
-                .isInstanceOf(EntityNotFoundException.class)
-                .hasMessageContaining("Chat not found with id " + chatId);
+        committed.complete(3L);
 
-        verify(userRepository).findById(userId);
-        verify(chatRepository).findById(chatId);
-        verifyNoMoreInteractions(userRepository, chatRepository);
+        assertThat(result.committed().join())
+                .satisfies(res -> {
+                    assertThat(res.messageId()).isEqualTo(3L);
+                    assertThat(res.recipientId()).isEqualTo(2L);
+                    assertThat(res.pending()).isFalse();
+                });
     }
 
     @Test
-    @DisplayName("Test read process: throws IllegalArgumentException when user not in chat")
-    void processReadReceipt_userNotInChat() {
-        Long userId = 1L;
-        Long chatId = 3L;
-
-        User reader = new User();
-        reader.setId(userId);
-
-        Chat chat = new Chat();
-        Set<User> participants = new HashSet<>(); //chat is empty
-        chat.setParticipants(participants);
-
-        when(userRepository.findById(userId)).thenReturn(Optional.of(reader));
-        when(chatRepository.findById(chatId)).thenReturn(Optional.of(chat));
+    @DisplayName("Test write-behind message creation: throws IllegalArgumentException when sender not in chat")
+    void createMessageWriteBehind_senderNotInChat() {
+        Long senderId = 1L;
+        Long chatId = 100L;
 
-        Message m1 = new Message();
-        m1.setId(1L);
-        m1.setSendingTime(Instant.now());
-        m1.setRead(false);
-        m1.setContent("Hello");
+        User sender = new User();
+        sender.setId(senderId);
 
-        Message m2 = new Message();
-        m2.setId(4L);
-        m2.setSendingTime(Instant.now());
-        m2.setRead(false);
-        m2.setContent("Hello");
+        MessageCreateRequestDTO dto = new MessageCreateRequestDTO("Hello", chatId);
 
-        List<Long> messageIdsList = List.of(m1.getId(),m2.getId());
+        when(chatMembershipIndex.findRecipientId(chatId, senderId))
+                .thenThrow(new IllegalArgumentException("Chat with id " + chatId + " does not contain user with id " + senderId));
 
-        ReadReceiptRequestDTO dto = new ReadReceiptRequestDTO(chatId, messageIdsList);
-        assertThatThrownBy(() ->  messageService.processReadReceipt(dto, reader))
+        assertThatThrownBy(() -> messageService.createMessageWriteBehind(dto, sender))
                 .isInstanceOf(IllegalArgumentException.class)
-                .hasMessageContaining("does not contain user with id " + userId);
+                .hasMessageContaining("does not contain user with id " + senderId);
 
-        verify(userRepository).findById(userId);
-        verify(chatRepository).findById(chatId);
-        verifyNoMoreInteractions(userRepository, chatRepository);
+        verifyNoInteractions(messageBatchWriter);
     }
 
     @Test
-    @DisplayName("Test successful typing process")
-    void processTyping_success() {
-        Long userId = 1L;
-        String username = "username";
-        Long recipientId = 2L;
-        Long chatId = 3L;
-        boolean isTyping = true;
-
-        User typingUser = new User();
-        typingUser.setId(userId);
-        typingUser.setUsername(username);
-
-        User recipient = new User();
-        recipient.setId(recipientId);
+    @DisplayName("Test successful read messages")
+    void processReadReceipt() {
+        Long readerId = 1L;
+        Long recipientId = 3L;
+        Long chatId = 2L;
 
-        Chat chat = new Chat();
-        chat.setId(chatId);
+        User reader = new User();
+        reader.setId(readerId);
 
-        Set<User> participants = new HashSet<>();
-        participants.add(typingUser);
-        participants.add(recipient);
-        chat.setParticipants(participants);
+        when(chatMembershipIndex.findRecipientId(chatId, readerId)).thenReturn(recipientId);
 
-        when(userRepository.findById(userId)).thenReturn(Optional.of(typingUser));
-        when(chatRepository.findById(chatId)).thenReturn(Optional.of(chat));
+        List<Long> messageIdsList = List.of(1L, 4L);
 
-        TypingDTO dto = new TypingDTO(chatId, null, null, null, isTyping);
+        ReadReceiptRequestDTO dto = new ReadReceiptRequestDTO(chatId, messageIdsList);
 
-        TypingDTO result = messageService.processTyping(dto, typingUser);
+        ReadReceiptResponseDTO result = messageService.processReadReceipt(dto, reader);
 
         assertThat(result)
                 .isNotNull()
-                .satisfies(res -> {
-                   assertThat(res.chatId()).isEqualTo(chatId);
-                   assertThat(res.isTyping()).isEqualTo(isTyping);
-                   assertThat(res.username()).isEqualTo(username);
-                   assertThat(res.recipientId()).isEqualTo(recipientId);
-                   assertThat(res.userId()).isEqualTo(userId);
+                .satisfies(res ->{
+                    assertThat(res.chatId()).isEqualTo(2L);
+                    assertThat(res.messageIds()).isEqualTo(messageIdsList);
+                    assertThat(res.readerId()).isEqualTo(1L);
+                    assertThat(res.recipientId()).isEqualTo(3L);
                 });
-        verify(userRepository).findById(userId);
-        verify(chatRepository).findById(chatId);
-        verifyNoMoreInteractions(userRepository, chatRepository);
-    }
-
-    @Test
-    @DisplayName("Test typing processing: throws IllegalArgumentException when user not in chat")
-    void processTyping_userNotInChat() {
-        Long userId = 1L;
-        String username = "username";
-        Long chatId = 3L;
-        boolean isTyping = true;
-
-        User typingUser = new User();
-        typingUser.setId(userId);
-        typingUser.setUsername(username);
-
-        Chat chat = new Chat();
-        chat.setId(chatId);
-
-        Set<User> participants = new HashSet<>();
-        chat.setParticipants(participants);
-
-        when(userRepository.findById(userId)).thenReturn(Optional.of(typingUser));
-        when(chatRepository.findById(chatId)).thenReturn(Optional.of(chat));
 
-        TypingDTO dto = new TypingDTO(chatId, null, null, null, isTyping);
-
-        assertThatThrownBy(() -> messageService.processTyping(dto, typingUser))
-                .isInstanceOf(IllegalArgumentException.class)
-                .hasMessageContaining("does not contain user with id " + userId);
-
-        verify(userRepository).findById(userId);
-        verify(chatRepository).findById(chatId);
-        verifyNoMoreInteractions(userRepository, chatRepository);
+        verify(chatMembershipIndex).findRecipientId(chatId, readerId);
+        verify(userChatStateRepository).lockChat(chatId);
+        verify(chatReadWatermarkRepository).advance(readerId, chatId, 4L);
+        verifyNoMoreInteractions(chatReadWatermarkRepository);
+        verifyNoInteractions(userRepository, chatRepository, messageRepository);
     }
-
     @Test
-    @DisplayName("Test typing processing: throws EntityNotFoundException when chat not found")
-    void processTyping_chatNotFound() {
+    @DisplayName("Test read process: throws EntityNotFoundException when chat not found")
+    void processReadReceipt_chatNotFound() {
         Long userId = 1L;
         Long chatId = 3L;
-        boolean isTyping = true;
-
-        User typingUser = new User();
-        typingUser.setId(userId);
 
-        when(userRepository.findById(userId)).thenReturn(Optional.of(typingUser));
-        when(chatRepository.findById(chatId)).thenReturn(Optional.empty());
+        User reader = new User();
+        reader.setId(userId);
 
-        TypingDTO dto = new TypingDTO(chatId, null, null, null, isTyping);
+        when(chatMembershipIndex.findRecipientId(chatId, userId))
+                .thenThrow(new EntityNotFoundException("Chat not found with id " + chatId));
 
-        assertThatThrownBy(() -> messageService.processTyping(dto, typingUser))
+        ReadReceiptRequestDTO dto = new ReadReceiptRequestDTO(chatId, List.of(1L, 4L));
+        assertThatThrownBy(() ->  messageService.processReadReceipt(dto, reader))
                 .isInstanceOf(EntityNotFoundException.class)
                 .hasMessageContaining("Chat not found with id " + chatId);
 
-        verify(userRepository).findById(userId);
-        verify(chatRepository).findById(chatId);
-        verifyNoMoreInteractions(userRepository, chatRepository);
+        verify(chatMembershipIndex).findRecipientId(chatId, userId);
+        verifyNoInteractions(userRepository, chatRepository, messageRepository, chatReadWatermarkRepository);
     }
+
     @Test
-    @DisplayName("Test typing processing: throws EntityNotFoundException when no recipient in chat")
-    void processTyping_noRecipient() {
+    @DisplayName("Test read process: throws IllegalArgumentException when user not in chat")
+    void processReadReceipt_userNotInChat() {
         Long userId = 1L;
         Long chatId = 3L;
-        boolean isTyping = true;
-
-        User typingUser = new User();
-        typingUser.setId(userId);
 
-        Set<User> participants = new HashSet<>();
-        participants.add(typingUser);
-
-        Chat chat = new Chat();
-        chat.setId(chatId);
-        chat.setParticipants(participants);
-
-        when(userRepository.findById(userId)).thenReturn(Optional.of(typingUser));
-        when(chatRepository.findById(chatId)).thenReturn(Optional.of(chat));
+        User reader = new User();
+        reader.setId(userId);
 
-        TypingDTO dto = new TypingDTO(chatId, null, null, null, isTyping);
+        when(chatMembershipIndex.findRecipientId(chatId, userId))
+                .thenThrow(new IllegalArgumentException("Chat with id " + chatId + " does not contain user with id " + userId));
 
-        assertThatThrownBy(() -> messageService.processTyping(dto, typingUser))
-                .isInstanceOf(EntityNotFoundException.class)
-                .hasMessageContaining("Recipient not found");
+        ReadReceiptRequestDTO dto = new ReadReceiptRequestDTO(chatId, List.of(1L, 4L));
+        assertThatThrownBy(() ->  messageService.processReadReceipt(dto, reader))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("does not contain user with id " + userId);
 
-        verify(userRepository).findById(userId);
-        verify(chatRepository).findById(chatId);
-        verifyNoMoreInteractions(userRepository, chatRepository);
+        verify(chatMembershipIndex).findRecipientId(chatId, userId);
+        verifyNoInteractions(userRepository, chatRepository, messageRepository);
     }
-}
\ No newline at end of file
+}
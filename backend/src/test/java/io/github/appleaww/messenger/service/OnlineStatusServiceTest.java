@@ -1,25 +1,139 @@
 package io.github.appleaww.messenger.service;
 
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.model.dto.OnlineStatusDTO;
+import io.github.appleaww.messenger.presence.InMemoryPresenceRegistry;
+import io.github.appleaww.messenger.repository.UserRepository;
+import io.github.appleaww.messenger.websocket.PresenceFanoutService;
+import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
-import static org.junit.jupiter.api.Assertions.*;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
 class OnlineStatusServiceTest {
+    @Spy private InMemoryPresenceRegistry presenceRegistry;
+    @Mock private PresenceFanoutService presenceFanoutService;
+    @Mock private UserPresenceWriter userPresenceWriter;
+    @Mock private UserRepository userRepository;
+    @Mock private MetricsService metricsService;
+
+    @InjectMocks private OnlineStatusService onlineStatusService;
 
     @Test
+    @DisplayName("Test only the first session of a user announces them online")
     void userConnected() {
+        onlineStatusService.userConnected(1L);
+        onlineStatusService.userConnected(1L);
+
+        verify(userPresenceWriter, times(2)).record(eq(1L), eq(true), any());
+        verify(presenceFanoutService).statusChanged(eq(1L), eq(true), any());
+        verifyNoMoreInteractions(presenceFanoutService);
     }
 
     @Test
+    @DisplayName("Test user stays online until the last of their sessions disconnects")
     void userDisconnected() {
+        onlineStatusService.userConnected(1L);
+        onlineStatusService.userConnected(1L);
+        onlineStatusService.userDisconnected(1L);
+
+        assertThat(onlineStatusService.isUserOnline(1L)).isTrue();
+        verify(presenceFanoutService, never()).statusChanged(anyLong(), eq(false), any());
+
+        onlineStatusService.userDisconnected(1L);
+
+        assertThat(onlineStatusService.isUserOnline(1L)).isFalse();
+        verify(userPresenceWriter).record(eq(1L), eq(false), any());
+        verify(presenceFanoutService).statusChanged(eq(1L), eq(false), any());
     }
 
     @Test
+    @DisplayName("Test online status is read from the presence registry")
     void isUserOnline() {
+        presenceRegistry.sessionOpened(2L);
+
+        assertThat(onlineStatusService.isUserOnline(2L)).isTrue();
+        assertThat(onlineStatusService.isUserOnline(3L)).isFalse();
+        verifyNoInteractions(userPresenceWriter);
     }
 
     @Test
+    @DisplayName("Test online users are read from the presence registry")
     void getOnlineUsers() {
+        presenceRegistry.sessionOpened(2L);
+        presenceRegistry.sessionOpened(4L);
+
+        assertThat(onlineStatusService.getOnlineUsers()).containsExactlyInAnyOrder(2L, 4L);
+    }
+
+    @Test
+    @DisplayName("Test users left on a dead node are marked offline and announced")
+    void expireDeadNodes() {
+        doReturn(Set.of(5L)).when(presenceRegistry).expireDeadNodes();
+
+        onlineStatusService.expireDeadNodes();
+
+        verify(userPresenceWriter).record(eq(5L), eq(false), any());
+        verify(presenceFanoutService).statusChanged(eq(5L), eq(false), any());
+    }
+
+    @Test
+    @DisplayName("Test corrections from the cluster view are announced with their actual status")
+    void applyCorrections() {
+        doReturn(Map.of(6L, true, 7L, false)).when(presenceRegistry).drainCorrections();
+
+        onlineStatusService.applyCorrections();
+
+        verify(presenceFanoutService).statusChanged(eq(6L), eq(true), any());
+        verify(presenceFanoutService).statusChanged(eq(7L), eq(false), any());
+        verify(userPresenceWriter).record(eq(7L), eq(false), any());
+    }
+
+    @Test
+    @DisplayName("Test bulk status query returns flags and last seen in request order, skipping unknown ids")
+    void queryStatuses() {
+        ReflectionTestUtils.setField(onlineStatusService, "maxQueryIds", 10);
+        Instant storedLastSeen = Instant.parse("2026-01-01T10:00:00Z");
+        Instant pendingLastSeen = Instant.parse("2026-01-01T11:00:00Z");
+
+        presenceRegistry.sessionOpened(2L);
+        when(userRepository.findLastSeenByIdIn(Set.of(3L, 2L, 99L))).thenReturn(List.of(
+                lastSeen(2L, storedLastSeen), lastSeen(3L, storedLastSeen)));
+        when(userPresenceWriter.findPendingLastSeen(anyLong())).thenReturn(Optional.empty());
+        when(userPresenceWriter.findPendingLastSeen(3L)).thenReturn(Optional.of(pendingLastSeen));
+
+        List<OnlineStatusDTO> statuses = onlineStatusService.queryStatuses(List.of(3L, 2L, 99L, 3L));
+
+        assertThat(statuses).containsExactly(
+                new OnlineStatusDTO(3L, false, pendingLastSeen),
+                new OnlineStatusDTO(2L, true, storedLastSeen));
+    }
+
+    @Test
+    @DisplayName("Test bulk status query: throws IllegalArgumentException above the id limit")
+    void queryStatuses_tooManyIds() {
+        ReflectionTestUtils.setField(onlineStatusService, "maxQueryIds", 2);
+
+        assertThatThrownBy(() -> onlineStatusService.queryStatuses(List.of(1L, 2L, 3L)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("At most 2 user ids");
+
+        verifyNoInteractions(userRepository);
     }
 
     @Test
@@ -29,4 +143,18 @@ class OnlineStatusServiceTest {
     @Test
     void notifyUserAboutStatus() {
     }
-}
\ No newline at end of file
+
+    private UserRepository.LastSeen lastSeen(Long userId, Instant lastSeen) {
+        return new UserRepository.LastSeen() {
+            @Override
+            public Long getUserId() {
+                return userId;
+            }
+
+            @Override
+            public Instant getLastSeen() {
+                return lastSeen;
+            }
+        };
+    }
+}
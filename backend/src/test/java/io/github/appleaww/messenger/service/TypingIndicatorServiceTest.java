@@ -0,0 +1,115 @@
+package io.github.appleaww.messenger.service;
+
+import io.github.appleaww.messenger.model.dto.TypingDTO;
+import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.websocket.MessageFanoutService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TypingIndicatorServiceTest {
+    @Mock private ChatMembershipIndex chatMembershipIndex;
+    @Mock private MessageFanoutService messageFanoutService;
+
+    @InjectMocks private TypingIndicatorService typingIndicatorService;
+
+    private final Long userId = 1L;
+    private final Long recipientId = 2L;
+    private final Long chatId = 3L;
+    private User typingUser;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(typingIndicatorService, "coalesceWindowMs", 60_000L);
+        ReflectionTestUtils.setField(typingIndicatorService, "inactivityTimeoutMs", 60_000L);
+
+        typingUser = new User();
+        typingUser.setId(userId);
+        typingUser.setUsername("username");
+    }
+
+    @Test
+    @DisplayName("Test successful typing process")
+    void processTyping_success() {
+        when(chatMembershipIndex.findRecipientId(chatId, userId)).thenReturn(recipientId);
+
+        typingIndicatorService.processTyping(new TypingDTO(chatId, null, null, null, true), typingUser);
+
+        ArgumentCaptor<TypingDTO> captor = ArgumentCaptor.forClass(TypingDTO.class);
+        verify(messageFanoutService).sendToUser(eq(recipientId), eq("/queue/typing-events"), captor.capture());
+
+        assertThat(captor.getValue())
+                .satisfies(res -> {
+                    assertThat(res.chatId()).isEqualTo(chatId);
+                    assertThat(res.isTyping()).isTrue();
+                    assertThat(res.username()).isEqualTo("username");
+                    assertThat(res.recipientId()).isEqualTo(recipientId);
+                    assertThat(res.userId()).isEqualTo(userId);
+                });
+    }
+
+    @Test
+    @DisplayName("Test repeated typing events within the window are coalesced into one frame")
+    void processTyping_coalescesRepeatedEvents() {
+        when(chatMembershipIndex.findRecipientId(chatId, userId)).thenReturn(recipientId);
+
+        for (int i = 0; i < 5; i++) {
+            typingIndicatorService.processTyping(new TypingDTO(chatId, null, null, null, true), typingUser);
+        }
+
+        verify(messageFanoutService, times(1)).sendToUser(anyLong(), anyString(), any(TypingDTO.class));
+    }
+
+    @Test
+    @DisplayName("Test stop typing is forwarded once for an active typer")
+    void processTyping_stopTyping() {
+        when(chatMembershipIndex.findRecipientId(chatId, userId)).thenReturn(recipientId);
+
+        typingIndicatorService.processTyping(new TypingDTO(chatId, null, null, null, true), typingUser);
+        typingIndicatorService.processTyping(new TypingDTO(chatId, null, null, null, false), typingUser);
+        typingIndicatorService.processTyping(new TypingDTO(chatId, null, null, null, false), typingUser);
+
+        verify(messageFanoutService).sendToUser(eq(recipientId), eq("/queue/typing-events"),
+                argThat((TypingDTO dto) -> !dto.isTyping()));
+        verify(messageFanoutService, times(2)).sendToUser(anyLong(), anyString(), any(TypingDTO.class));
+    }
+
+    @Test
+    @DisplayName("Test inactive typer gets an automatic stop typing frame")
+    void expireInactiveTypers() {
+        ReflectionTestUtils.setField(typingIndicatorService, "inactivityTimeoutMs", 0L);
+        when(chatMembershipIndex.findRecipientId(chatId, userId)).thenReturn(recipientId);
+
+        typingIndicatorService.processTyping(new TypingDTO(chatId, null, null, null, true), typingUser);
+        typingIndicatorService.expireInactiveTypers();
+        typingIndicatorService.expireInactiveTypers();
+
+        verify(messageFanoutService).sendToUser(eq(recipientId), eq("/queue/typing-events"),
+                argThat((TypingDTO dto) -> !dto.isTyping()));
+        verify(messageFanoutService, times(2)).sendToUser(anyLong(), anyString(), any(TypingDTO.class));
+    }
+
+    @Test
+    @DisplayName("Test typing processing: throws IllegalArgumentException when user not in chat")
+    void processTyping_userNotInChat() {
+        when(chatMembershipIndex.findRecipientId(chatId, userId))
+                .thenThrow(new IllegalArgumentException("Chat with id " + chatId + " does not contain user with id " + userId));
+
+        assertThatThrownBy(() -> typingIndicatorService.processTyping(new TypingDTO(chatId, null, null, null, true), typingUser))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("does not contain user with id " + userId);
+
+        verifyNoInteractions(messageFanoutService);
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.appleaww.messenger.service;
+
+import io.github.appleaww.messenger.kafka.KafkaProducerService;
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UserPresenceWriterTest {
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private UserPresenceWriter userPresenceWriter;
+
+    @BeforeEach
+    void setUp() {
+        userPresenceWriter = new UserPresenceWriter(jdbcTemplate, new MetricsService(meterRegistry, mock(KafkaProducerService.class)));
+        ReflectionTestUtils.setField(userPresenceWriter, "flushIntervalMs", 1000L);
+        ReflectionTestUtils.setField(userPresenceWriter, "batchSize", 2);
+        userPresenceWriter.registerMetrics();
+    }
+
+    @Test
+    @DisplayName("Test only the latest state of a user is written, with one statement per batch")
+    void flush_coalescesAndBatches() {
+        Instant connectedAt = Instant.parse("2026-01-01T10:00:00Z");
+        Instant disconnectedAt = Instant.parse("2026-01-01T10:00:05Z");
+
+        userPresenceWriter.record(1L, true, connectedAt);
+        userPresenceWriter.record(1L, false, disconnectedAt);
+        userPresenceWriter.record(2L, true, connectedAt);
+        userPresenceWriter.record(3L, true, connectedAt);
+
+        assertThat(meterRegistry.get("messenger.presence.flush.pending").gauge().value()).isEqualTo(3.0);
+
+        userPresenceWriter.flush();
+
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(2)).update(startsWith("UPDATE users u"), args.capture());
+        assertThat(args.getAllValues()).extracting(batchArgs -> batchArgs.length).containsExactlyInAnyOrder(6, 3);
+        assertThat(args.getAllValues()).flatExtracting(batchArgs -> List.of(batchArgs))
+                .contains(false).containsOnlyOnce(1L);
+
+        assertThat(meterRegistry.get("messenger.presence.flush.batch.size").summary().totalAmount()).isEqualTo(3.0);
+        assertThat(meterRegistry.get("messenger.presence.flush.lag").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("messenger.presence.flush.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("Test nothing is written when no presence changed")
+    void flush_nothingPending() {
+        userPresenceWriter.flush();
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("Test a failed batch is retried on the next flush unless a newer state was recorded")
+    void flush_failedBatchIsRequeued() {
+        when(jdbcTemplate.update(anyString(), any(Object[].class)))
+                .thenThrow(new QueryTimeoutException("timeout"))
+                .thenReturn(1);
+
+        userPresenceWriter.record(1L, true, Instant.now());
+        userPresenceWriter.flush();
+
+        assertThat(meterRegistry.get("messenger.presence.flush.pending").gauge().value()).isEqualTo(1.0);
+
+        userPresenceWriter.flush();
+
+        verify(jdbcTemplate, times(2)).update(anyString(), any(Object[].class));
+        assertThat(meterRegistry.get("messenger.presence.flush.pending").gauge().value()).isZero();
+    }
+}
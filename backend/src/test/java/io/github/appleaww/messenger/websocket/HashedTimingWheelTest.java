@@ -0,0 +1,73 @@
+package io.github.appleaww.messenger.websocket;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+class HashedTimingWheelTest {
+
+    @Test
+    @DisplayName("Test keys come due in the tick of their deadline and leave the wheel")
+    void advance_handsBackDueKeys() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 8, 0);
+        wheel.schedule("a", 15);
+        wheel.schedule("b", 40);
+
+        List<String> due = new ArrayList<>();
+        wheel.advance(19, due::add);
+        assertThat(due).isEmpty();
+
+        wheel.advance(20, due::add);
+        assertThat(due).containsExactly("a");
+
+        wheel.advance(45, due::add);
+        assertThat(due).containsExactly("a", "b");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("Test a deadline past one rotation comes due early so the caller can schedule it again")
+    void advance_farDeadlineWrapsAround() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 4, 0);
+        wheel.schedule("far", 50);
+
+        List<String> due = new ArrayList<>();
+        wheel.advance(10, due::add);
+
+        assertThat(due).containsExactly("far");
+    }
+
+    @Test
+    @DisplayName("Test a key scheduled again while its slot is drained waits for a later tick")
+    void advance_rescheduleDuringDrainDoesNotLoop() {
+        HashedTimingWheel<String> wheel = new HashedTimingWheel<>(10, 4, 0);
+        wheel.schedule("a", 10);
+
+        List<String> due = new ArrayList<>();
+        wheel.advance(10, key -> {
+            due.add(key);
+            wheel.schedule(key, 10);
+        });
+
+        assertThat(due).containsExactly("a");
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Test falling behind by more than a rotation visits every slot once")
+    void advance_catchesUpAfterLongPause() {
+        HashedTimingWheel<Integer> wheel = new HashedTimingWheel<>(10, 4, 0);
+        for (int i = 0; i < 4; i++) {
+            wheel.schedule(i, i * 10L);
+        }
+
+        List<Integer> due = new ArrayList<>();
+        wheel.advance(1_000, due::add);
+
+        assertThat(due).containsExactlyInAnyOrder(0, 1, 2, 3);
+    }
+}
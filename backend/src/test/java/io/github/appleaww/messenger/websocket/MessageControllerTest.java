@@ -1,15 +1,108 @@
 package io.github.appleaww.messenger.websocket;
 
+import io.github.appleaww.messenger.model.dto.ResyncHintDTO;
+import io.github.appleaww.messenger.model.dto.request.MessageCreateRequestDTO;
+import io.github.appleaww.messenger.model.dto.response.MessageCreateResponseDTO;
+import io.github.appleaww.messenger.model.entity.User;
+import io.github.appleaww.messenger.service.MessageBatchWriter;
+import io.github.appleaww.messenger.service.MessageService;
+import io.github.appleaww.messenger.service.TypingIndicatorService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
 
+@ExtendWith(MockitoExtension.class)
 class MessageControllerTest {
+    @Mock private MessageFanoutService messageFanoutService;
+    @Mock private MessageService messageService;
+    @Mock private MessageBatchWriter messageBatchWriter;
+    @Mock private TypingIndicatorService typingIndicatorService;
+
+    @InjectMocks private MessageController messageController;
+
+    private User sender;
+    private UsernamePasswordAuthenticationToken principal;
+
+    @BeforeEach
+    void setUp() {
+        sender = new User();
+        sender.setId(1L);
+        principal = new UsernamePasswordAuthenticationToken(new UserPrincipal(sender), null, List.of());
+    }
 
     @Test
     void sendMessage() {
     }
 
+    @Test
+    @DisplayName("Test a committed write-behind message is sent to the sender and the recipient")
+    void sendMessage_committedGoesToBoth() {
+        MessageCreateRequestDTO request = new MessageCreateRequestDTO("Hello", 100L);
+        MessageCreateResponseDTO committed = response(false);
+        when(messageBatchWriter.isEnabled()).thenReturn(true);
+        when(messageService.createMessageWriteBehind(request, sender)).thenReturn(
+                new MessageService.WriteBehindResult(committed, CompletableFuture.completedFuture(committed)));
+
+        messageController.sendMessage(request, principal);
+
+        verify(messageFanoutService).sendToUsers(List.of(1L, 2L), "/queue/chat-messages", committed);
+        verifyNoMoreInteractions(messageFanoutService);
+    }
+
+    @Test
+    @DisplayName("Test a pending message reaches the recipient only once its batch is committed")
+    void sendMessage_pendingGoesToRecipientAfterCommit() {
+        MessageCreateRequestDTO request = new MessageCreateRequestDTO("Hello", 100L);
+        MessageCreateResponseDTO pending = response(true);
+        MessageCreateResponseDTO committed = response(false);
+        CompletableFuture<MessageCreateResponseDTO> commit = new CompletableFuture<>();
+        when(messageBatchWriter.isEnabled()).thenReturn(true);
+        when(messageService.createMessageWriteBehind(request, sender))
+                .thenReturn(new MessageService.WriteBehindResult(pending, commit));
+
+        messageController.sendMessage(request, principal);
+
+        verify(messageFanoutService).sendToUser(1L, "/queue/chat-messages", pending);
+        verifyNoMoreInteractions(messageFanoutService);
+
+        commit.complete(committed);
+
+        verify(messageFanoutService).sendToUsers(List.of(1L, 2L), "/queue/chat-messages", committed);
+    }
+
+    @Test
+    @DisplayName("Test a pending message that fails to commit never reaches the recipient and the sender resyncs")
+    void sendMessage_pendingFailureOnlyTellsSender() {
+        MessageCreateRequestDTO request = new MessageCreateRequestDTO("Hello", 100L);
+        MessageCreateResponseDTO pending = response(true);
+        CompletableFuture<MessageCreateResponseDTO> commit = new CompletableFuture<>();
+        when(messageBatchWriter.isEnabled()).thenReturn(true);
+        when(messageService.createMessageWriteBehind(request, sender))
+                .thenReturn(new MessageService.WriteBehindResult(pending, commit));
+
+        messageController.sendMessage(request, principal);
+        commit.completeExceptionally(new IllegalStateException("batch failed"));
+
+        verify(messageFanoutService).sendToUser(1L, "/queue/chat-messages", pending);
+        verify(messageFanoutService).sendToUser(eq(1L), eq(MessageFanoutService.RESYNC_DESTINATION), any(ResyncHintDTO.class));
+        verify(messageFanoutService, never()).sendToUsers(any(), any(), any());
+        verify(messageFanoutService, never()).sendToUser(eq(2L), any(), any());
+    }
+
     @Test
     void markMessagesAsRead() {
     }
@@ -17,4 +110,8 @@ class MessageControllerTest {
     @Test
     void displayTypingProcess() {
     }
-}
\ No newline at end of file
+
+    private static MessageCreateResponseDTO response(boolean pending) {
+        return new MessageCreateResponseDTO(3L, Instant.EPOCH, "Hello", false, 1L, 2L, 100L, pending);
+    }
+}
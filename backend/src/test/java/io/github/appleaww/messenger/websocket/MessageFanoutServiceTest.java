@@ -0,0 +1,196 @@
+package io.github.appleaww.messenger.websocket;
+
+import io.github.appleaww.messenger.kafka.UserDelivery;
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.github.appleaww.messenger.model.dto.ResyncHintDTO;
+import io.github.appleaww.messenger.presence.PresenceRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MessageFanoutServiceTest {
+    @Mock private SimpMessagingTemplate messagingTemplate;
+    @Mock private SimpUserRegistry simpUserRegistry;
+    @Mock private KafkaTemplate<String, Object> kafkaTemplate;
+    @Mock private PresenceRegistry presenceRegistry;
+    @Mock private MetricsService metricsService;
+    @Spy private JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    @InjectMocks private MessageFanoutService messageFanoutService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(messageFanoutService, "clusterEnabled", true);
+        ReflectionTestUtils.setField(messageFanoutService, "topic", "user-deliveries");
+        ReflectionTestUtils.setField(messageFanoutService, "nodeId", 1);
+        ReflectionTestUtils.setField(messageFanoutService, "publishQueueCapacity", 10);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        messageFanoutService.stop();
+    }
+
+    @Test
+    @DisplayName("Test fan-out: single node mode always delivers through the local broker")
+    void sendToUser_clusterDisabled() {
+        ReflectionTestUtils.setField(messageFanoutService, "clusterEnabled", false);
+
+        messageFanoutService.sendToUser(2L, "/queue/chat-messages", "payload");
+
+        verify(messagingTemplate).convertAndSendToUser("2", "/queue/chat-messages", "payload");
+        verifyNoInteractions(simpUserRegistry, kafkaTemplate);
+    }
+
+    @Test
+    @DisplayName("Test fan-out: recipient connected to this node is served without Kafka")
+    void sendToUser_connectedLocally() {
+        when(simpUserRegistry.getUser("2")).thenReturn(mock(SimpUser.class));
+
+        messageFanoutService.sendToUser(2L, "/queue/chat-messages", "payload");
+
+        verify(messagingTemplate).convertAndSendToUser("2", "/queue/chat-messages", "payload");
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    @DisplayName("Test fan-out: recipient with sessions here and on another node gets the frame on both")
+    void sendToUser_connectedLocallyAndElsewhere() {
+        when(simpUserRegistry.getUser("2")).thenReturn(mock(SimpUser.class));
+        when(presenceRegistry.isOnlineOnOtherNode(2L)).thenReturn(true);
+        when(kafkaTemplate.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.<SendResult<String, Object>>completedFuture(null));
+        messageFanoutService.start();
+
+        messageFanoutService.sendToUser(2L, "/queue/chat-messages", "payload");
+
+        verify(messagingTemplate).convertAndSendToUser("2", "/queue/chat-messages", "payload");
+        verify(kafkaTemplate, timeout(1000)).send("user-deliveries", "2", new UserDelivery(2L, "/queue/chat-messages", "payload", null, 1));
+    }
+
+    @Test
+    @DisplayName("Test fan-out: remote recipient is published to Kafka keyed by user id")
+    void sendToUser_connectedElsewhere() {
+        when(kafkaTemplate.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.<SendResult<String, Object>>completedFuture(null));
+        messageFanoutService.start();
+
+        messageFanoutService.sendToUser(2L, "/queue/chat-messages", "payload");
+
+        verify(kafkaTemplate, timeout(1000)).send("user-deliveries", "2", new UserDelivery(2L, "/queue/chat-messages", "payload", null, 1));
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    @Test
+    @DisplayName("Test fan-out: a blocked producer never blocks the caller, overflow is dropped and counted")
+    void sendToUser_blockedProducerDropsOverflow() throws InterruptedException {
+        CountDownLatch brokerDown = new CountDownLatch(1);
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenAnswer(invocation -> {
+            brokerDown.await();
+            return CompletableFuture.<SendResult<String, Object>>completedFuture(null);
+        });
+        messageFanoutService.start();
+
+        for (long userId = 100; userId < 120; userId++) {
+            messageFanoutService.sendToUser(userId, "/queue/chat-messages", "payload");
+        }
+
+        verify(metricsService, atLeast(9)).fanoutPublishDropped();
+        brokerDown.countDown();
+    }
+
+    @Test
+    @DisplayName("Test fan-out: a membership invalidation is never dropped, even when the delivery queue is full")
+    void broadcastMembershipInvalidation_survivesFullQueue() {
+        CountDownLatch brokerDown = new CountDownLatch(1);
+        when(kafkaTemplate.send(anyString(), anyString(), any())).thenAnswer(invocation -> {
+            brokerDown.await();
+            return CompletableFuture.<SendResult<String, Object>>completedFuture(null);
+        });
+        messageFanoutService.start();
+
+        for (long userId = 100; userId < 120; userId++) {
+            messageFanoutService.sendToUser(userId, "/queue/chat-messages", "payload");
+        }
+        messageFanoutService.broadcastMembershipInvalidation(7L);
+        brokerDown.countDown();
+
+        verify(metricsService, atLeast(9)).fanoutPublishDropped();
+        verify(kafkaTemplate, timeout(1000)).send("user-deliveries", "7", UserDelivery.membershipInvalidated(7L, 1));
+    }
+
+    @Test
+    @DisplayName("Test fan-out: consumed delivery is dropped by nodes without the recipient's session")
+    void deliverIfConnected() {
+        when(simpUserRegistry.getUser("2")).thenReturn(mock(SimpUser.class));
+        when(simpUserRegistry.getUser("3")).thenReturn(null);
+
+        messageFanoutService.deliverIfConnected(new UserDelivery(2L, "/queue/read-receipts", "first", null, 0));
+        messageFanoutService.deliverIfConnected(new UserDelivery(3L, "/queue/read-receipts", "second", null, 0));
+
+        verify(messagingTemplate).convertAndSendToUser("2", "/queue/read-receipts", "first");
+        verifyNoMoreInteractions(messagingTemplate);
+    }
+
+    @Test
+    @DisplayName("Test fan-out: a node skips the records it published, its own sessions were served before publishing")
+    void deliverIfConnected_skipsOwnRecords() {
+        messageFanoutService.deliverIfConnected(new UserDelivery(2L, "/queue/read-receipts", "first", null, 1));
+
+        verifyNoInteractions(messagingTemplate, simpUserRegistry);
+    }
+
+    @Test
+    @DisplayName("Test resync hint goes only to the session that fell behind")
+    void sendResyncHint() {
+        messageFanoutService.sendResyncHint(new OutboundResyncEvent("abc123"));
+
+        ArgumentCaptor<Map<String, Object>> headers = ArgumentCaptor.captor();
+        verify(messagingTemplate).convertAndSendToUser(eq("abc123"), eq("/queue/resync"),
+                eq(new ResyncHintDTO("slow-consumer")), headers.capture());
+        assertThat(SimpMessageHeaderAccessor.getSessionId(headers.getValue())).isEqualTo("abc123");
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    @DisplayName("Test fan-out: a payload for several recipients is serialized once and the bytes shared")
+    void sendToUsers_serializesOnce() {
+        when(simpUserRegistry.getUser(anyString())).thenReturn(mock(SimpUser.class));
+        when(messagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
+
+        messageFanoutService.sendToUsers(List.of(1L, 2L), "/queue/chat-messages", new ResyncHintDTO("x"));
+
+        verify(jsonMapper, times(1)).writeValueAsBytes(any());
+        ArgumentCaptor<Message<?>> frames = ArgumentCaptor.captor();
+        verify(messagingTemplate).send(eq("/user/1/queue/chat-messages"), frames.capture());
+        verify(messagingTemplate).send(eq("/user/2/queue/chat-messages"), frames.capture());
+        assertThat(frames.getAllValues().get(0).getPayload()).isSameAs(frames.getAllValues().get(1).getPayload());
+    }
+}
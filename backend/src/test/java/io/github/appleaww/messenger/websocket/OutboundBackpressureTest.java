@@ -0,0 +1,144 @@
+package io.github.appleaww.messenger.websocket;
+
+import io.github.appleaww.messenger.kafka.KafkaProducerService;
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OutboundBackpressureTest {
+    private static final String TYPING = "/user/queue/typing-events";
+    private static final String MESSAGES = "/user/queue/chat-messages";
+
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final WebSocketHandler handler = mock(WebSocketHandler.class);
+    private final WebSocketSession transport = mock(WebSocketSession.class);
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    private OutboundBackpressure outboundBackpressure;
+    private WebSocketSession session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        outboundBackpressure = new OutboundBackpressure(eventPublisher, new MetricsService(meterRegistry, mock(KafkaProducerService.class)));
+        ReflectionTestUtils.setField(outboundBackpressure, "softLimitBytes", 100L);
+        ReflectionTestUtils.setField(outboundBackpressure, "policy", OutboundBackpressure.Policy.DROP);
+        ReflectionTestUtils.setField(outboundBackpressure, "droppableDestinations", Set.of(TYPING));
+        outboundBackpressure.registerMetrics();
+
+        when(transport.getId()).thenReturn("s1");
+        outboundBackpressure.decorate(handler).afterConnectionEstablished(transport);
+
+        ArgumentCaptor<WebSocketSession> decorated = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(handler).afterConnectionEstablished(decorated.capture());
+        session = decorated.getValue();
+    }
+
+    @Test
+    @DisplayName("Test bytes count as buffered until the socket write completes")
+    void bufferedBytesFollowWrites() throws Exception {
+        outboundBackpressure.preSend(frame(MESSAGES, 60), channel);
+        outboundBackpressure.preSend(frame(MESSAGES, 50), channel);
+        assertThat(bufferedBytes()).isEqualTo(110);
+
+        session.sendMessage(written(60));
+        assertThat(bufferedBytes()).isEqualTo(50);
+    }
+
+    @Test
+    @DisplayName("Test frames written past the outbound channel, like STOMP errors, leave the count alone")
+    void unrecordedWritesIgnored() throws Exception {
+        outboundBackpressure.preSend(frame(MESSAGES, 60), channel);
+
+        session.sendMessage(new TextMessage("ERROR\nmessage:Bad frame\n\nBad frame\0"));
+        assertThat(bufferedBytes()).isEqualTo(60);
+
+        session.sendMessage(written(60));
+        assertThat(bufferedBytes()).isZero();
+    }
+
+    @Test
+    @DisplayName("Test DROP discards droppable frames of a slow session and still delivers the rest")
+    void drop_onlyDroppableFrames() {
+        outboundBackpressure.preSend(frame(MESSAGES, 150), channel);
+
+        assertThat(outboundBackpressure.preSend(frame(TYPING, 10), channel)).isNull();
+        assertThat(outboundBackpressure.preSend(frame(MESSAGES, 10), channel)).isNotNull();
+        assertThat(meterRegistry.counter("messenger.websocket.outbound.dropped", "policy", "DROP").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Test RESYNC drops everything and sends one hint once the backlog has halved")
+    void resync_hintAfterCatchingUp() throws Exception {
+        ReflectionTestUtils.setField(outboundBackpressure, "policy", OutboundBackpressure.Policy.RESYNC);
+        outboundBackpressure.preSend(frame(MESSAGES, 150), channel);
+
+        assertThat(outboundBackpressure.preSend(frame(MESSAGES, 10), channel)).isNull();
+        assertThat(outboundBackpressure.preSend(frame(MESSAGES, 10), channel)).isNull();
+        verifyNoInteractions(eventPublisher);
+
+        session.sendMessage(written(150));
+        verify(eventPublisher, times(1)).publishEvent(new OutboundResyncEvent("s1"));
+    }
+
+    @Test
+    @DisplayName("Test DISCONNECT closes a slow session once")
+    void disconnect_closesSession() throws Exception {
+        ReflectionTestUtils.setField(outboundBackpressure, "policy", OutboundBackpressure.Policy.DISCONNECT);
+        outboundBackpressure.preSend(frame(MESSAGES, 150), channel);
+
+        outboundBackpressure.preSend(frame(MESSAGES, 10), channel);
+        outboundBackpressure.preSend(frame(TYPING, 10), channel);
+
+        verify(transport, times(1)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(meterRegistry.counter("messenger.websocket.outbound.slow-consumer.disconnects").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Test closing a session forgets its backlog")
+    void afterConnectionClosed_discardsBacklog() throws Exception {
+        outboundBackpressure.preSend(frame(MESSAGES, 150), channel);
+
+        outboundBackpressure.decorate(handler).afterConnectionClosed(transport, CloseStatus.NORMAL);
+
+        assertThat(bufferedBytes()).isZero();
+        assertThat(outboundBackpressure.preSend(frame(TYPING, 10), channel)).isNotNull();
+    }
+
+    private double bufferedBytes() {
+        return meterRegistry.get("messenger.websocket.outbound.buffered").gauge().value();
+    }
+
+    private static TextMessage written(int bodySize) {
+        return new TextMessage("MESSAGE\ndestination:/user/queue/chat-messages\n\n" + "x".repeat(bodySize) + "\0");
+    }
+
+    private Message<byte[]> frame(String destination, int size) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId("s1");
+        accessor.setDestination("/queue/x-users1");
+        accessor.setHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION, destination);
+        return MessageBuilder.createMessage(new byte[size], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,176 @@
+package io.github.appleaww.messenger.websocket;
+
+import io.github.appleaww.messenger.presence.PresenceRegistry;
+import io.github.appleaww.messenger.repository.UserChatStateRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PresenceFanoutServiceTest {
+    private final UserChatStateRepository userChatStateRepository = mock(UserChatStateRepository.class);
+    private final PresenceRegistry presenceRegistry = mock(PresenceRegistry.class);
+    private final MessageFanoutService messageFanoutService = mock(MessageFanoutService.class);
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    private PresenceFanoutService presenceFanoutService;
+
+    @BeforeEach
+    void setUp() {
+        presenceFanoutService = new PresenceFanoutService(
+                userChatStateRepository, presenceRegistry, messageFanoutService, jsonMapper);
+        ReflectionTestUtils.setField(presenceFanoutService, "debounceMs", 0L);
+        ReflectionTestUtils.setField(presenceFanoutService, "maxDelayMs", 60_000L);
+        ReflectionTestUtils.setField(presenceFanoutService, "contactsChunkSize", 500);
+    }
+
+    @Test
+    @DisplayName("Test changes of one tick reach each online contact as one batched frame")
+    void flush_batchesPerRecipient() {
+        when(userChatStateRepository.findContacts(anyCollection())).thenReturn(List.of(
+                contact(1L, 10L), contact(2L, 10L), contact(1L, 11L), contact(2L, 12L)));
+        when(presenceRegistry.filterOnline(anyCollection())).thenReturn(Set.of(10L, 11L));
+
+        presenceFanoutService.statusChanged(1L, true, Instant.now());
+        presenceFanoutService.statusChanged(2L, false, Instant.now());
+        presenceFanoutService.flush();
+
+        ArgumentCaptor<byte[]> frame = ArgumentCaptor.forClass(byte[].class);
+        verify(messageFanoutService).sendFrameToUser(eq(10L), eq("/queue/online-status"), frame.capture());
+        JsonNode statuses = jsonMapper.readTree(frame.getValue());
+        assertThat(statuses.size()).isEqualTo(2);
+        assertThat(statuses.get(0).get("userId").asLong()).isEqualTo(1L);
+        assertThat(statuses.get(0).get("isOnline").asBoolean()).isTrue();
+        assertThat(statuses.get(1).get("userId").asLong()).isEqualTo(2L);
+        assertThat(statuses.get(1).get("isOnline").asBoolean()).isFalse();
+
+        verify(messageFanoutService).sendFrameToUser(eq(11L), eq("/queue/online-status"), any());
+        verify(messageFanoutService, never()).sendFrameToUser(eq(12L), anyString(), any());
+    }
+
+    @Test
+    @DisplayName("Test recipients waiting for the same statuses share one serialized frame")
+    void flush_sharesFrameBytes() {
+        when(userChatStateRepository.findContacts(anyCollection())).thenReturn(List.of(contact(1L, 10L), contact(1L, 11L)));
+        when(presenceRegistry.filterOnline(anyCollection())).thenReturn(Set.of(10L, 11L));
+
+        presenceFanoutService.statusChanged(1L, true, Instant.now());
+        presenceFanoutService.flush();
+
+        ArgumentCaptor<byte[]> frames = ArgumentCaptor.forClass(byte[].class);
+        verify(messageFanoutService, times(2)).sendFrameToUser(anyLong(), anyString(), frames.capture());
+        assertThat(frames.getAllValues().get(0)).isSameAs(frames.getAllValues().get(1));
+    }
+
+    @Test
+    @DisplayName("Test a reconnect within the debounce window sends nothing")
+    void flush_flappingIsSuppressed() {
+        presenceFanoutService.statusChanged(1L, false, Instant.now());
+        presenceFanoutService.statusChanged(1L, true, Instant.now());
+        presenceFanoutService.flush();
+
+        verifyNoInteractions(userChatStateRepository, messageFanoutService);
+    }
+
+    @Test
+    @DisplayName("Test a change is held until its debounce window has passed")
+    void flush_waitsForDebounceWindow() {
+        ReflectionTestUtils.setField(presenceFanoutService, "debounceMs", 60_000L);
+
+        presenceFanoutService.statusChanged(1L, true, Instant.now());
+        presenceFanoutService.flush();
+
+        verifyNoInteractions(userChatStateRepository, messageFanoutService);
+    }
+
+    @Test
+    @DisplayName("Test the debounce window restarts with every change of the user")
+    void flush_debounceTrailsLastChange() throws InterruptedException {
+        ReflectionTestUtils.setField(presenceFanoutService, "debounceMs", 1_000L);
+
+        presenceFanoutService.statusChanged(1L, true, Instant.now());
+        Thread.sleep(1_000);
+        presenceFanoutService.statusChanged(1L, false, Instant.now());
+        presenceFanoutService.statusChanged(1L, true, Instant.now());
+        presenceFanoutService.flush();
+
+        verifyNoInteractions(userChatStateRepository, messageFanoutService);
+    }
+
+    @Test
+    @DisplayName("Test a user who keeps flapping is still announced once the max delay has passed")
+    void flush_maxDelayBoundsFlapping() throws InterruptedException {
+        ReflectionTestUtils.setField(presenceFanoutService, "debounceMs", 60_000L);
+        ReflectionTestUtils.setField(presenceFanoutService, "maxDelayMs", 200L);
+        when(userChatStateRepository.findContacts(anyCollection())).thenReturn(List.of(contact(1L, 10L)));
+        when(presenceRegistry.filterOnline(anyCollection())).thenReturn(Set.of(10L));
+
+        presenceFanoutService.statusChanged(1L, true, Instant.now());
+        Thread.sleep(250);
+        presenceFanoutService.statusChanged(1L, false, Instant.now());
+        presenceFanoutService.statusChanged(1L, true, Instant.now());
+        presenceFanoutService.flush();
+
+        ArgumentCaptor<byte[]> frame = ArgumentCaptor.forClass(byte[].class);
+        verify(messageFanoutService).sendFrameToUser(eq(10L), eq("/queue/online-status"), frame.capture());
+        assertThat(jsonMapper.readTree(frame.getValue()).get(0).get("isOnline").asBoolean()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Test contacts are looked up in chunks and their recipients still get one frame")
+    void flush_looksUpContactsInChunks() {
+        ReflectionTestUtils.setField(presenceFanoutService, "contactsChunkSize", 1);
+        when(userChatStateRepository.findContacts(List.of(1L))).thenReturn(List.of(contact(1L, 10L)));
+        when(userChatStateRepository.findContacts(List.of(2L))).thenReturn(List.of(contact(2L, 10L)));
+        when(presenceRegistry.filterOnline(anyCollection())).thenReturn(Set.of(10L));
+
+        presenceFanoutService.statusChanged(1L, true, Instant.now());
+        presenceFanoutService.statusChanged(2L, true, Instant.now());
+        presenceFanoutService.flush();
+
+        ArgumentCaptor<byte[]> frame = ArgumentCaptor.forClass(byte[].class);
+        verify(messageFanoutService).sendFrameToUser(eq(10L), eq("/queue/online-status"), frame.capture());
+        assertThat(jsonMapper.readTree(frame.getValue()).size()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Test statuses whose contact lookup failed are sent on the next tick")
+    void flush_requeuesOnFailure() {
+        when(userChatStateRepository.findContacts(anyCollection()))
+                .thenThrow(new IllegalStateException("connection refused"))
+                .thenReturn(List.of(contact(1L, 10L)));
+        when(presenceRegistry.filterOnline(anyCollection())).thenReturn(Set.of(10L));
+
+        presenceFanoutService.statusChanged(1L, true, Instant.now());
+        presenceFanoutService.flush();
+        verifyNoInteractions(messageFanoutService);
+
+        presenceFanoutService.flush();
+        verify(messageFanoutService).sendFrameToUser(eq(10L), eq("/queue/online-status"), any());
+    }
+
+    private UserChatStateRepository.Contact contact(Long userId, Long contactId) {
+        return new UserChatStateRepository.Contact() {
+            @Override
+            public Long getUserId() {
+                return userId;
+            }
+
+            @Override
+            public Long getContactId() {
+                return contactId;
+            }
+        };
+    }
+}
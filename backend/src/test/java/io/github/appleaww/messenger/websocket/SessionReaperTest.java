@@ -0,0 +1,102 @@
+package io.github.appleaww.messenger.websocket;
+
+import io.github.appleaww.messenger.kafka.KafkaProducerService;
+import io.github.appleaww.messenger.metrics.MetricsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SessionReaperTest {
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SessionReaper sessionReaper;
+
+    @BeforeEach
+    void setUp() {
+        sessionReaper = new SessionReaper(eventPublisher, new MetricsService(meterRegistry, mock(KafkaProducerService.class)));
+        ReflectionTestUtils.setField(sessionReaper, "idleTimeoutMs", 200L);
+        ReflectionTestUtils.setField(sessionReaper, "tickMs", 10L);
+        sessionReaper.init();
+    }
+
+    @Test
+    @DisplayName("Test a silent session is closed and its user disconnected once")
+    void reap_closesSilentSession() throws Exception {
+        WebSocketSession session = session("s1");
+        sessionReaper.track(session);
+        sessionReaper.register("s1", 7L);
+
+        Thread.sleep(300);
+        sessionReaper.reap();
+
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        verify(eventPublisher).publishEvent(new SessionExpiredEvent("s1", 7L));
+        assertThat(sessionReaper.release("s1")).isFalse();
+        assertThat(meterRegistry.counter("messenger.websocket.connections.reaped").count()).isEqualTo(1);
+        assertThat(meterRegistry.get("messenger.websocket.connections").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("Test inbound frames such as heartbeats keep a session alive")
+    void reap_inboundTrafficKeepsSessionAlive() throws Exception {
+        WebSocketSession session = session("s1");
+        sessionReaper.track(session);
+
+        Thread.sleep(150);
+        sessionReaper.preSend(heartbeat("s1"), mock(MessageChannel.class));
+        Thread.sleep(150);
+        sessionReaper.reap();
+
+        verify(session, never()).close(any());
+        assertThat(sessionReaper.getTrackedSessions()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Test a session released by its disconnect event is not reaped")
+    void reap_skipsReleasedSession() throws Exception {
+        WebSocketSession session = session("s1");
+        sessionReaper.track(session);
+        sessionReaper.register("s1", 7L);
+
+        assertThat(sessionReaper.release("s1")).isTrue();
+        Thread.sleep(300);
+        sessionReaper.reap();
+
+        verify(session, never()).close(any());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    @DisplayName("Test a connect event arriving after the session closed is rejected")
+    void register_unknownSession() {
+        assertThat(sessionReaper.register("gone", 7L)).isFalse();
+    }
+
+    private WebSocketSession session(String id) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        return session;
+    }
+
+    private Message<byte[]> heartbeat(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.HEARTBEAT);
+        accessor.setSessionId(sessionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
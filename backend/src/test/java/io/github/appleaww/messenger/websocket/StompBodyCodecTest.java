@@ -0,0 +1,156 @@
+package io.github.appleaww.messenger.websocket;
+
+import io.github.appleaww.messenger.model.dto.TypingDTO;
+import io.github.appleaww.messenger.model.dto.response.MessageCreateResponseDTO;
+import io.github.appleaww.messenger.model.dto.response.ReadReceiptResponseDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StompBodyCodecTest {
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final CBORMapper cborMapper = CBORMapper.builder().build();
+    private final WebSocketHandler handler = mock(WebSocketHandler.class);
+    private final WebSocketSession transport = mock(WebSocketSession.class);
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    private StompBodyCodec stompBodyCodec;
+
+    @BeforeEach
+    void setUp() {
+        stompBodyCodec = new StompBodyCodec(jsonMapper);
+        when(transport.getId()).thenReturn("s1");
+    }
+
+    @Test
+    @DisplayName("Test a native session that asked for CBOR gets CBOR bodies in binary frames")
+    void negotiatedSession_receivesCbor() throws Exception {
+        WebSocketSession session = establish(transport);
+        stompBodyCodec.preSend(connect("s1", "application/cbor"), channel);
+
+        byte[] json = jsonMapper.writeValueAsBytes(typing());
+        Message<?> sent = stompBodyCodec.preSend(message("s1", json), channel);
+
+        assertThat(sent.getHeaders().get(MessageHeaders.CONTENT_TYPE)).isEqualTo(StompBodyCodec.APPLICATION_CBOR);
+        assertThat(cborMapper.readTree((byte[]) sent.getPayload())).isEqualTo(jsonMapper.readTree(json));
+
+        session.sendMessage(new TextMessage("MESSAGE\n\n\0".getBytes()));
+        verify(transport).sendMessage(any(BinaryMessage.class));
+    }
+
+    @Test
+    @DisplayName("Test sessions that didn't ask for CBOR keep JSON text frames")
+    void defaultSession_staysOnJson() throws Exception {
+        WebSocketSession session = establish(transport);
+        stompBodyCodec.preSend(connect("s1", null), channel);
+
+        Message<byte[]> message = message("s1", jsonMapper.writeValueAsBytes(typing()));
+        assertThat(stompBodyCodec.preSend(message, channel)).isSameAs(message);
+
+        session.sendMessage(new TextMessage("MESSAGE\n\n\0"));
+        verify(transport).sendMessage(any(TextMessage.class));
+    }
+
+    @Test
+    @DisplayName("Test a SockJS session can't negotiate binary bodies")
+    void sockJsSession_ignoresCborRequest() throws Exception {
+        SockJsSession sockJsSession = mock(SockJsSession.class);
+        when(sockJsSession.getId()).thenReturn("s2");
+        establish(sockJsSession);
+        stompBodyCodec.preSend(connect("s2", "application/cbor"), channel);
+
+        Message<byte[]> message = message("s2", jsonMapper.writeValueAsBytes(typing()));
+        assertThat(stompBodyCodec.preSend(message, channel)).isSameAs(message);
+    }
+
+    @Test
+    @DisplayName("Test a payload broadcast to many CBOR sessions is transcoded once")
+    void sharedPayload_transcodedOnce() throws Exception {
+        establish(transport);
+        WebSocketSession other = mock(WebSocketSession.class);
+        when(other.getId()).thenReturn("s2");
+        establish(other);
+        stompBodyCodec.preSend(connect("s1", "application/cbor"), channel);
+        stompBodyCodec.preSend(connect("s2", "application/cbor"), channel);
+
+        byte[] json = jsonMapper.writeValueAsBytes(typing());
+        Object first = stompBodyCodec.preSend(message("s1", json), channel).getPayload();
+        Object second = stompBodyCodec.preSend(message("s2", json), channel).getPayload();
+
+        assertThat(first).isSameAs(second);
+    }
+
+    @Test
+    @DisplayName("Test CBOR bodies of the pushed DTOs are smaller on the wire than JSON")
+    void pushedDtos_cborIsSmaller() {
+        List<Object> payloads = List.of(
+                new MessageCreateResponseDTO(7_300_000_000_001L, Instant.parse("2026-01-01T10:00:00Z"), "hello", false, 1L, 2L, 7_300_000_000_000L, false),
+                typing(),
+                new ReadReceiptResponseDTO(7_300_000_000_000L, List.of(7_300_000_000_001L, 7_300_000_000_002L), 2L, 1L));
+
+        for (Object payload : payloads) {
+            byte[] json = jsonMapper.writeValueAsBytes(payload);
+            assertThat(stompBodyCodec.toCbor(json)).as(payload.getClass().getSimpleName()).hasSizeLessThan(json.length);
+        }
+    }
+
+    @Test
+    @DisplayName("Test CBOR request bodies are read by the message converter")
+    void messageConverter_readsCbor() {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(StompBodyCodec.APPLICATION_CBOR);
+        Message<byte[]> message = MessageBuilder.createMessage(cborMapper.writeValueAsBytes(typing()), accessor.getMessageHeaders());
+
+        assertThat(stompBodyCodec.messageConverter().fromMessage(message, TypingDTO.class)).isEqualTo(typing());
+    }
+
+    private WebSocketSession establish(WebSocketSession raw) throws Exception {
+        WebSocketHandler decorated = stompBodyCodec.decorate(handler);
+        decorated.afterConnectionEstablished(raw);
+        ArgumentCaptor<WebSocketSession> session = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(handler, atLeastOnce()).afterConnectionEstablished(session.capture());
+        return session.getValue();
+    }
+
+    private TypingDTO typing() {
+        return new TypingDTO(7_300_000_000_000L, 1L, "alice", 2L, true);
+    }
+
+    private Message<byte[]> connect(String sessionId, String contentType) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        accessor.setSessionId(sessionId);
+        if (contentType != null) {
+            accessor.setContentType(MimeTypeUtils.parseMimeType(contentType));
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private Message<byte[]> message(String sessionId, byte[] json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(json, accessor.getMessageHeaders());
+    }
+}
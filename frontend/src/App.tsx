@@ -12,11 +12,15 @@ function App() {
     const [refreshKey, setRefreshKey] = useState(0);
 
     useEffect(() => {
-        const token = authService.getToken();
-        if (token) {
-            setIsAuthenticated(true);
+        if (!authService.getRefreshToken()) {
+            setLoading(false);
+            return;
         }
-        setLoading(false);
+        // the stored access token is likely expired, trade the refresh token for a fresh one
+        authService.refresh()
+            .then(() => setIsAuthenticated(true))
+            .catch(() => authService.logout())
+            .finally(() => setLoading(false));
     }, []);
 
     const handleLoginSuccess = () => {
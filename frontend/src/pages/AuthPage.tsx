@@ -24,7 +24,7 @@ function AuthPage({ onLoginSuccess }: AuthPageProps) {
         try {
             const response = await authService.login({ email, password });
 
-            authService.saveToken(response.token);
+            authService.saveSession(response);
             authService.saveUserId(response.userId);
             authService.saveUserData(response.name, response.email, response.role);
 
@@ -52,6 +52,22 @@ function AuthPage({ onLoginSuccess }: AuthPageProps) {
         }
     };
 
+    const checkAvailability = async (params: { username?: string; email?: string }) => {
+        if (!params.username && !params.email) return;
+        try {
+            const availability = await authService.checkAvailability(params);
+            if (availability.usernameAvailable === false) {
+                setError('Этот username уже занят');
+            } else if (availability.emailAvailable === false) {
+                setError('Этот email уже зарегистрирован');
+            } else {
+                setError('');
+            }
+        } catch (err) {
+            console.error('Availability check error:', err);
+        }
+    };
+
     return (
         <div className="auth-container">
             <AppleHelloEnglishEffect />
@@ -109,6 +125,7 @@ function AuthPage({ onLoginSuccess }: AuthPageProps) {
                             placeholder="Username"
                             value={username}
                             onChange={(e) => setUsername(e.target.value)}
+                            onBlur={() => checkAvailability({ username })}
                             required
                         />
                         <input
@@ -116,6 +133,7 @@ function AuthPage({ onLoginSuccess }: AuthPageProps) {
                             placeholder="Email"
                             value={email}
                             onChange={(e) => setEmail(e.target.value)}
+                            onBlur={() => checkAvailability({ email })}
                             required
                         />
                         <input
@@ -42,6 +42,10 @@ export const ChatPage: React.FC<ChatPageProps> = ({ chatId, onBack, onChatSelect
     const currentUserId = authService.getUserId();
     const hasLoadedRef = useRef(false);
     const isTypingRef = useRef(false);
+    const messagesContainerRef = useRef<HTMLDivElement>(null);
+    const olderCursorRef = useRef<string | null>(null);
+    const loadingOlderRef = useRef(false);
+    const lastMessageIdRef = useRef<number | null>(null);
 
     const scrollToBottom = () => {
         messagesEndRef.current?.scrollIntoView({ behavior: 'smooth' });
@@ -56,6 +60,7 @@ export const ChatPage: React.FC<ChatPageProps> = ({ chatId, onBack, onChatSelect
             ]);
 
             setChatDetail(detail);
+            olderCursorRef.current = detail.olderCursor;
             setMessages(detail.messages.map(msg => ({
                 id: msg.id,
                 content: msg.content,
@@ -66,10 +71,7 @@ export const ChatPage: React.FC<ChatPageProps> = ({ chatId, onBack, onChatSelect
             })));
             setAllChats(chats);
 
-            const currentChat = chats.find(c => c.chatId === chatId);
-            if (currentChat) {
-                setCompanionId(currentChat.companionId);
-            }
+            setCompanionId(detail.companionId);
         } catch (error) {
             console.error('Error loading chat:', error);
         } finally {
@@ -94,8 +96,8 @@ export const ChatPage: React.FC<ChatPageProps> = ({ chatId, onBack, onChatSelect
 
         const loadOnlineStatus = async () => {
             try {
-                const onlineUsers = await statusService.getOnlineUsers();
-                setIsOnline(onlineUsers.includes(companionId));
+                const [status] = await statusService.queryStatuses([companionId]);
+                setIsOnline(status?.isOnline ?? false);
             } catch (error) {
                 console.error('Error loading online status:', error);
             }
@@ -125,6 +127,10 @@ export const ChatPage: React.FC<ChatPageProps> = ({ chatId, onBack, onChatSelect
         }
     }, [loadChatData]);
 
+    useEffect(() => {
+        return websocketService.onResync(() => loadChatData());
+    }, [loadChatData]);
+
     useEffect(() => {
         setAllChats(prevChats =>
             prevChats.map(chat =>
@@ -194,9 +200,50 @@ export const ChatPage: React.FC<ChatPageProps> = ({ chatId, onBack, onChatSelect
     }, [chatId, currentUserId]);
 
     useEffect(() => {
-        scrollToBottom();
+        const lastMessageId = messages.length > 0 ? messages[messages.length - 1].id : null;
+        if (lastMessageId !== lastMessageIdRef.current) {
+            lastMessageIdRef.current = lastMessageId;
+            scrollToBottom();
+        }
     }, [messages]);
 
+    const loadOlderMessages = async () => {
+        const container = messagesContainerRef.current;
+        const cursor = olderCursorRef.current;
+        if (!container || !cursor || loadingOlderRef.current) return;
+
+        loadingOlderRef.current = true;
+        try {
+            const page = await chatService.getMessages(chatId, { before: cursor });
+            olderCursorRef.current = page.olderCursor;
+            const previousScrollHeight = container.scrollHeight;
+            setMessages(prev => [
+                ...page.messages.map(msg => ({
+                    id: msg.id,
+                    content: msg.content,
+                    sendingTime: msg.sendingTime,
+                    senderId: msg.senderId,
+                    isRead: msg.isRead,
+                    isMine: msg.senderId === currentUserId
+                })),
+                ...prev
+            ]);
+            requestAnimationFrame(() => {
+                container.scrollTop += container.scrollHeight - previousScrollHeight;
+            });
+        } catch (error) {
+            console.error('Error loading older messages:', error);
+        } finally {
+            loadingOlderRef.current = false;
+        }
+    };
+
+    const handleMessagesScroll = () => {
+        if (messagesContainerRef.current?.scrollTop === 0) {
+            loadOlderMessages();
+        }
+    };
+
     const handleSendMessage = () => {
         if (!newMessage.trim()) return;
 
@@ -320,7 +367,7 @@ export const ChatPage: React.FC<ChatPageProps> = ({ chatId, onBack, onChatSelect
                     </div>
                 </header>
 
-                <div className="chat-messages">
+                <div className="chat-messages" ref={messagesContainerRef} onScroll={handleMessagesScroll}>
                     {messages.length === 0 ? (
                         <div className="chat-empty-messages">
                             <p className="!text-gray-500">Начните диалог!</p>
@@ -9,6 +9,8 @@ import { subscriptionService } from '../services/chatService';
 import { useState, useEffect, useRef } from 'react';
 
 
+const CHATS_PAGE_SIZE = 50;
+
 interface ChatsPageProps {
     onLogout: () => void;
     onOpenChat: (chatId: number) => void;
@@ -26,6 +28,8 @@ function ChatsPage({ onLogout, onOpenChat }: ChatsPageProps) {
     const [showSubscriptionModal, setShowSubscriptionModal] = useState(false);
     const [subscriptionTier, setSubscriptionTier] = useState<'BASIC' | 'PREMIUM'>('BASIC');
     const [subscribing, setSubscribing] = useState(false);
+    const [hasMoreChats, setHasMoreChats] = useState(false);
+    const [loadingMore, setLoadingMore] = useState(false);
 
     const currentUserId = authService.getUserId();
     const hasLoadedRef = useRef(false);
@@ -56,10 +60,6 @@ function ChatsPage({ onLogout, onOpenChat }: ChatsPageProps) {
             loadChats();
         }
 
-        statusService.getOnlineUsers()
-            .then(users => setOnlineUsers(new Set(users)))
-            .catch(err => console.error('Failed to load online users:', err));
-
         const unsubOnline = websocketService.onOnlineStatus(({ userId, isOnline }) => {
             setOnlineUsers(prev => {
                 const next = new Set(prev);
@@ -98,17 +98,35 @@ function ChatsPage({ onLogout, onOpenChat }: ChatsPageProps) {
             });
         });
 
+        const unsubResync = websocketService.onResync(() => loadChats());
+
         return () => {
             unsubOnline();
             unsubMessage();
+            unsubResync();
         };
     }, [currentUserId]);
 
+    const loadCompanionStatuses = (page: ChatListItemType[]) => {
+        const companionIds = page.map(chat => chat.companionId).filter(id => id != null);
+        if (companionIds.length === 0) return;
+
+        statusService.queryStatuses(companionIds)
+            .then(statuses => setOnlineUsers(prev => {
+                const next = new Set(prev);
+                statuses.forEach(({ userId, isOnline }) => isOnline ? next.add(userId) : next.delete(userId));
+                return next;
+            }))
+            .catch(err => console.error('Failed to load online statuses:', err));
+    };
+
     const loadChats = async () => {
         try {
             setLoading(true);
             const data = await chatService.getAllChats();
             setChats(data);
+            setHasMoreChats(data.length >= CHATS_PAGE_SIZE);
+            loadCompanionStatuses(data);
         } catch (err) {
             setError(err instanceof Error ? err.message : 'Ошибка загрузки чатов');
         } finally {
@@ -116,6 +134,21 @@ function ChatsPage({ onLogout, onOpenChat }: ChatsPageProps) {
         }
     };
 
+    const loadMoreChats = async () => {
+        if (chats.length === 0 || loadingMore) return;
+        try {
+            setLoadingMore(true);
+            const data = await chatService.getAllChats(chats[chats.length - 1]);
+            setChats(prev => [...prev, ...data.filter(chat => !prev.some(c => c.chatId === chat.chatId))]);
+            setHasMoreChats(data.length >= CHATS_PAGE_SIZE);
+            loadCompanionStatuses(data);
+        } catch (err) {
+            setError(err instanceof Error ? err.message : 'Ошибка загрузки чатов');
+        } finally {
+            setLoadingMore(false);
+        }
+    };
+
     const handleCreateChat = async (e: React.FormEvent) => {
         e.preventDefault();
         if (!newChatUsername.trim()) return;
@@ -216,6 +249,15 @@ function ChatsPage({ onLogout, onOpenChat }: ChatsPageProps) {
                                     onDelete={handleDeleteChat}
                                 />
                             ))}
+                            {hasMoreChats && (
+                                <button
+                                    className="new-chat-btn"
+                                    onClick={loadMoreChats}
+                                    disabled={loadingMore}
+                                >
+                                    Загрузить ещё
+                                </button>
+                            )}
                         </div>
                     )}
                 </div>
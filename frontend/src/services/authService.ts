@@ -1,7 +1,9 @@
-import type { LoginRequest, RegisterRequest, AuthResponse } from '../types/auth';
+import type { LoginRequest, RegisterRequest, AuthResponse, AvailabilityResponse } from '../types/auth';
 
 const API_URL = 'http://localhost:8080';
 
+let refreshTimer: ReturnType<typeof setTimeout> | null = null;
+
 export const authService = {
     async login(data: LoginRequest): Promise<AuthResponse> {
         const response = await fetch(`${API_URL}/auth/login`, {
@@ -18,6 +20,50 @@ export const authService = {
         return response.json();
     },
 
+    async refresh(): Promise<AuthResponse> {
+        const response = await fetch(`${API_URL}/auth/refresh`, {
+            method: 'POST',
+            headers: { 'Content-Type': 'application/json' },
+            body: JSON.stringify({ refreshToken: this.getRefreshToken() }),
+        });
+
+        if (!response.ok) {
+            const error = await response.text();
+            throw new Error(error);
+        }
+
+        const data: AuthResponse = await response.json();
+        this.saveSession(data);
+        return data;
+    },
+
+    // stores both tokens and renews the access token shortly before it expires
+    saveSession(data: AuthResponse): void {
+        this.saveToken(data.token);
+        localStorage.setItem('refreshToken', data.refreshToken);
+
+        if (refreshTimer) clearTimeout(refreshTimer);
+        refreshTimer = setTimeout(() => {
+            this.refresh().catch(err => console.error('Token refresh error:', err));
+        }, Math.max(data.expiresIn * 0.8, 1000));
+    },
+
+    getRefreshToken(): string | null {
+        return localStorage.getItem('refreshToken');
+    },
+
+    async checkAvailability(params: { username?: string; email?: string }): Promise<AvailabilityResponse> {
+        const query = new URLSearchParams();
+        if (params.username) query.set('username', params.username);
+        if (params.email) query.set('email', params.email);
+
+        const response = await fetch(`${API_URL}/auth/availability?${query}`);
+        if (!response.ok) {
+            throw new Error(await response.text());
+        }
+        return response.json();
+    },
+
     async register(data: RegisterRequest): Promise<string> {
         const response = await fetch(`${API_URL}/auth/register`, {
             method: 'POST',
@@ -81,7 +127,10 @@ export const authService = {
     },
 
     logout(): void {
+        if (refreshTimer) clearTimeout(refreshTimer);
+        refreshTimer = null;
         localStorage.removeItem('token');
+        localStorage.removeItem('refreshToken');
         localStorage.removeItem('userId');
         localStorage.removeItem('userName');
         localStorage.removeItem('userEmail');
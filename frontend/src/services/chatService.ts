@@ -1,3 +1,5 @@
+import type { OnlineStatus } from './websocketService';
+
 const API_BASE = 'http://localhost:8080/api';
 
 export interface ChatListItem {
@@ -11,9 +13,17 @@ export interface ChatListItem {
 
 export interface ChatDetail {
     chatId: number;
+    companionId: number;
     companionName: string;
     companionUsername: string;
     messages: MessageDTO[];
+    olderCursor: string | null;
+}
+
+export interface MessagePage {
+    messages: MessageDTO[];
+    olderCursor: string | null;
+    newerCursor: string | null;
 }
 
 export interface MessageDTO {
@@ -27,6 +37,21 @@ export interface MessageDTO {
     isMine: boolean;
 }
 
+export interface MessageSearchHit {
+    messageId: number;
+    chatId: number;
+    headline: string; // HTML-escaped, matches wrapped in <b>
+    sendingTime: string;
+    senderId: number;
+    senderName: string;
+    rank: number;
+}
+
+export interface MessageSearchPage {
+    hits: MessageSearchHit[];
+    nextCursor: string | null;
+}
+
 export interface ChatCreateRequest {
     companionUsername: string;
 }
@@ -47,8 +72,11 @@ const getAuthHeaders = () => {
 };
 
 export const chatService = {
-    async getAllChats(): Promise<ChatListItem[]> {
-        const response = await fetch(`${API_BASE}/chats`, {
+    async getAllChats(before?: ChatListItem): Promise<ChatListItem[]> {
+        const query = before
+            ? `?${new URLSearchParams({ beforeTime: before.lastMessageSendingTime, beforeChatId: String(before.chatId) })}`
+            : '';
+        const response = await fetch(`${API_BASE}/chats${query}`, {
             headers: getAuthHeaders()
         });
         if (!response.ok) throw new Error('Ошибка загрузки чатов');
@@ -80,6 +108,30 @@ export const chatService = {
         });
         if (!response.ok) throw new Error('Ошибка открытия чата');
         return response.json();
+    },
+
+    async getMessages(chatId: number, params: { before?: string; after?: string; at?: string; limit?: number }): Promise<MessagePage> {
+        const query = new URLSearchParams();
+        Object.entries(params).forEach(([key, value]) => {
+            if (value !== undefined) query.set(key, String(value));
+        });
+        const response = await fetch(`${API_BASE}/chats/${chatId}/messages?${query}`, {
+            headers: getAuthHeaders()
+        });
+        if (!response.ok) throw new Error('Ошибка загрузки сообщений');
+        return response.json();
+    },
+
+    async searchMessages(q: string, params: { chatId?: number; cursor?: string; limit?: number } = {}): Promise<MessageSearchPage> {
+        const query = new URLSearchParams({ q });
+        Object.entries(params).forEach(([key, value]) => {
+            if (value !== undefined) query.set(key, String(value));
+        });
+        const response = await fetch(`${API_BASE}/chats/search?${query}`, {
+            headers: getAuthHeaders()
+        });
+        if (!response.ok) throw new Error('Ошибка поиска сообщений');
+        return response.json();
     }
 };
 
@@ -90,6 +142,16 @@ export const statusService = {
         });
         if (!response.ok) throw new Error('Ошибка загрузки статусов');
         return response.json();
+    },
+
+    async queryStatuses(userIds: number[]): Promise<OnlineStatus[]> {
+        const response = await fetch(`${API_BASE}/status/query`, {
+            method: 'POST',
+            headers: getAuthHeaders(),
+            body: JSON.stringify({ userIds })
+        });
+        if (!response.ok) throw new Error('Ошибка загрузки статусов');
+        return response.json();
     }
 };
 export const subscriptionService = {
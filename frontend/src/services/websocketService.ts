@@ -42,6 +42,7 @@ class WebSocketService {
     private typingHandlers: ((event: TypingEvent) => void)[] = [];
     private readReceiptHandlers: ((receipt: ReadReceipt) => void)[] = [];
     private onlineStatusHandlers: ((status: OnlineStatus) => void)[] = [];
+    private resyncHandlers: (() => void)[] = [];
 
     connect(token: string): Promise<void> {
         if (this.client?.connected || this.isConnecting) {
@@ -98,10 +99,23 @@ class WebSocketService {
             this.readReceiptHandlers.forEach(handler => handler(receipt));
         });
 
-        this.client.subscribe('/topic/online-status', (message: IMessage) => {
-            const status: OnlineStatus = JSON.parse(message.body);
-            this.onlineStatusHandlers.forEach(handler => handler(status));
+        // presence changes of chat contacts, batched per tick
+        this.client.subscribe('/user/queue/online-status', (message: IMessage) => {
+            const statuses: OnlineStatus[] = JSON.parse(message.body);
+            statuses.forEach(status => this.onlineStatusHandlers.forEach(handler => handler(status)));
         });
+
+        // the server dropped frames while this client was too slow to read them
+        this.client.subscribe('/user/queue/resync', () => {
+            this.resyncHandlers.forEach(handler => handler());
+        });
+    }
+
+    onResync(handler: () => void) {
+        this.resyncHandlers.push(handler);
+        return () => {
+            this.resyncHandlers = this.resyncHandlers.filter(h => h !== handler);
+        };
     }
 
     onOnlineStatus(handler: (status: OnlineStatus) => void) {
@@ -13,8 +13,15 @@ export interface RegisterRequest {
 
 export interface AuthResponse {
     token: string;
+    refreshToken: string;
+    expiresIn: number;
     userId: number;
     role: string;
     name: string;
     email: string;
 }
+
+export interface AvailabilityResponse {
+    usernameAvailable: boolean | null;
+    emailAvailable: boolean | null;
+}